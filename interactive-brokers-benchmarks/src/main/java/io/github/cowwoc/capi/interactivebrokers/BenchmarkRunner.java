@@ -0,0 +1,38 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so that the allocation rate is reported alongside the
+ * throughput.
+ * <p>
+ * Accepts the same command-line options as {@code org.openjdk.jmh.Main}.
+ */
+public final class BenchmarkRunner
+{
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args the command-line options
+	 * @throws CommandLineOptionException if the command-line options are invalid
+	 * @throws RunnerException            if a benchmark fails
+	 */
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException
+	{
+		Options options = new OptionsBuilder().
+			parent(new CommandLineOptions(args)).
+			addProfiler(GCProfiler.class).
+			build();
+		new Runner(options).run();
+	}
+
+	private BenchmarkRunner()
+	{
+	}
+}
@@ -0,0 +1,357 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of loading activity statements.
+ * <p>
+ * Each operation corresponds to a single trade row, so the benchmarks report the throughput in rows per
+ * second. When run using {@link BenchmarkRunner}, {@code gc.alloc.rate.norm} reports the number of bytes
+ * allocated per row.
+ * <p>
+ * Statements are tokenized by {@code CsvTokenizer}; the {@code InputStream} overloads read the stream into
+ * memory first. The benchmarks whose name ends with {@code Vector} fork a JVM with the
+ * {@code jdk.incubator.vector} module, which lets the {@code capi-interactivebrokers-vector} provider locate
+ * delimiters using the Vector API. Without the module, the provider cannot be instantiated, so their
+ * counterparts measure the scalar fallback.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class IbActivityStatementBenchmark
+{
+	/**
+	 * A statement containing 1,000 trades.
+	 */
+	@State(Scope.Benchmark)
+	public static class Statement1k extends StatementState
+	{
+		/**
+		 * Creates a new instance.
+		 */
+		public Statement1k()
+		{
+			super(1_000);
+		}
+	}
+
+	/**
+	 * A statement containing 100,000 trades.
+	 */
+	@State(Scope.Benchmark)
+	public static class Statement100k extends StatementState
+	{
+		/**
+		 * Creates a new instance.
+		 */
+		public Statement100k()
+		{
+			super(100_000);
+		}
+	}
+
+	/**
+	 * A statement containing 1,000,000 trades.
+	 */
+	@State(Scope.Benchmark)
+	public static class Statement1m extends StatementState
+	{
+		/**
+		 * Creates a new instance.
+		 */
+		public Statement1m()
+		{
+			super(1_000_000);
+		}
+	}
+
+	/**
+	 * The rows of a statement containing 100,000 trades, after they were split into columns.
+	 * <p>
+	 * Larger statements are not pre-tokenized because their rows would not fit in the heap.
+	 */
+	@State(Scope.Benchmark)
+	public static class Rows100k
+	{
+		List<List<String>> rows;
+
+		/**
+		 * Tokenizes the statement.
+		 *
+		 * @throws IOException if the statement is malformed
+		 */
+		@Setup
+		public void setup() throws IOException
+		{
+			CsvTokenizer tokens = new CsvTokenizer(MemorySegment.ofArray(StatementGenerator.generate(100_000)));
+			rows = new ArrayList<>();
+			while (tokens.nextRow())
+				rows.add(List.copyOf(tokens.row()));
+		}
+	}
+
+	/**
+	 * A snapshot of a statement containing 100,000 trades.
+	 */
+	@State(Scope.Benchmark)
+	public static class Snapshot100k
+	{
+		Path path;
+
+		/**
+		 * Converts the statement to a snapshot.
+		 *
+		 * @throws IOException if an I/O error occurs while writing the snapshot
+		 */
+		@Setup
+		public void setup() throws IOException
+		{
+			IbActivityStatement statement = IbActivityStatement.load(new ByteArrayInputStream(
+				StatementGenerator.generate(100_000)));
+			path = Files.createTempFile("statement", ".ibss");
+			IbStatementSnapshot.write(statement, path);
+		}
+
+		/**
+		 * Deletes the snapshot.
+		 *
+		 * @throws IOException if an I/O error occurs while deleting the snapshot
+		 */
+		@TearDown
+		public void tearDown() throws IOException
+		{
+			Files.delete(path);
+		}
+	}
+
+	/**
+	 * A file containing a statement of 100,000 trades.
+	 */
+	@State(Scope.Benchmark)
+	public static class File100k
+	{
+		Path path;
+
+		/**
+		 * Writes the statement to a file.
+		 *
+		 * @throws IOException if an I/O error occurs while writing the file
+		 */
+		@Setup
+		public void setup() throws IOException
+		{
+			path = Files.createTempFile("statement", ".csv");
+			Files.write(path, StatementGenerator.generate(100_000));
+		}
+
+		/**
+		 * Deletes the file.
+		 *
+		 * @throws IOException if an I/O error occurs while deleting the file
+		 */
+		@TearDown
+		public void tearDown() throws IOException
+		{
+			Files.delete(path);
+		}
+	}
+
+	/**
+	 * The CSV data of a statement.
+	 */
+	public abstract static class StatementState
+	{
+		private final int trades;
+		byte[] data;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param trades the number of trades in the statement
+		 */
+		protected StatementState(int trades)
+		{
+			this.trades = trades;
+		}
+
+		/**
+		 * Generates the statement.
+		 */
+		@Setup
+		public void setup()
+		{
+			data = StatementGenerator.generate(trades);
+		}
+	}
+
+	/**
+	 * Loads a statement containing 1,000 trades.
+	 *
+	 * @param state the statement
+	 * @return the statement
+	 * @throws IOException if the statement is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(1_000)
+	public IbActivityStatement load1k(Statement1k state) throws IOException
+	{
+		return IbActivityStatement.load(new ByteArrayInputStream(state.data));
+	}
+
+	/**
+	 * Loads a statement containing 100,000 trades.
+	 *
+	 * @param state the statement
+	 * @return the statement
+	 * @throws IOException if the statement is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(100_000)
+	public IbActivityStatement load100k(Statement100k state) throws IOException
+	{
+		return IbActivityStatement.load(new ByteArrayInputStream(state.data));
+	}
+
+	/**
+	 * Loads a statement containing 1,000,000 trades.
+	 *
+	 * @param state the statement
+	 * @return the statement
+	 * @throws IOException if the statement is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(1_000_000)
+	public IbActivityStatement load1m(Statement1m state) throws IOException
+	{
+		return IbActivityStatement.load(new ByteArrayInputStream(state.data));
+	}
+
+	/**
+	 * Loads a file containing 100,000 trades, locating delimiters using the scalar fallback.
+	 *
+	 * @param state the file
+	 * @return the statement
+	 * @throws IOException if the statement is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(100_000)
+	public IbActivityStatement loadFile100k(File100k state) throws IOException
+	{
+		return IbActivityStatement.load(state.path);
+	}
+
+	/**
+	 * Loads a file containing 100,000 trades, locating delimiters using the Vector API.
+	 *
+	 * @param state the file
+	 * @return the statement
+	 * @throws IOException if the statement is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(100_000)
+	@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules=jdk.incubator.vector"})
+	public IbActivityStatement loadFile100kVector(File100k state) throws IOException
+	{
+		return IbActivityStatement.load(state.path);
+	}
+
+	/**
+	 * Measures the cost of splitting a statement of 100,000 trades into rows, locating delimiters using the
+	 * scalar fallback.
+	 *
+	 * @param state the statement
+	 * @return the number of rows
+	 * @throws IOException if the statement is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(100_000)
+	public int tokenize100k(Statement100k state) throws IOException
+	{
+		return tokenize(state.data);
+	}
+
+	/**
+	 * Measures the cost of splitting a statement of 100,000 trades into rows, locating delimiters using the
+	 * Vector API.
+	 *
+	 * @param state the statement
+	 * @return the number of rows
+	 * @throws IOException if the statement is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(100_000)
+	@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules=jdk.incubator.vector"})
+	public int tokenize100kVector(Statement100k state) throws IOException
+	{
+		return tokenize(state.data);
+	}
+
+	/**
+	 * Splits a statement into rows.
+	 *
+	 * @param data the CSV data of the statement
+	 * @return the number of rows
+	 * @throws IOException if the statement is malformed
+	 */
+	private static int tokenize(byte[] data) throws IOException
+	{
+		CsvTokenizer tokens = new CsvTokenizer(MemorySegment.ofArray(data));
+		int rows = 0;
+		while (tokens.nextRow())
+			++rows;
+		return rows;
+	}
+
+	/**
+	 * Loads a snapshot of a statement containing 100,000 trades.
+	 *
+	 * @param state the snapshot
+	 * @return the statement
+	 * @throws IOException if the snapshot is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(100_000)
+	public IbActivityStatement loadSnapshot100k(Snapshot100k state) throws IOException
+	{
+		return IbStatementSnapshot.read(state.path);
+	}
+
+	/**
+	 * Measures the cost of splitting rows into sections and parsing them, excluding CSV tokenization.
+	 *
+	 * @param state the rows of the statement
+	 * @return the statement
+	 * @throws IOException if the statement is malformed
+	 */
+	@Benchmark
+	@OperationsPerInvocation(100_000)
+	public IbActivityStatement parseRows100k(Rows100k state) throws IOException
+	{
+		StatementParser parser = new StatementParser();
+		for (List<String> row : state.rows)
+			parser.parseRow(row);
+		return parser.getStatement();
+	}
+}
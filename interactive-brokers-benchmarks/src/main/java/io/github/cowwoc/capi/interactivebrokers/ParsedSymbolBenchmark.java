@@ -0,0 +1,63 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of parsing asset symbols.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ParsedSymbolBenchmark
+{
+	// Non-final fields prevent the JIT from constant-folding the input
+	private String stock = "AAPL";
+	private String option = "SQQQ 17JUN22 42.0 P";
+	private final SymbolDictionary symbols = new SymbolDictionary();
+
+	/**
+	 * Parses the symbol of a stock.
+	 *
+	 * @return the parsed symbol
+	 */
+	@Benchmark
+	public ParsedSymbol stock()
+	{
+		return ParsedSymbol.fromStatement(stock);
+	}
+
+	/**
+	 * Parses the symbol of an option.
+	 *
+	 * @return the parsed symbol
+	 */
+	@Benchmark
+	public ParsedSymbol option()
+	{
+		return ParsedSymbol.fromStatement(option);
+	}
+
+	/**
+	 * Looks up the symbol of an option that was already decoded.
+	 *
+	 * @return the parsed symbol
+	 */
+	@Benchmark
+	public ParsedSymbol cachedOption()
+	{
+		return symbols.parse(option);
+	}
+}
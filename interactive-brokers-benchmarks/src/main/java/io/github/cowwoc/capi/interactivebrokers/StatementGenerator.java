@@ -0,0 +1,806 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generates synthetic activity statements that do not contain any real account data.
+ * <p>
+ * The statements contain:
+ * <ul>
+ *   <li>stock trades in multiple currencies and option trades in the {@code SQQQ 17JUN22 42.0 P} format.</li>
+ *   <li>positions that are opened, added to, partially closed, closed, expired, assigned and flipped from long
+ *   to short (or vice versa) in a single trade.</li>
+ *   <li>positions that were held before the start of the statement's period.</li>
+ *   <li>Mark-to-Market, multi-currency Cash Report, Forex, Deposits & Withdrawals, Dividends, Withholding
+ *   Tax and Codes sections.</li>
+ * </ul>
+ * The same number of trades and seed always produce the same statement.
+ */
+public final class StatementGenerator
+{
+	private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd, HH:mm:ss");
+	private static final DateTimeFormatter OPTION_EXPIRY_FORMAT = DateTimeFormatter.ofPattern("ddMMMyy",
+		Locale.ENGLISH);
+	private static final LocalDate PERIOD_START = LocalDate.of(2022, 1, 1);
+	private static final LocalDate PERIOD_END = LocalDate.of(2022, 12, 31);
+	private static final List<String> CURRENCIES = List.of("USD", "CAD", "EUR");
+	private static final List<String> USD_STOCKS = List.of("AAPL", "MSFT", "AMZN", "GOOG", "META", "NVDA",
+		"TSLA", "SPY", "QQQ", "SQQQ", "AMD", "INTC", "IBM", "KO", "PEP", "XOM");
+	private static final List<String> CAD_STOCKS = List.of("RY", "TD", "ENB", "CNR", "SHOP");
+	private static final List<String> EUR_STOCKS = List.of("SAP", "ASML", "SIE");
+	private static final List<String> OPTION_UNDERLYINGS = List.of("SQQQ", "SPY", "QQQ", "AAPL", "TSLA");
+	private static final List<LocalDate> OPTION_EXPIRIES = List.of(LocalDate.of(2022, 3, 18),
+		LocalDate.of(2022, 6, 17), LocalDate.of(2022, 9, 16), LocalDate.of(2022, 12, 16));
+	/**
+	 * The fraction of trades that involve options.
+	 */
+	private static final double OPTION_RATIO = 0.3;
+	/**
+	 * The number of trades per Forex conversion.
+	 */
+	private static final int TRADES_PER_CONVERSION = 100;
+
+	private final Writer out;
+	private final SplittableRandom random;
+	private final List<Instrument> stocks = new ArrayList<>();
+	private final List<Instrument> options = new ArrayList<>();
+	private final Map<String, CashTotals> currencyToCash = new LinkedHashMap<>();
+	private final List<String> dividends = new ArrayList<>();
+	private final List<String> withholdingTaxes = new ArrayList<>();
+
+	/**
+	 * Generates a statement and writes it to a file.
+	 * <p>
+	 * Usage: {@code StatementGenerator <path> <trades> [seed]}
+	 *
+	 * @param args the command-line arguments
+	 * @throws IOException if an I/O error occurs while writing the file
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2 || args.length > 3)
+		{
+			System.err.println("Usage: StatementGenerator <path> <trades> [seed]");
+			System.exit(1);
+		}
+		Path path = Path.of(args[0]);
+		int trades = Integer.parseInt(args[1]);
+		long seed;
+		if (args.length == 3)
+			seed = Long.parseLong(args[2]);
+		else
+			seed = 0;
+		try (Writer writer = Files.newBufferedWriter(path, UTF_8))
+		{
+			write(writer, trades, seed);
+		}
+	}
+
+	/**
+	 * Generates a statement using the default seed.
+	 *
+	 * @param trades the number of stock and option trades to generate
+	 * @return the UTF-8 encoded CSV data
+	 * @throws IllegalArgumentException if {@code trades} is negative
+	 */
+	public static byte[] generate(int trades)
+	{
+		return generate(trades, 0);
+	}
+
+	/**
+	 * Generates a statement.
+	 *
+	 * @param trades the number of stock and option trades to generate
+	 * @param seed   the seed of the random number generator
+	 * @return the UTF-8 encoded CSV data
+	 * @throws IllegalArgumentException if {@code trades} is negative
+	 */
+	public static byte[] generate(int trades, long seed)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8)))
+		{
+			write(writer, trades, seed);
+		}
+		catch (IOException e)
+		{
+			// ByteArrayOutputStream does not throw IOException
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Generates a statement.
+	 *
+	 * @param out    the writer to write the CSV data to
+	 * @param trades the number of stock and option trades to generate
+	 * @param seed   the seed of the random number generator
+	 * @throws NullPointerException     if {@code out} is null
+	 * @throws IllegalArgumentException if {@code trades} is negative
+	 * @throws IOException              if an I/O error occurs while writing
+	 */
+	public static void write(Writer out, int trades, long seed) throws IOException
+	{
+		requireThat(out, "out").isNotNull();
+		requireThat(trades, "trades").isNotNegative();
+		new StatementGenerator(out, seed).write(trades);
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param out  the writer to write the CSV data to
+	 * @param seed the seed of the random number generator
+	 */
+	private StatementGenerator(Writer out, long seed)
+	{
+		this.out = out;
+		this.random = new SplittableRandom(seed);
+		for (String currency : CURRENCIES)
+			currencyToCash.put(currency, new CashTotals());
+	}
+
+	/**
+	 * Generates a statement.
+	 *
+	 * @param trades the number of stock and option trades to generate
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void write(int trades) throws IOException
+	{
+		int optionTrades = (int) (trades * OPTION_RATIO);
+		addStocks(trades - optionTrades);
+		addOptions(optionTrades);
+		addDividends();
+
+		writeHeader();
+		writeMarkToMarket();
+		writeCashReport();
+		writeTrades("Stocks", stocks);
+		writeTrades("Equity and Index Options", options);
+		writeForex(trades / TRADES_PER_CONVERSION + 1);
+		writeDeposits();
+		writeDividends();
+		writeCodes();
+	}
+
+	/**
+	 * Adds the stocks that are traded.
+	 *
+	 * @param trades the number of stock trades
+	 */
+	private void addStocks(int trades)
+	{
+		List<String> symbols = new ArrayList<>();
+		List<String> currencies = new ArrayList<>();
+		for (String symbol : USD_STOCKS)
+		{
+			symbols.add(symbol);
+			currencies.add("USD");
+		}
+		for (String symbol : CAD_STOCKS)
+		{
+			symbols.add(symbol);
+			currencies.add("CAD");
+		}
+		for (String symbol : EUR_STOCKS)
+		{
+			symbols.add(symbol);
+			currencies.add("EUR");
+		}
+		for (int i = 0; i < symbols.size(); ++i)
+		{
+			long priceInCents = random.nextLong(1_000, 50_000);
+			long startQuantity;
+			// A third of the stocks were held before the start of the period
+			if (i % 3 == 0)
+				startQuantity = random.nextLong(1, 20) * 50;
+			else
+				startQuantity = 0;
+			stocks.add(new Instrument("Stocks", currencies.get(i), symbols.get(i), 1, priceInCents,
+				startQuantity, getShare(trades, i, symbols.size()), random.nextLong()));
+		}
+	}
+
+	/**
+	 * Adds the options that are traded.
+	 *
+	 * @param trades the number of option trades
+	 */
+	private void addOptions(int trades)
+	{
+		List<String> symbols = new ArrayList<>();
+		for (String underlying : OPTION_UNDERLYINGS)
+		{
+			for (LocalDate expiry : OPTION_EXPIRIES)
+			{
+				for (String strike : List.of("42.0", "100.0", "250.5"))
+				{
+					for (String type : List.of("P", "C"))
+					{
+						// e.g. SQQQ 17JUN22 42.0 P
+						symbols.add(underlying + " " + expiry.format(OPTION_EXPIRY_FORMAT).toUpperCase(Locale.ROOT) +
+							" " + strike + " " + type);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < symbols.size(); ++i)
+		{
+			long priceInCents = random.nextLong(5, 2_000);
+			long startQuantity;
+			// Some short options were written before the start of the period
+			if (i % 10 == 0)
+				startQuantity = -random.nextLong(1, 5);
+			else
+				startQuantity = 0;
+			options.add(new Instrument("Equity and Index Options", "USD", symbols.get(i), 100, priceInCents,
+				startQuantity, getShare(trades, i, symbols.size()), random.nextLong()));
+		}
+	}
+
+	/**
+	 * Distributes trades evenly across instruments.
+	 *
+	 * @param trades      the total number of trades
+	 * @param index       the index of an instrument
+	 * @param instruments the number of instruments
+	 * @return the number of trades of the instrument
+	 */
+	private static int getShare(int trades, int index, int instruments)
+	{
+		int share = trades / instruments;
+		if (index < trades % instruments)
+			++share;
+		return share;
+	}
+
+	/**
+	 * Writes the {@code Statement} and {@code Account Information} sections.
+	 *
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeHeader() throws IOException
+	{
+		out.write("""
+			Statement,Header,Field Name,Field Value
+			Statement,Data,BrokerName,Interactive Brokers LLC
+			Statement,Data,BrokerAddress,"Two Pickwick Plaza, Greenwich, CT 06830"
+			Statement,Data,Title,Activity Statement
+			Statement,Data,Period,"January 1, 2022 - December 31, 2022"
+			Statement,Data,WhenGenerated,"2023-01-05, 10:12:13 EST"
+			Account Information,Header,Field Name,Field Value
+			Account Information,Data,Name,Jane Doe
+			Account Information,Data,Account,U0000000
+			Account Information,Data,Account Type,Individual
+			Account Information,Data,Customer Type,Individual
+			Account Information,Data,Base Currency,USD
+			""");
+	}
+
+	/**
+	 * Writes the {@code Mark-to-Market Performance Summary} section.
+	 * <p>
+	 * The trades of each instrument are simulated ahead of time in order to calculate its final position.
+	 *
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeMarkToMarket() throws IOException
+	{
+		out.write("Mark-to-Market Performance Summary,Header,Asset Category,Symbol,Prior Quantity," +
+			"Current Quantity,Prior Price,Current Price,Mark-to-Market P/L Position," +
+			"Mark-to-Market P/L Transaction,Mark-to-Market P/L Commissions,Mark-to-Market P/L Other," +
+			"Mark-to-Market P/L Total,Code\n");
+		for (List<Instrument> instruments : List.of(stocks, options))
+		{
+			for (Instrument instrument : instruments)
+			{
+				PositionSimulator simulator = new PositionSimulator(instrument);
+				while (simulator.hasNext())
+				{
+					SimulatedTrade trade = simulator.next();
+					CashTotals cash = currencyToCash.get(instrument.currency());
+					if (trade.proceedsInCents() > 0)
+						cash.salesInCents += trade.proceedsInCents();
+					else
+						cash.purchasesInCents += trade.proceedsInCents();
+					cash.commissionsInCents += trade.commissionInCents();
+				}
+				if (instrument.startQuantity() == 0 && simulator.position == 0)
+					continue;
+				String price = formatCents(instrument.priceInCents());
+				out.write("Mark-to-Market Performance Summary,Data," + instrument.assetCategory() + "," +
+					instrument.symbol() + "," + formatQuantity(instrument.startQuantity()) + "," +
+					formatQuantity(simulator.position) + "," + price + "," + formatCents(simulator.priceInCents) +
+					",0,0,0,0,0,\n");
+			}
+		}
+		out.write("""
+			Mark-to-Market Performance Summary,Data,Total,,0,0,0,0,0,0,0,0,0,
+			Mark-to-Market Performance Summary,Data,Forex,CAD,"1,500",500,1,1,0,0,0,0,0,
+			Mark-to-Market Performance Summary,Data,Forex,EUR,"2,000",500,1,1,0,0,0,0,0,
+			Mark-to-Market Performance Summary,Data,Total (All Assets),,0,0,0,0,0,0,0,0,0,
+			""");
+	}
+
+	/**
+	 * Writes the {@code Cash Report} section.
+	 *
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeCashReport() throws IOException
+	{
+		out.write("Cash Report,Header,Currency Summary,Currency,Total,Securities,Futures,Month to Date," +
+			"Year to Date,\n");
+		long baseStartingCash = 0;
+		long baseEndingCash = 0;
+		for (Map.Entry<String, CashTotals> entry : currencyToCash.entrySet())
+		{
+			CashTotals cash = entry.getValue();
+			cash.startingCashInCents = random.nextLong(100_000, 10_000_000);
+			cash.depositsInCents = random.nextLong(100_000, 1_000_000);
+			baseStartingCash += cash.startingCashInCents;
+			baseEndingCash += cash.getEndingCashInCents();
+		}
+		writeCashRow("Starting Cash", "Base Currency Summary", baseStartingCash);
+		for (Map.Entry<String, CashTotals> entry : currencyToCash.entrySet())
+		{
+			String currency = entry.getKey();
+			CashTotals cash = entry.getValue();
+			writeCashRow("Starting Cash", currency, cash.startingCashInCents);
+			writeCashRow("Commissions", currency, cash.commissionsInCents);
+			writeCashRow("Deposits", currency, cash.depositsInCents);
+			writeCashRow("Trades (Sales)", currency, cash.salesInCents);
+			writeCashRow("Trades (Purchase)", currency, cash.purchasesInCents);
+			if (currency.equals("USD"))
+			{
+				writeCashRow("Dividends", currency, cash.dividendsInCents);
+				writeCashRow("Withholding Tax", currency, cash.withholdingTaxInCents);
+			}
+			writeCashRow("Ending Cash", currency, cash.getEndingCashInCents());
+			writeCashRow("Ending Settled Cash", currency, cash.getEndingCashInCents());
+		}
+		writeCashRow("Ending Cash", "Base Currency Summary", baseEndingCash);
+	}
+
+	/**
+	 * Writes a row of the {@code Cash Report} section.
+	 *
+	 * @param name          the name of the row
+	 * @param currency      the currency
+	 * @param amountInCents the amount
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeCashRow(String name, String currency, long amountInCents) throws IOException
+	{
+		String amount = formatCents(amountInCents);
+		out.write("Cash Report,Data," + name + "," + currency + "," + amount + "," + amount + ",0,,,\n");
+	}
+
+	/**
+	 * Writes a {@code Trades} section.
+	 *
+	 * @param assetCategory the asset category of the instruments
+	 * @param instruments   the instruments
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeTrades(String assetCategory, List<Instrument> instruments) throws IOException
+	{
+		if (instruments.stream().allMatch(instrument -> instrument.trades() == 0))
+			return;
+		out.write("Trades,Header,DataDiscriminator,Asset Category,Currency,Symbol,Date/Time,Quantity,T. Price," +
+			"C. Price,Proceeds,Comm/Fee,Basis,Realized P/L,MTM P/L,Code\n");
+		// Trades are grouped by currency, then by symbol
+		for (String currency : CURRENCIES)
+		{
+			long totalProceeds = 0;
+			long totalCommission = 0;
+			boolean traded = false;
+			for (Instrument instrument : instruments)
+			{
+				if (!instrument.currency().equals(currency) || instrument.trades() == 0)
+					continue;
+				traded = true;
+				long quantity = 0;
+				long proceeds = 0;
+				long commission = 0;
+				PositionSimulator simulator = new PositionSimulator(instrument);
+				while (simulator.hasNext())
+				{
+					SimulatedTrade trade = simulator.next();
+					String price = formatCents(trade.priceInCents());
+					out.write("Trades,Data,Order," + assetCategory + "," + currency + "," + instrument.symbol() +
+						",\"" + trade.dateTime().format(DATE_TIME_FORMAT) + "\"," + formatQuantity(trade.quantity()) +
+						"," + price + "," + price + "," + formatCents(trade.proceedsInCents()) + "," +
+						formatCents(trade.commissionInCents()) + "," + formatCents(-trade.proceedsInCents()) + ",0,0," +
+						trade.codes() + "\n");
+					quantity += trade.quantity();
+					proceeds += trade.proceedsInCents();
+					commission += trade.commissionInCents();
+				}
+				out.write("Trades,SubTotal,," + assetCategory + "," + currency + "," + instrument.symbol() + ",," +
+					formatQuantity(quantity) + ",,," + formatCents(proceeds) + "," + formatCents(commission) +
+					",0,0,0,\n");
+				totalProceeds += proceeds;
+				totalCommission += commission;
+			}
+			if (traded)
+			{
+				out.write("Trades,Total,," + assetCategory + "," + currency + ",,,,,," + formatCents(totalProceeds) +
+					"," + formatCents(totalCommission) + ",0,0,0,\n");
+			}
+		}
+	}
+
+	/**
+	 * Writes the {@code Trades} section of Forex conversions.
+	 *
+	 * @param conversions the number of conversions
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeForex(int conversions) throws IOException
+	{
+		out.write("Trades,Header,DataDiscriminator,Asset Category,Currency,Symbol,Date/Time,Quantity,T. Price," +
+			"C. Price,Proceeds,Comm in USD,MTM in USD,Code\n");
+		long step = Duration.between(PERIOD_START.atStartOfDay(), PERIOD_END.atStartOfDay()).toSeconds() /
+			conversions;
+		for (int i = 0; i < conversions; ++i)
+		{
+			LocalDateTime dateTime = PERIOD_START.atTime(9, 30).plusSeconds(step * i);
+			long quantity = random.nextLong(1, 100) * 100;
+			if (random.nextBoolean())
+				quantity = -quantity;
+			String symbol;
+			String currency;
+			// The exchange rate, in ten-thousandths
+			long rate;
+			if (random.nextBoolean())
+			{
+				symbol = "USD.CAD";
+				currency = "CAD";
+				rate = random.nextLong(12_500, 13_500);
+			}
+			else
+			{
+				symbol = "EUR.USD";
+				currency = "USD";
+				rate = random.nextLong(9_800, 11_500);
+			}
+			String price = rate / 10_000 + "." + String.format(Locale.ROOT, "%04d", rate % 10_000);
+			out.write("Trades,Data,Order,Forex," + currency + "," + symbol + ",\"" +
+				dateTime.format(DATE_TIME_FORMAT) + "\"," + formatQuantity(quantity) + "," + price + ",," +
+				formatCents(-quantity * rate / 100) + ",-2,,\n");
+		}
+	}
+
+	/**
+	 * Writes the {@code Deposits & Withdrawals} section.
+	 *
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeDeposits() throws IOException
+	{
+		out.write("Deposits & Withdrawals,Header,Currency,Settle Date,Description,Amount\n");
+		int month = 1;
+		for (Map.Entry<String, CashTotals> entry : currencyToCash.entrySet())
+		{
+			out.write("Deposits & Withdrawals,Data," + entry.getKey() + "," + LocalDate.of(2022, month, 10) +
+				",Electronic Fund Transfer," + formatCents(entry.getValue().depositsInCents) + "\n");
+			++month;
+		}
+		out.write("Deposits & Withdrawals,Data,Total,,,0\n");
+	}
+
+	/**
+	 * Adds quarterly dividends and their withholding taxes.
+	 */
+	private void addDividends()
+	{
+		CashTotals cash = currencyToCash.get("USD");
+		for (int i = 0; i < USD_STOCKS.size(); i += 2)
+		{
+			String symbol = USD_STOCKS.get(i);
+			String isin = String.format(Locale.ROOT, "US%010d", Math.floorMod(symbol.hashCode(), 10_000_000_000L));
+			long perShareInCents = random.nextLong(5, 100);
+			long shares = random.nextLong(1, 20) * 50;
+			for (int quarter = 0; quarter < 4; ++quarter)
+			{
+				LocalDate date = LocalDate.of(2022, quarter * 3 + 2, 12);
+				String description = symbol + "(" + isin + ") Cash Dividend USD " + formatCents(perShareInCents) +
+					" per Share";
+				long amount = perShareInCents * shares;
+				long tax = -amount * 15 / 100;
+				dividends.add("Dividends,Data,USD," + date + "," + description + " (Ordinary Dividend)," +
+					formatCents(amount) + "\n");
+				withholdingTaxes.add("Withholding Tax,Data,USD," + date + "," + description + " - US Tax," +
+					formatCents(tax) + ",\n");
+				cash.dividendsInCents += amount;
+				cash.withholdingTaxInCents += tax;
+			}
+		}
+	}
+
+	/**
+	 * Writes the {@code Dividends} and {@code Withholding Tax} sections.
+	 *
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeDividends() throws IOException
+	{
+		CashTotals cash = currencyToCash.get("USD");
+		out.write("Dividends,Header,Currency,Date,Description,Amount\n");
+		for (String row : dividends)
+			out.write(row);
+		out.write("Dividends,Data,Total,,," + formatCents(cash.dividendsInCents) + "\n");
+		out.write("Withholding Tax,Header,Currency,Date,Description,Amount,Code\n");
+		for (String row : withholdingTaxes)
+			out.write(row);
+		out.write("Withholding Tax,Data,Total,,," + formatCents(cash.withholdingTaxInCents) + ",\n");
+	}
+
+	/**
+	 * Writes the {@code Codes} section.
+	 *
+	 * @throws IOException if an I/O error occurs while writing
+	 */
+	private void writeCodes() throws IOException
+	{
+		out.write("""
+			Codes,Header,Code,Meaning
+			Codes,Data,A,Assignment
+			Codes,Data,C,Closing Trade
+			Codes,Data,Ep,Resulted from an Expired Position
+			Codes,Data,O,Opening Trade
+			Codes,Data,P,Partial Execution
+			Codes,Data,Ri,Reinvestment
+			""");
+	}
+
+	/**
+	 * Formats a quantity the way that activity statements do.
+	 *
+	 * @param quantity a quantity
+	 * @return the CSV representation of the quantity
+	 */
+	private static String formatQuantity(long quantity)
+	{
+		if (Math.abs(quantity) < 1000)
+			return String.valueOf(quantity);
+		// Quantities contain thousands separators, which must be quoted
+		return String.format(Locale.ROOT, "\"%,d\"", quantity);
+	}
+
+	/**
+	 * Formats a monetary amount.
+	 *
+	 * @param amountInCents an amount in cents
+	 * @return the amount in the format {@code [-]units.cents}
+	 */
+	private static String formatCents(long amountInCents)
+	{
+		String sign;
+		if (amountInCents < 0)
+			sign = "-";
+		else
+			sign = "";
+		long absolute = Math.abs(amountInCents);
+		return sign + absolute / 100 + "." + String.format(Locale.ROOT, "%02d", absolute % 100);
+	}
+
+	/**
+	 * An asset that is traded.
+	 *
+	 * @param assetCategory the asset category (e.g. Stocks)
+	 * @param currency      the currency that the asset is traded in
+	 * @param symbol        the asset's symbol
+	 * @param multiplier    the number of units that each contract represents
+	 * @param priceInCents  the price at the start of the period
+	 * @param startQuantity the position at the start of the period
+	 * @param trades        the number of trades
+	 * @param seed          the seed of the random number generator that generates the trades
+	 */
+	private record Instrument(String assetCategory, String currency, String symbol, int multiplier,
+	                          long priceInCents, long startQuantity, int trades, long seed)
+	{
+		/**
+		 * Indicates if the asset is an option.
+		 *
+		 * @return {@code true} if the asset is an option
+		 */
+		public boolean isOption()
+		{
+			return multiplier != 1;
+		}
+	}
+
+	/**
+	 * A generated trade.
+	 *
+	 * @param dateTime          the date and time of the trade
+	 * @param quantity          the quantity being traded
+	 * @param priceInCents      the price of each unit
+	 * @param proceedsInCents   the total amount received from the trade
+	 * @param commissionInCents the trade fees
+	 * @param codes             the semicolon-separated codes of the trade
+	 */
+	private record SimulatedTrade(LocalDateTime dateTime, long quantity, long priceInCents, long proceedsInCents,
+	                              long commissionInCents, String codes)
+	{
+	}
+
+	/**
+	 * Generates the trades of a single instrument.
+	 * <p>
+	 * The trades depend only on the instrument, so that they can be generated more than once without holding
+	 * them in memory.
+	 */
+	private static final class PositionSimulator
+	{
+		private final Instrument instrument;
+		private final SplittableRandom random;
+		private final long stepInSeconds;
+		private int index;
+		long position;
+		long priceInCents;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param instrument the instrument
+		 */
+		PositionSimulator(Instrument instrument)
+		{
+			this.instrument = instrument;
+			this.random = new SplittableRandom(instrument.seed());
+			this.stepInSeconds = Duration.between(PERIOD_START.atStartOfDay(), PERIOD_END.atStartOfDay()).
+				toSeconds() / (instrument.trades() + 1);
+			this.position = instrument.startQuantity();
+			this.priceInCents = instrument.priceInCents();
+		}
+
+		/**
+		 * Indicates if there are more trades.
+		 *
+		 * @return {@code true} if there are more trades
+		 */
+		public boolean hasNext()
+		{
+			return index < instrument.trades();
+		}
+
+		/**
+		 * Returns the next trade.
+		 *
+		 * @return the next trade
+		 */
+		public SimulatedTrade next()
+		{
+			++index;
+			LocalDateTime dateTime = PERIOD_START.atTime(9, 30).
+				plusSeconds(stepInSeconds * index + random.nextLong(Math.max(1, stepInSeconds / 2)));
+			// Random walk of up to 2% per trade
+			priceInCents = Math.max(1, priceInCents + priceInCents * random.nextLong(-200, 201) / 10_000);
+			long price = priceInCents;
+
+			long quantity;
+			String codes;
+			long sign = Long.signum(position);
+			double action = random.nextDouble();
+			if (position == 0)
+			{
+				// Open a long or short position
+				quantity = nextSize();
+				if (random.nextBoolean())
+					quantity = -quantity;
+				codes = "O";
+			}
+			else if (action < 0.15)
+			{
+				// Flip the position from long to short, or vice versa
+				quantity = -position - sign * nextSize();
+				codes = "C;O";
+			}
+			else if (action < 0.4)
+			{
+				// Close the position
+				quantity = -position;
+				if (instrument.isOption() && action < 0.2)
+				{
+					price = 0;
+					codes = "C;Ep";
+				}
+				else if (instrument.isOption() && action < 0.25)
+				{
+					price = 0;
+					codes = "A;C";
+				}
+				else
+					codes = "C";
+			}
+			else if (action < 0.65 && Math.abs(position) > 1)
+			{
+				// Reduce the position
+				quantity = -sign * random.nextLong(1, Math.abs(position));
+				codes = "C";
+			}
+			else
+			{
+				// Add to the position
+				quantity = sign * nextSize();
+				codes = "O";
+			}
+			if (random.nextDouble() < 0.05)
+				codes += ";P";
+			position += quantity;
+
+			long proceeds = -quantity * price * instrument.multiplier();
+			long commission;
+			if (price == 0)
+				commission = 0;
+			else if (instrument.isOption())
+				commission = -65 * Math.abs(quantity);
+			else
+				commission = -Math.max(100, Math.abs(quantity) / 2);
+			return new SimulatedTrade(dateTime, quantity, price, proceeds, commission, codes);
+		}
+
+		/**
+		 * Returns the number of units to trade.
+		 *
+		 * @return a positive number
+		 */
+		private long nextSize()
+		{
+			if (instrument.isOption())
+				return random.nextLong(1, 20);
+			return random.nextLong(1, 40) * 50;
+		}
+	}
+
+	/**
+	 * The cash balances of a currency.
+	 */
+	private static final class CashTotals
+	{
+		long startingCashInCents;
+		long depositsInCents;
+		long salesInCents;
+		long purchasesInCents;
+		long commissionsInCents;
+		long dividendsInCents;
+		long withholdingTaxInCents;
+
+		/**
+		 * Returns the cash balance at the end of the period.
+		 *
+		 * @return the ending cash, excluding Forex conversions
+		 */
+		public long getEndingCashInCents()
+		{
+			return startingCashInCents + depositsInCents + salesInCents + purchasesInCents + commissionsInCents +
+				dividendsInCents + withholdingTaxInCents;
+		}
+	}
+}
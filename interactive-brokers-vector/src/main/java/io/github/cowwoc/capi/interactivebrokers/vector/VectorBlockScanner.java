@@ -0,0 +1,49 @@
+package io.github.cowwoc.capi.interactivebrokers.vector;
+
+import io.github.cowwoc.capi.interactivebrokers.spi.BlockScanner;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * Scans blocks using the Vector API, comparing up to {@value #BLOCK_SIZE} bytes per instruction.
+ * <p>
+ * The class cannot be instantiated unless the {@code jdk.incubator.vector} module is present, in which case
+ * the parser falls back to its scalar implementation.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class VectorBlockScanner implements BlockScanner
+{
+	/**
+	 * The widest species that the CPU supports, limited to the size of a block.
+	 */
+	private static final VectorSpecies<Byte> SPECIES;
+
+	static
+	{
+		if (ByteVector.SPECIES_PREFERRED.length() <= BLOCK_SIZE)
+			SPECIES = ByteVector.SPECIES_PREFERRED;
+		else
+			SPECIES = ByteVector.SPECIES_512;
+	}
+
+	@Override
+	public long scan(MemorySegment csv, long offset)
+	{
+		long mask = 0;
+		for (int i = 0; i < BLOCK_SIZE; i += SPECIES.length())
+		{
+			ByteVector bytes = ByteVector.fromMemorySegment(SPECIES, csv, offset + i, ByteOrder.nativeOrder());
+			VectorMask<Byte> matches = bytes.eq((byte) ',').
+				or(bytes.eq((byte) '"')).
+				or(bytes.eq((byte) '\r')).
+				or(bytes.eq((byte) '\n'));
+			mask |= matches.toLong() << i;
+		}
+		return mask;
+	}
+}
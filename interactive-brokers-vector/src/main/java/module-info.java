@@ -0,0 +1,11 @@
+/**
+ * Accelerates the Interactive Brokers parser using the Vector API.
+ */
+module io.github.cowwoc.capi.interactivebrokers.vector
+{
+	requires io.github.cowwoc.capi.interactivebrokers;
+	requires jdk.incubator.vector;
+
+	provides io.github.cowwoc.capi.interactivebrokers.spi.BlockScanner with
+		io.github.cowwoc.capi.interactivebrokers.vector.VectorBlockScanner;
+}
@@ -0,0 +1,68 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Account;
+
+import java.io.IOException;
+import java.util.List;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses the {@code Account Information} section.
+ */
+final class AccountParser implements SectionParser
+{
+	private int sections;
+	private String owner;
+	private String number;
+	private int headerIndex;
+	private int nameIndex;
+	private int valueIndex;
+
+	@Override
+	public void startSection(List<String> columns) throws IOException
+	{
+		++sections;
+		headerIndex = Columns.indexOf(columns, "Header");
+		nameIndex = Columns.indexOf(columns, "Field Name");
+		valueIndex = Columns.indexOf(columns, "Field Value");
+	}
+
+	@Override
+	public void parseRow(List<String> row)
+	{
+		requireThat(Columns.get(row, headerIndex), "Header").isEqualTo("Data");
+		String name = Columns.get(row, nameIndex);
+		switch (name)
+		{
+			case "Name" ->
+			{
+				requireThat(owner, "owner").isNull();
+				owner = Columns.get(row, valueIndex);
+			}
+			case "Account" ->
+			{
+				requireThat(number, "number").isNull();
+				number = Columns.get(row, valueIndex);
+			}
+			case "Account Type", "Customer Type", "Account Capabilities", "Base Currency" ->
+			{
+				// ignore
+			}
+			default -> throw new AssertionError("Unsupported name: " + row);
+		}
+	}
+
+	/**
+	 * Returns the account information.
+	 *
+	 * @return the account
+	 * @throws IllegalArgumentException if the statement does not contain exactly one
+	 *                                  {@code Account Information} section
+	 */
+	public Account getAccount()
+	{
+		requireThat(sections, "sections").isEqualTo(1);
+		return new Account(number, owner);
+	}
+}
@@ -0,0 +1,106 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.CashActivity;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses the {@code Cash Report} sections, one per currency.
+ */
+final class CashReportParser implements SectionParser
+{
+	private final Set<String> currencies = new HashSet<>();
+	private final Map<String, BigDecimal> openingBalance = new HashMap<>();
+	private final Map<String, BigDecimal> closingBalance = new HashMap<>();
+	private final IbLoadFilter filter;
+	private int headerIndex;
+	private int nameIndex;
+	private int currencyIndex;
+	private int totalIndex;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param filter selects the currencies to parse
+	 * @throws NullPointerException if {@code filter} is null
+	 */
+	CashReportParser(IbLoadFilter filter)
+	{
+		requireThat(filter, "filter").isNotNull();
+		this.filter = filter;
+	}
+
+	@Override
+	public void startSection(List<String> columns) throws IOException
+	{
+		headerIndex = Columns.indexOf(columns, "Header");
+		nameIndex = Columns.indexOf(columns, "Currency Summary");
+		currencyIndex = Columns.indexOf(columns, "Currency");
+		totalIndex = Columns.indexOf(columns, "Total");
+	}
+
+	@Override
+	public void parseRow(List<String> row)
+	{
+		requireThat(Columns.get(row, headerIndex), "Header").isEqualTo("Data");
+
+		String currency = Columns.get(row, currencyIndex);
+		if (currency.equals("Base Currency Summary"))
+		{
+			// The data will be repeated with the currency's name explicitly mentioned
+			return;
+		}
+		if (!filter.acceptsCurrency(currency))
+			return;
+		currencies.add(currency);
+
+		String name = Columns.get(row, nameIndex);
+		String total = Columns.get(row, totalIndex);
+		switch (name)
+		{
+			case "Starting Cash" ->
+			{
+				BigDecimal previousValue = openingBalance.put(currency, new BigDecimal(total));
+				if (previousValue != null)
+					throw new AssertionError(currency + " already had an opening balance of " + previousValue);
+			}
+			case "Ending Cash" ->
+			{
+				BigDecimal previousValue = closingBalance.put(currency, new BigDecimal(total));
+				if (previousValue != null)
+					throw new AssertionError(currency + " already had an closing balance of " + previousValue);
+			}
+			case "Ending Settled Cash", "Deposits", "Trades (Sales)", "Trades (Purchase)", "Commissions",
+			     "Dividends", "Payment In Lieu of Dividends", "Withholding Tax", "Account Transfers",
+			     "Broker Interest Paid and Received" ->
+			{
+				// ignore
+			}
+			default -> throw new AssertionError("Unsupported Currency Summary: " + row);
+		}
+	}
+
+	/**
+	 * Returns the cash activities.
+	 *
+	 * @return a map from a currency to its {@code CashActivity}
+	 */
+	public Map<String, CashActivity> getCashActivities()
+	{
+		Map<String, CashActivity> activities = new HashMap<>();
+		for (String currency : currencies)
+		{
+			activities.put(currency,
+				new CashActivity(currency, openingBalance.get(currency), closingBalance.get(currency)));
+		}
+		return activities;
+	}
+}
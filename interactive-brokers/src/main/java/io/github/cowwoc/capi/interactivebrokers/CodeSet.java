@@ -0,0 +1,175 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Code;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * An immutable set of codes, stored as a bitmask.
+ * <p>
+ * Bit {@code n} of the {@link #mask() mask} is set if the set contains the code whose ordinal is {@code n}, as
+ * returned by {@link Code#mask()}. There is a single instance per combination of codes, so looking up a set
+ * never allocates memory and trades with the same codes share the same instance.
+ * <p>
+ * Membership tests can be performed on the mask directly, without branching on individual codes:
+ * {@snippet :
+ * boolean assigned = (trade.codeMask() & Code.ASSIGNMENT.mask()) != 0;
+ * }
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public final class CodeSet extends AbstractSet<Code>
+{
+	private static final Code[] CODES = Code.values();
+	/**
+	 * A mask that contains all the codes.
+	 */
+	private static final int ALL = (1 << CODES.length) - 1;
+	/**
+	 * The set of each mask.
+	 */
+	private static final CodeSet[] INSTANCES = new CodeSet[ALL + 1];
+
+	static
+	{
+		for (int mask = 0; mask <= ALL; ++mask)
+			INSTANCES[mask] = new CodeSet(mask);
+	}
+
+	private final int mask;
+	private final int hashCode;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param mask the codes in the set
+	 */
+	private CodeSet(int mask)
+	{
+		this.mask = mask;
+		int hashCode = 0;
+		for (Code code : CODES)
+		{
+			if ((mask & code.mask()) != 0)
+				hashCode += code.hashCode();
+		}
+		this.hashCode = hashCode;
+	}
+
+	/**
+	 * Returns the set of codes that a mask represents.
+	 *
+	 * @param mask a bitmask in which bit {@code n} is set if the set contains the code whose ordinal is
+	 *             {@code n}
+	 * @return the set
+	 * @throws IllegalArgumentException if {@code mask} contains bits that do not correspond to any code
+	 */
+	public static CodeSet of(int mask)
+	{
+		if ((mask & ~ALL) != 0)
+			throw new IllegalArgumentException("mask contains unknown codes: " + Integer.toBinaryString(mask));
+		return INSTANCES[mask];
+	}
+
+	/**
+	 * Returns a set containing the same codes as a collection.
+	 *
+	 * @param codes a collection of codes
+	 * @return the set
+	 * @throws NullPointerException if {@code codes} or any of its elements are null
+	 */
+	public static CodeSet copyOf(Collection<Code> codes)
+	{
+		if (codes instanceof CodeSet codeSet)
+			return codeSet;
+		requireThat(codes, "codes").isNotNull();
+		int mask = 0;
+		for (Code code : codes)
+			mask |= code.mask();
+		return INSTANCES[mask];
+	}
+
+	/**
+	 * Returns the codes in the set as a bitmask.
+	 *
+	 * @return a bitmask in which bit {@code n} is set if the set contains the code whose ordinal is {@code n}
+	 */
+	public int mask()
+	{
+		return mask;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return o instanceof Code code && (mask & code.mask()) != 0;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c)
+	{
+		if (c instanceof CodeSet other)
+			return (mask & other.mask) == other.mask;
+		return super.containsAll(c);
+	}
+
+	@Override
+	public int size()
+	{
+		return Integer.bitCount(mask);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return mask == 0;
+	}
+
+	@Override
+	public Iterator<Code> iterator()
+	{
+		return new Iterator<>()
+		{
+			/**
+			 * The codes that have not been returned yet.
+			 */
+			private int remaining = mask;
+
+			@Override
+			public boolean hasNext()
+			{
+				return remaining != 0;
+			}
+
+			@Override
+			public Code next()
+			{
+				if (remaining == 0)
+					throw new NoSuchElementException();
+				int ordinal = Integer.numberOfTrailingZeros(remaining);
+				remaining &= remaining - 1;
+				return CODES[ordinal];
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		// There is a single instance per mask
+		if (o instanceof CodeSet)
+			return o == this;
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hashCode;
+	}
+}
@@ -0,0 +1,77 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Code;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses the {@code Codes} section, which describes the transaction codes.
+ */
+final class CodesParser implements SectionParser
+{
+	private final Map<String, Set<Code>> stringCodeToEnums = new HashMap<>();
+	private int sections;
+	private int headerIndex;
+	private int codeIndex;
+	private int meaningIndex;
+
+	@Override
+	public void startSection(List<String> columns) throws IOException
+	{
+		++sections;
+		headerIndex = Columns.indexOf(columns, "Header");
+		codeIndex = Columns.indexOf(columns, "Code");
+		meaningIndex = Columns.indexOf(columns, "Meaning");
+	}
+
+	@Override
+	public void parseRow(List<String> row)
+	{
+		requireThat(Columns.get(row, headerIndex), "Header").isEqualTo("Data");
+		String codeAsString = Columns.get(row, codeIndex);
+		String meaning = Columns.get(row, meaningIndex);
+		Set<Code> codes = switch (meaning)
+		{
+			case "Assignment" -> Set.of(Code.ASSIGNMENT);
+			case "Resulted from an Expired Position" -> Set.of(Code.EXPIRED);
+			case "Opening Trade" -> Set.of(Code.OPEN);
+			case "Closing Trade" -> Set.of(Code.CLOSE);
+			case "Partial Execution" -> Set.of(Code.PARTIAL_EXECUTION);
+			case "The transaction was executed against IB or an affiliate" -> Set.of(Code.INTERNAL_TRADE);
+			case "A portion of the order was executed against IB or an affiliate; IB acted as agent on " +
+				     "a portion." -> Set.of(Code.PARTIAL_EXECUTION, Code.INTERNAL_TRADE);
+			case "The fractional portion of this trade was executed against IB or an affiliate. IB acted as " +
+				     "agent for the whole share portion of this trade." -> Set.of(
+				Code.FRACTIONAL_PORTION_TRADED_INTERNALLY);
+			case "IB acted as agent for both the fractional share portion and the whole share portion of " +
+				     "this trade; the fractional share portion was executed by an IB Affiliate as riskless " +
+				     "principal." -> Set.of(Code.INTERNAL_TRADE);
+			case "Ordered by IB (Margin Violation)" -> Set.of(Code.MARGIN_VIOLATION);
+			// ignore unknown codes
+			default -> Set.of();
+		};
+		if (!codes.isEmpty())
+		{
+			Set<Code> oldCodes = stringCodeToEnums.put(codeAsString, codes);
+			assert oldCodes == null : "code has multiple meanings: " + codeAsString;
+		}
+	}
+
+	/**
+	 * Returns the transaction codes.
+	 *
+	 * @return a map from the string representation of each code to its corresponding enum values
+	 * @throws IllegalArgumentException if the statement does not contain exactly one {@code Codes} section
+	 */
+	public Map<String, Set<Code>> getStringCodeToEnums()
+	{
+		requireThat(sections, "sections").isEqualTo(1);
+		return stringCodeToEnums;
+	}
+}
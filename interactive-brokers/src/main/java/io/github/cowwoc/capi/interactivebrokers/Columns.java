@@ -0,0 +1,47 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Locates values by their position within a row.
+ * <p>
+ * Section parsers look up the position of each column once per section, when they receive its header row,
+ * instead of looking up each value by name.
+ */
+final class Columns
+{
+	/**
+	 * Returns the position of a column.
+	 *
+	 * @param columns the header row of a section
+	 * @param name    the name of the column
+	 * @return the index of the column
+	 * @throws IOException if the section does not contain the column
+	 */
+	public static int indexOf(List<String> columns, String name) throws IOException
+	{
+		int index = columns.indexOf(name);
+		if (index == -1)
+			throw new IOException("Section is missing column \"" + name + "\".\nColumns: " + columns);
+		return index;
+	}
+
+	/**
+	 * Returns the value of a column.
+	 *
+	 * @param row   a row of a section
+	 * @param index the index of the column
+	 * @return {@code null} if the row ends before the column
+	 */
+	public static String get(List<String> row, int index)
+	{
+		if (index >= row.size())
+			return null;
+		return row.get(index);
+	}
+
+	private Columns()
+	{
+	}
+}
@@ -0,0 +1,434 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Computes the adjusted cost base (ACB) and realized gains of positions, using the average cost method.
+ * <p>
+ * Trades are grouped by {@link Trade#assetId() asset ID}, so each group represents a single position. Buying
+ * into a long position or selling into a short position adds the net amount of the trade (proceeds plus
+ * commission) to the position's cost base. Trades that reduce a position release a proportional share of the
+ * cost base, and the difference between the trade's net amount and that share is a realized gain or loss.
+ * Trades may not reverse the direction of a position; {@link IbActivityStatement#trades()} already splits
+ * such trades into a trade that closes the position and a trade that opens a new one.
+ * <p>
+ * Positions are independent of each other, so their trades are processed concurrently by a
+ * {@code ForkJoinPool}. The trades of each position are processed in the order that they are provided.
+ * <p>
+ * The engine retains the state of each position, so {@link #apply(List)} can be invoked with each new batch
+ * of trades without processing earlier trades again. Positions that were opened before the first trade that
+ * the engine sees must be provided to {@link #CostBasisEngine(ForkJoinPool, List)}. Asset IDs must identify
+ * the same position across all batches, such as the ones returned by {@link PositionLedger}.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class CostBasisEngine
+{
+	/**
+	 * The minimum number of trades that are worth processing in a separate task.
+	 */
+	private static final int MINIMUM_TRADES_PER_TASK = 4096;
+	private final ForkJoinPool pool;
+	private final Map<Integer, AssetState> assetIdToState = new HashMap<>();
+
+	/**
+	 * Creates an engine without any positions, which processes trades using the
+	 * {@link ForkJoinPool#commonPool() common pool}.
+	 */
+	public CostBasisEngine()
+	{
+		this.pool = ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Resumes an engine from a previous state.
+	 *
+	 * @param pool      the pool that processes trades
+	 * @param positions the state of each position, as returned by {@link #positions()}
+	 * @throws NullPointerException     if any of the arguments or elements of {@code positions} are null
+	 * @throws IllegalArgumentException if {@code positions} contains multiple elements with the same asset ID
+	 * @throws ArithmeticException      if a number cannot be represented as a {@code FixedPoint} value
+	 */
+	public CostBasisEngine(ForkJoinPool pool, List<AssetCostBasis> positions)
+	{
+		requireThat(pool, "pool").isNotNull();
+		requireThat(positions, "positions").isNotNull();
+		this.pool = pool;
+		for (AssetCostBasis position : positions)
+		{
+			requireThat(position, "position").isNotNull();
+			AssetState state = new AssetState(position.symbol(), position.currency());
+			state.quantity = position.quantityAsFixedPoint();
+			// The cost base is stored as the net amount of the trades, which is negative for long positions
+			state.netAmount = Math.negateExact(position.costBasisAsFixedPoint());
+			state.realizedGain = position.realizedGainAsFixedPoint();
+			AssetState previous = assetIdToState.put(position.assetId(), state);
+			if (previous != null)
+				throw new IllegalArgumentException("Multiple positions have the same asset ID: " + position);
+		}
+	}
+
+	/**
+	 * Applies trades to their positions.
+	 * <p>
+	 * If an exception is thrown, none of the trades are applied.
+	 *
+	 * @param trades trades that follow the ones that were previously applied, in chronological order
+	 * @return the trades that reduced a position, in the same order as {@code trades}
+	 * @throws NullPointerException     if {@code trades} or any of its elements are null
+	 * @throws IllegalArgumentException if a trade reverses the direction of a position
+	 * @throws ArithmeticException      if a number cannot be represented as a {@code FixedPoint} value
+	 */
+	public List<Disposition> apply(List<Trade> trades)
+	{
+		requireThat(trades, "trades").isNotNull();
+		if (trades.isEmpty())
+			return List.of();
+
+		// Group the indexes of the trades by position. The state of each position is copied so that the engine
+		// is left unchanged if a trade is rejected.
+		Map<Integer, Integer> assetIdToGroup = new HashMap<>();
+		List<AssetState> states = new ArrayList<>();
+		List<int[]> groups = new ArrayList<>();
+		int[] groupSizes = new int[trades.size()];
+		int[] tradeToGroup = new int[trades.size()];
+		for (int i = 0; i < trades.size(); ++i)
+		{
+			Trade trade = trades.get(i);
+			requireThat(trade, "trade").isNotNull();
+			Integer group = assetIdToGroup.get(trade.assetId());
+			if (group == null)
+			{
+				group = states.size();
+				assetIdToGroup.put(trade.assetId(), group);
+				AssetState state = assetIdToState.get(trade.assetId());
+				if (state == null)
+					state = new AssetState(trade.symbol(), trade.currency());
+				else
+					state = state.copy();
+				states.add(state);
+			}
+			tradeToGroup[i] = group;
+			++groupSizes[group];
+		}
+		for (int group = 0; group < states.size(); ++group)
+			groups.add(new int[groupSizes[group]]);
+		int[] groupOffsets = new int[states.size()];
+		for (int i = 0; i < trades.size(); ++i)
+		{
+			int group = tradeToGroup[i];
+			groups.get(group)[groupOffsets[group]] = i;
+			++groupOffsets[group];
+		}
+
+		// Split the positions into tasks that contain enough trades to outweigh the cost of scheduling them
+		Disposition[] dispositions = new Disposition[trades.size()];
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		int fromGroup = 0;
+		int tradesInTask = 0;
+		for (int group = 0; group < groups.size(); ++group)
+		{
+			tradesInTask += groups.get(group).length;
+			if (tradesInTask >= MINIMUM_TRADES_PER_TASK || group == groups.size() - 1)
+			{
+				int from = fromGroup;
+				int to = group + 1;
+				tasks.add(pool.submit(() -> applyTrades(trades, groups, states, dispositions, from, to)));
+				fromGroup = to;
+				tradesInTask = 0;
+			}
+		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+
+		for (Entry<Integer, Integer> entry : assetIdToGroup.entrySet())
+			assetIdToState.put(entry.getKey(), states.get(entry.getValue()));
+		List<Disposition> result = new ArrayList<>();
+		for (Disposition disposition : dispositions)
+		{
+			if (disposition != null)
+				result.add(disposition);
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Applies the trades of a range of positions.
+	 *
+	 * @param trades       the trades
+	 * @param groups       the indexes of the trades of each position
+	 * @param states       the state of each position
+	 * @param dispositions the disposition of each trade, which is populated by this method
+	 * @param fromGroup    the index of the first position to process (inclusive)
+	 * @param toGroup      the index of the last position to process (exclusive)
+	 * @throws IllegalArgumentException if a trade reverses the direction of a position
+	 * @throws ArithmeticException      if a number cannot be represented as a {@code FixedPoint} value
+	 */
+	private static void applyTrades(List<Trade> trades, List<int[]> groups, List<AssetState> states,
+		Disposition[] dispositions, int fromGroup, int toGroup)
+	{
+		for (int group = fromGroup; group < toGroup; ++group)
+		{
+			AssetState state = states.get(group);
+			for (int index : groups.get(group))
+				dispositions[index] = state.apply(trades.get(index));
+		}
+	}
+
+	/**
+	 * Returns the state of a position.
+	 *
+	 * @param assetId the ID of the position
+	 * @return {@code null} if no trades have been applied to the position
+	 */
+	public AssetCostBasis getPosition(int assetId)
+	{
+		AssetState state = assetIdToState.get(assetId);
+		if (state == null)
+			return null;
+		return state.toCostBasis(assetId);
+	}
+
+	/**
+	 * Returns the state of all positions, including the ones that have been closed.
+	 *
+	 * @return the positions, sorted by their asset ID
+	 */
+	public List<AssetCostBasis> positions()
+	{
+		List<AssetCostBasis> positions = new ArrayList<>(assetIdToState.size());
+		for (Entry<Integer, AssetState> entry : assetIdToState.entrySet())
+			positions.add(entry.getValue().toCostBasis(entry.getKey()));
+		positions.sort(Comparator.comparingInt(AssetCostBasis::assetId));
+		return positions;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CostBasisEngine[positions=" + assetIdToState.size() + "]";
+	}
+
+	/**
+	 * The cost base and realized gains of a position.
+	 *
+	 * @param assetId      the ID of the position
+	 * @param symbol       the symbol of the asset
+	 * @param currency     the currency of all amounts
+	 * @param quantity     the number of units held; negative for short positions
+	 * @param costBasis    the cost base of the units held. It is positive for long positions, and negative for
+	 *                     short positions, whose cost base is the amount that was received when they were
+	 *                     opened.
+	 * @param realizedGain the sum of the gains and losses that have been realized by reducing the position
+	 */
+	public record AssetCostBasis(int assetId, String symbol, String currency, BigDecimal quantity,
+	                             BigDecimal costBasis, BigDecimal realizedGain)
+	{
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param assetId      the ID of the position
+		 * @param symbol       the symbol of the asset
+		 * @param currency     the currency of all amounts
+		 * @param quantity     the number of units held; negative for short positions
+		 * @param costBasis    the cost base of the units held. It is positive for long positions, and negative
+		 *                     for short positions, whose cost base is the amount that was received when they
+		 *                     were opened.
+		 * @param realizedGain the sum of the gains and losses that have been realized by reducing the position
+		 * @throws NullPointerException     if any of the arguments are null
+		 * @throws IllegalArgumentException if:
+		 *                                  <ul>
+		 *                                  <li>{@code assetId} is negative.</li>
+		 *                                  <li>{@code symbol} contains leading or trailing whitespace, or is
+		 *                                  empty.</li>
+		 *                                  </ul>
+		 */
+		public AssetCostBasis
+		{
+			requireThat(assetId, "assetId").isNotNegative();
+			requireThat(symbol, "symbol").isStripped().isNotEmpty();
+			requireThat(currency, "currency").isNotNull();
+			requireThat(quantity, "quantity").isNotNull();
+			requireThat(costBasis, "costBasis").isNotNull();
+			requireThat(realizedGain, "realizedGain").isNotNull();
+		}
+
+		/**
+		 * Returns the number of units held as a fixed-point value.
+		 *
+		 * @return the number of units held
+		 * @throws ArithmeticException if the value is out of range
+		 * @see FixedPoint
+		 */
+		public long quantityAsFixedPoint()
+		{
+			return FixedPoint.valueOf(quantity);
+		}
+
+		/**
+		 * Returns the cost base as a fixed-point value.
+		 *
+		 * @return the cost base
+		 * @throws ArithmeticException if the value is out of range
+		 * @see FixedPoint
+		 */
+		public long costBasisAsFixedPoint()
+		{
+			return FixedPoint.valueOf(costBasis);
+		}
+
+		/**
+		 * Returns the realized gain as a fixed-point value.
+		 *
+		 * @return the realized gain
+		 * @throws ArithmeticException if the value is out of range
+		 * @see FixedPoint
+		 */
+		public long realizedGainAsFixedPoint()
+		{
+			return FixedPoint.valueOf(realizedGain);
+		}
+	}
+
+	/**
+	 * A trade that reduced a position.
+	 *
+	 * @param trade        the trade
+	 * @param costBasis    the share of the position's cost base that was released by the trade
+	 * @param realizedGain the gain or loss that was realized by the trade, after commissions
+	 */
+	public record Disposition(Trade trade, BigDecimal costBasis, BigDecimal realizedGain)
+	{
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param trade        the trade
+		 * @param costBasis    the share of the position's cost base that was released by the trade
+		 * @param realizedGain the gain or loss that was realized by the trade, after commissions
+		 * @throws NullPointerException if any of the arguments are null
+		 */
+		public Disposition
+		{
+			requireThat(trade, "trade").isNotNull();
+			requireThat(costBasis, "costBasis").isNotNull();
+			requireThat(realizedGain, "realizedGain").isNotNull();
+		}
+	}
+
+	/**
+	 * The mutable state of a position.
+	 */
+	private static final class AssetState
+	{
+		private final String symbol;
+		private final String currency;
+		/**
+		 * The number of units held, as a fixed-point value.
+		 */
+		private long quantity;
+		/**
+		 * The net amount of the trades that opened the units held, as a fixed-point value. It is the negation
+		 * of the cost base.
+		 */
+		private long netAmount;
+		/**
+		 * The sum of the realized gains, as a fixed-point value.
+		 */
+		private long realizedGain;
+
+		/**
+		 * Creates a position without any units.
+		 *
+		 * @param symbol   the symbol of the asset
+		 * @param currency the currency of all amounts
+		 */
+		AssetState(String symbol, String currency)
+		{
+			this.symbol = symbol;
+			this.currency = currency;
+		}
+
+		/**
+		 * Returns a copy of this position.
+		 *
+		 * @return a new instance
+		 */
+		public AssetState copy()
+		{
+			AssetState copy = new AssetState(symbol, currency);
+			copy.quantity = quantity;
+			copy.netAmount = netAmount;
+			copy.realizedGain = realizedGain;
+			return copy;
+		}
+
+		/**
+		 * Applies a trade to this position.
+		 *
+		 * @param trade the trade
+		 * @return the disposition, or {@code null} if the trade did not reduce the position
+		 * @throws IllegalArgumentException if the trade reverses the direction of the position
+		 * @throws ArithmeticException      if a number cannot be represented as a {@code FixedPoint} value
+		 */
+		public Disposition apply(Trade trade)
+		{
+			long tradeQuantity = trade.quantityAsFixedPoint();
+			long tradeNetAmount = Math.addExact(trade.proceedsAsFixedPoint(), trade.commissionAsFixedPoint());
+			long newQuantity = Math.addExact(quantity, tradeQuantity);
+			if (Long.signum(quantity) == -Long.signum(newQuantity))
+			{
+				throw new IllegalArgumentException("The trade reverses the direction of the position.\n" +
+					"quantity: " + FixedPoint.toString(quantity) + "\n" +
+					"trade   : " + trade);
+			}
+			if (quantity == 0 || Long.signum(quantity) == Long.signum(tradeQuantity))
+			{
+				// The trade opens or increases the position
+				netAmount = Math.addExact(netAmount, tradeNetAmount);
+				quantity = newQuantity;
+				return null;
+			}
+
+			// The trade reduces the position
+			long releasedNetAmount;
+			if (newQuantity == 0)
+				releasedNetAmount = netAmount;
+			else
+			{
+				releasedNetAmount = FixedPoint.multiplyRatio(netAmount, Math.abs(tradeQuantity),
+					Math.abs(quantity));
+			}
+			long gain = Math.addExact(tradeNetAmount, releasedNetAmount);
+			netAmount -= releasedNetAmount;
+			realizedGain = Math.addExact(realizedGain, gain);
+			quantity = newQuantity;
+			return new Disposition(trade, FixedPoint.toBigDecimal(Math.negateExact(releasedNetAmount)),
+				FixedPoint.toBigDecimal(gain));
+		}
+
+		/**
+		 * Returns the public representation of this position.
+		 *
+		 * @param assetId the ID of the position
+		 * @return the cost base of the position
+		 */
+		public AssetCostBasis toCostBasis(int assetId)
+		{
+			return new AssetCostBasis(assetId, symbol, currency, FixedPoint.toBigDecimal(quantity),
+				FixedPoint.toBigDecimal(Math.negateExact(netAmount)), FixedPoint.toBigDecimal(realizedGain));
+		}
+	}
+}
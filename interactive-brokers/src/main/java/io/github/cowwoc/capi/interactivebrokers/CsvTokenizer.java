@@ -0,0 +1,343 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Splits UTF-8 encoded CSV data into rows, without decoding the values that are never read.
+ * <p>
+ * The tokenizer records the byte range of each value of a row. A value is only decoded into a {@code String}
+ * when it is {@link List#get(int) retrieved}, and a value that contains the same bytes as the previous value
+ * in the same column is not decoded again. Activity statements repeat the section name, row type, currency
+ * and asset category of almost every row, so most values that are retrieved are never decoded.
+ * <p>
+ * This is the only CSV grammar that statements are parsed with: values are separated by commas, rows are
+ * terminated by {@code \n}, {@code \r\n} or {@code \r}, and quoted values may contain commas, line breaks and
+ * escaped ({@code ""}) quotes. A UTF-8 Byte Order Mark at the start of the data is skipped.
+ * <p>
+ * The bytes between delimiters are skipped using a {@link DelimiterScanner}, which examines many bytes at a
+ * time.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class CsvTokenizer
+{
+	private static final int INITIAL_CAPACITY = 32;
+	/**
+	 * The CSV data.
+	 */
+	private final MemorySegment csv;
+	private final long end;
+	private final DelimiterScanner delimiters;
+	private final Row row = new Row();
+	/**
+	 * The offset of the current row.
+	 */
+	private long rowStart;
+	/**
+	 * The offset of the next row.
+	 */
+	private long position;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param csv the UTF-8 encoded CSV data. The data must remain accessible and unchanged until the
+	 *            tokenizer is no longer used.
+	 */
+	CsvTokenizer(MemorySegment csv)
+	{
+		this.csv = csv;
+		this.end = csv.byteSize();
+		this.delimiters = new DelimiterScanner(csv);
+		// Skip the Byte Order Mark (BOM) at the beginning of the data indicating the use of UTF-8
+		if (end >= 3 && csv.get(JAVA_BYTE, 0) == (byte) 0xEF && csv.get(JAVA_BYTE, 1) == (byte) 0xBB &&
+			csv.get(JAVA_BYTE, 2) == (byte) 0xBF)
+		{
+			position = 3;
+		}
+	}
+
+	/**
+	 * Reads the next row.
+	 *
+	 * @return {@code false} if there are no more rows
+	 * @throws IOException if the row is malformed
+	 */
+	public boolean nextRow() throws IOException
+	{
+		if (position >= end)
+			return false;
+		rowStart = position;
+		row.clear();
+		while (true)
+		{
+			if (position < end && csv.get(JAVA_BYTE, position) == '"')
+			{
+				if (readQuotedValue())
+					return true;
+			}
+			else if (readValue())
+				return true;
+		}
+	}
+
+	/**
+	 * Reads an unquoted value, and the separator that follows it.
+	 *
+	 * @return {@code true} if the value is the last one in the row
+	 */
+	private boolean readValue()
+	{
+		long start = position;
+		while (true)
+		{
+			position = delimiters.next(position);
+			// Quotes within unquoted values are treated as regular characters
+			if (position >= end || csv.get(JAVA_BYTE, position) != '"')
+				break;
+			++position;
+		}
+		row.add(start, position - start, false);
+		return skipSeparator();
+	}
+
+	/**
+	 * Reads a quoted value, and the separator that follows it.
+	 *
+	 * @return {@code true} if the value is the last one in the row
+	 * @throws IOException if the value is not terminated by a quote, or if the closing quote is followed by
+	 *                     anything other than a separator
+	 */
+	private boolean readQuotedValue() throws IOException
+	{
+		// Skip the opening quote
+		long start = ++position;
+		boolean escaped = false;
+		while (true)
+		{
+			position = delimiters.next(position);
+			if (position >= end)
+				throw new IOException("Missing closing quote for value at offset " + (start - 1));
+			if (csv.get(JAVA_BYTE, position) == '"')
+			{
+				if (position + 1 >= end || csv.get(JAVA_BYTE, position + 1) != '"')
+					break;
+				escaped = true;
+				position += 2;
+			}
+			else
+				++position;
+		}
+		row.add(start, position - start, escaped);
+		// Skip the closing quote
+		++position;
+		if (position < end)
+		{
+			byte b = csv.get(JAVA_BYTE, position);
+			if (b != ',' && b != '\n' && b != '\r')
+			{
+				throw new IOException("Expected a separator after the closing quote at offset " +
+					(position - 1));
+			}
+		}
+		return skipSeparator();
+	}
+
+	/**
+	 * Skips the separator that follows a value.
+	 *
+	 * @return {@code true} if the separator ends the row
+	 */
+	private boolean skipSeparator()
+	{
+		if (position >= end)
+			return true;
+		byte b = csv.get(JAVA_BYTE, position++);
+		if (b == ',')
+			return false;
+		if (b == '\r' && position < end && csv.get(JAVA_BYTE, position) == '\n')
+			++position;
+		return true;
+	}
+
+	/**
+	 * Returns the values of the current row.
+	 *
+	 * @return the values of the row. The list is updated by {@link #nextRow()}, so callers must not retain
+	 *     it.
+	 */
+	public List<String> row()
+	{
+		return row;
+	}
+
+	/**
+	 * Returns the offset of the current row.
+	 *
+	 * @return the offset of the row's first byte
+	 */
+	public long rowStart()
+	{
+		return rowStart;
+	}
+
+	/**
+	 * Returns the offset of the end of the current row.
+	 *
+	 * @return the offset of the byte that follows the row's line terminator
+	 */
+	public long rowEnd()
+	{
+		return position;
+	}
+
+	/**
+	 * The values of a row, which are decoded on demand.
+	 */
+	private final class Row extends AbstractList<String> implements RandomAccess
+	{
+		/**
+		 * The offset of each value, excluding quotes.
+		 */
+		private long[] starts = new long[INITIAL_CAPACITY];
+		/**
+		 * The length of each value, in bytes.
+		 */
+		private int[] lengths = new int[INITIAL_CAPACITY];
+		/**
+		 * Indicates if a value contains escaped quotes.
+		 */
+		private boolean[] escaped = new boolean[INITIAL_CAPACITY];
+		/**
+		 * The last value that was decoded in each column.
+		 */
+		private String[] decoded = new String[INITIAL_CAPACITY];
+		/**
+		 * The offset of the bytes that each value of {@link #decoded} was decoded from.
+		 */
+		private long[] decodedStarts = new long[INITIAL_CAPACITY];
+		/**
+		 * The length of the bytes that each value of {@link #decoded} was decoded from.
+		 */
+		private int[] decodedLengths = new int[INITIAL_CAPACITY];
+		/**
+		 * A buffer that values are copied into before they are decoded.
+		 */
+		private byte[] buffer = new byte[256];
+		private int size;
+
+		/**
+		 * Removes all values.
+		 */
+		@Override
+		public void clear()
+		{
+			size = 0;
+		}
+
+		/**
+		 * Adds a value.
+		 *
+		 * @param start   the offset of the value
+		 * @param length  the length of the value, in bytes
+		 * @param escaped {@code true} if the value contains escaped quotes
+		 */
+		public void add(long start, long length, boolean escaped)
+		{
+			if (size == starts.length)
+			{
+				int capacity = size * 2;
+				starts = Arrays.copyOf(starts, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				this.escaped = Arrays.copyOf(this.escaped, capacity);
+				decoded = Arrays.copyOf(decoded, capacity);
+				decodedStarts = Arrays.copyOf(decodedStarts, capacity);
+				decodedLengths = Arrays.copyOf(decodedLengths, capacity);
+			}
+			starts[size] = start;
+			lengths[size] = Math.toIntExact(length);
+			this.escaped[size] = escaped;
+			++size;
+		}
+
+		@Override
+		public String get(int index)
+		{
+			Objects.checkIndex(index, size);
+			long start = starts[index];
+			int length = lengths[index];
+			String value = decoded[index];
+			if (value != null && decodedLengths[index] == length && equals(decodedStarts[index], start, length))
+				return value;
+			value = decode(start, length, escaped[index]);
+			decoded[index] = value;
+			decodedStarts[index] = start;
+			decodedLengths[index] = length;
+			return value;
+		}
+
+		/**
+		 * Indicates if two ranges of the data contain the same bytes.
+		 *
+		 * @param first  the offset of the first range
+		 * @param second the offset of the second range
+		 * @param length the length of the ranges, in bytes
+		 * @return {@code true} if the ranges contain the same bytes
+		 */
+		private boolean equals(long first, long second, int length)
+		{
+			if (first == second)
+				return true;
+			// Values are short, so a loop is cheaper than slicing the segment
+			for (int i = 0; i < length; ++i)
+			{
+				if (csv.get(JAVA_BYTE, first + i) != csv.get(JAVA_BYTE, second + i))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Decodes a value.
+		 *
+		 * @param start   the offset of the value
+		 * @param length  the length of the value, in bytes
+		 * @param escaped {@code true} if the value contains escaped quotes
+		 * @return the value
+		 */
+		private String decode(long start, int length, boolean escaped)
+		{
+			if (length == 0)
+				return "";
+			if (buffer.length < length)
+				buffer = new byte[Math.max(length, buffer.length * 2)];
+			MemorySegment.copy(csv, JAVA_BYTE, start, buffer, 0, length);
+			if (!escaped)
+				return new String(buffer, 0, length, UTF_8);
+			// Replace each pair of quotes with a single quote
+			int unescapedLength = 0;
+			for (int i = 0; i < length; ++i)
+			{
+				buffer[unescapedLength++] = buffer[i];
+				if (buffer[i] == '"')
+					++i;
+			}
+			return new String(buffer, 0, unescapedLength, UTF_8);
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parses the dates and times of an activity statement.
+ * <p>
+ * Statements use the fixed-width formats {@code yyyy-MM-dd} and {@code yyyy-MM-dd, HH:mm:ss}, so values are
+ * decoded directly from their characters instead of using a {@code DateTimeFormatter}. Many rows share the
+ * same date, so recently parsed dates are cached.
+ * <p>
+ * This class is not thread-safe. Each section parser uses its own instance, which lives as long as the
+ * statement that is being loaded.
+ */
+final class DateParser
+{
+	/**
+	 * The number of cached dates. Must be a power of two.
+	 */
+	private static final int CACHE_SIZE = 256;
+	/**
+	 * The {@code yyyyMMdd} value of each cached date.
+	 */
+	private final int[] cachedKeys = new int[CACHE_SIZE];
+	private final LocalDate[] cachedDates = new LocalDate[CACHE_SIZE];
+
+	/**
+	 * Parses a date.
+	 *
+	 * @param text a date in the format {@code yyyy-MM-dd}
+	 * @return the date
+	 * @throws NullPointerException   if {@code text} is null
+	 * @throws DateTimeParseException if {@code text} is not a valid date
+	 */
+	public LocalDate parseDate(CharSequence text)
+	{
+		if (text.length() != 10)
+			throw new DateTimeParseException("Text '" + text + "' could not be parsed", text, 0);
+		return toDate(text);
+	}
+
+	/**
+	 * Parses a date and time.
+	 *
+	 * @param text a date and time in the format {@code yyyy-MM-dd, HH:mm:ss}
+	 * @return the date and time
+	 * @throws NullPointerException   if {@code text} is null
+	 * @throws DateTimeParseException if {@code text} is not a valid date and time
+	 */
+	public LocalDateTime parseDateTime(CharSequence text)
+	{
+		if (text.length() != 20 || text.charAt(10) != ',' || text.charAt(11) != ' ' ||
+			text.charAt(14) != ':' || text.charAt(17) != ':')
+		{
+			throw new DateTimeParseException("Text '" + text + "' could not be parsed", text, 0);
+		}
+		LocalDate date = toDate(text);
+		int hour = toInt(text, 12, 2);
+		int minute = toInt(text, 15, 2);
+		int second = toInt(text, 18, 2);
+		try
+		{
+			return LocalDateTime.of(date, LocalTime.of(hour, minute, second));
+		}
+		catch (DateTimeException e)
+		{
+			throw new DateTimeParseException("Text '" + text + "' could not be parsed", text, 12, e);
+		}
+	}
+
+	/**
+	 * Parses the {@code yyyy-MM-dd} prefix of a value.
+	 *
+	 * @param text a value that is at least 10 characters long
+	 * @return the date
+	 * @throws DateTimeParseException if the prefix is not a valid date
+	 */
+	private LocalDate toDate(CharSequence text)
+	{
+		if (text.charAt(4) != '-' || text.charAt(7) != '-')
+			throw new DateTimeParseException("Text '" + text + "' could not be parsed", text, 0);
+		int year = toInt(text, 0, 4);
+		int month = toInt(text, 5, 2);
+		int day = toInt(text, 8, 2);
+		int key = year * 10_000 + month * 100 + day;
+		// Fibonacci hashing spreads consecutive days across the cache
+		int slot = key * 0x9E3779B9 >>> Integer.SIZE - Integer.numberOfTrailingZeros(CACHE_SIZE);
+		LocalDate date = cachedDates[slot];
+		if (date != null && cachedKeys[slot] == key)
+			return date;
+		try
+		{
+			date = LocalDate.of(year, month, day);
+		}
+		catch (DateTimeException e)
+		{
+			throw new DateTimeParseException("Text '" + text + "' could not be parsed", text, 0, e);
+		}
+		cachedKeys[slot] = key;
+		cachedDates[slot] = date;
+		return date;
+	}
+
+	/**
+	 * Parses a fixed number of decimal digits.
+	 *
+	 * @param text   a value
+	 * @param start  the index of the first digit
+	 * @param length the number of digits
+	 * @return the number
+	 * @throws DateTimeParseException if any of the characters are not digits
+	 */
+	private static int toInt(CharSequence text, int start, int length)
+	{
+		int result = 0;
+		for (int i = start, end = start + length; i < end; ++i)
+		{
+			char c = text.charAt(i);
+			if (c < '0' || c > '9')
+				throw new DateTimeParseException("Text '" + text + "' could not be parsed", text, i);
+			result = result * 10 + c - '0';
+		}
+		return result;
+	}
+}
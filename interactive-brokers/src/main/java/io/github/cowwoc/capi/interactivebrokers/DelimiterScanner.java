@@ -0,0 +1,94 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.spi.BlockScanner;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Locates the commas, quotes, carriage returns and line feeds of CSV data.
+ * <p>
+ * The data is scanned one block at a time, and the delimiters of the current block are retained as a
+ * bitmask, so the bytes between delimiters are skipped without being inspected individually.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class DelimiterScanner
+{
+	private static final BlockScanner BLOCKS = loadBlockScanner();
+	private final MemorySegment csv;
+	private final long end;
+	/**
+	 * The offset of the block that {@link #blockMask} describes, or {@code -1} if no block was scanned.
+	 */
+	private long blockStart = -1;
+	/**
+	 * The delimiters of the current block.
+	 */
+	private long blockMask;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param csv the UTF-8 encoded CSV data
+	 */
+	DelimiterScanner(MemorySegment csv)
+	{
+		this.csv = csv;
+		this.end = csv.byteSize();
+	}
+
+	/**
+	 * Returns the best block scanner that is available at runtime.
+	 * <p>
+	 * Providers that cannot be instantiated, such as the Vector API scanner when the
+	 * {@code jdk.incubator.vector} module is absent, are ignored.
+	 *
+	 * @return the first {@link BlockScanner} provider that can be instantiated, or a
+	 *         {@link ScalarBlockScanner} if there are none
+	 */
+	private static BlockScanner loadBlockScanner()
+	{
+		try
+		{
+			Optional<BlockScanner> provider = ServiceLoader.load(BlockScanner.class).findFirst();
+			if (provider.isPresent())
+				return provider.get();
+		}
+		catch (ServiceConfigurationError | LinkageError _)
+		{
+			// Fall back to the scalar implementation
+		}
+		return new ScalarBlockScanner();
+	}
+
+	/**
+	 * Returns the next delimiter.
+	 *
+	 * @param from the offset to start searching from
+	 * @return the offset of the first comma, quote, carriage return or line feed at or after {@code from}, or
+	 *         the size of the data if there are none
+	 */
+	public long next(long from)
+	{
+		while (from < end)
+		{
+			long start = from & -BlockScanner.BLOCK_SIZE;
+			if (start != blockStart)
+			{
+				blockStart = start;
+				if (end - start < BlockScanner.BLOCK_SIZE)
+					blockMask = ScalarBlockScanner.scanBytes(csv, start, end);
+				else
+					blockMask = BLOCKS.scan(csv, start);
+			}
+			long mask = blockMask & (-1L << (from - start));
+			if (mask != 0)
+				return start + Long.numberOfTrailingZeros(mask);
+			from = start + BlockScanner.BLOCK_SIZE;
+		}
+		return end;
+	}
+}
@@ -0,0 +1,68 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Dividend;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses the {@code Dividends} and {@code Withholding Tax} sections, one per currency.
+ */
+final class DividendsParser implements SectionParser
+{
+	private final Consumer<Dividend> consumer;
+	private final IbLoadFilter filter;
+	private final DateParser dates = new DateParser();
+	private int headerIndex;
+	private int currencyIndex;
+	private int dateIndex;
+	private int amountIndex;
+	private int descriptionIndex;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param consumer receives each dividend or withheld tax as soon as it is parsed
+	 * @param filter   selects the dividends and withheld taxes to parse
+	 * @throws NullPointerException if any of the arguments are null
+	 */
+	DividendsParser(Consumer<Dividend> consumer, IbLoadFilter filter)
+	{
+		requireThat(consumer, "consumer").isNotNull();
+		requireThat(filter, "filter").isNotNull();
+		this.consumer = consumer;
+		this.filter = filter;
+	}
+
+	@Override
+	public void startSection(List<String> columns) throws IOException
+	{
+		headerIndex = Columns.indexOf(columns, "Header");
+		currencyIndex = Columns.indexOf(columns, "Currency");
+		dateIndex = Columns.indexOf(columns, "Date");
+		amountIndex = Columns.indexOf(columns, "Amount");
+		descriptionIndex = Columns.indexOf(columns, "Description");
+	}
+
+	@Override
+	public void parseRow(List<String> row)
+	{
+		requireThat(Columns.get(row, headerIndex), "Header").isEqualTo("Data");
+
+		String currency = Columns.get(row, currencyIndex);
+		if (currency.startsWith("Total") || !filter.acceptsCurrency(currency))
+			return;
+		String rawDate = Columns.get(row, dateIndex);
+		if (!filter.acceptsDate(rawDate))
+			return;
+		LocalDate date = dates.parseDate(rawDate);
+		BigDecimal quantity = new BigDecimal(Columns.get(row, amountIndex));
+		String description = Columns.get(row, descriptionIndex);
+		consumer.accept(new Dividend(date, currency, quantity, description));
+	}
+}
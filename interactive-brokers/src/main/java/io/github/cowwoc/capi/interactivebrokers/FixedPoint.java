@@ -0,0 +1,249 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Decimal numbers with 7 fractional digits, stored in a {@code long}.
+ * <p>
+ * A fixed-point value {@code v} represents the number {@code v / 10^7}, which is equivalent to
+ * {@code BigDecimal.valueOf(v, 7)}. Fixed-point values range from approximately {@code -922,337,203,685} to
+ * {@code 922,337,203,685}. Unlike {@code BigDecimal}, arithmetic does not allocate memory.
+ * <p>
+ * Results are rounded using {@link RoundingMode#HALF_EVEN}. Operations whose result is out of range throw
+ * {@code ArithmeticException}.
+ */
+public final class FixedPoint
+{
+	/**
+	 * The number of fractional digits.
+	 */
+	public static final int SCALE = 7;
+	/**
+	 * The fixed-point representation of {@code 1}.
+	 */
+	public static final long ONE = 10_000_000L;
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L,
+		10_000_000L};
+
+	/**
+	 * Parses the String representation of a number.
+	 * <p>
+	 * The value may contain a leading sign, thousands separators ({@code ,}) in its integer part and a decimal
+	 * point. Digits beyond the 7th fractional digit are rounded.
+	 *
+	 * @param value a number (e.g. {@code -1,234.5})
+	 * @return the fixed-point value
+	 * @throws NullPointerException  if {@code value} is null
+	 * @throws NumberFormatException if {@code value} is not a valid number or is out of range
+	 */
+	public static long parse(CharSequence value)
+	{
+		int length = value.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0)
+		{
+			char first = value.charAt(0);
+			if (first == '-')
+			{
+				negative = true;
+				++i;
+			}
+			else if (first == '+')
+				++i;
+		}
+		// Accumulate a negative magnitude so that Long.MIN_VALUE does not overflow
+		long result = 0;
+		boolean hasDigits = false;
+		boolean hasDecimalPoint = false;
+		int fractionDigits = 0;
+		// The first digit beyond SCALE, and whether any of the remaining digits are non-zero
+		int extraDigits = 0;
+		int roundingDigit = 0;
+		boolean sticky = false;
+		for (; i < length; ++i)
+		{
+			char c = value.charAt(i);
+			if (c >= '0' && c <= '9')
+			{
+				hasDigits = true;
+				int digit = c - '0';
+				if (fractionDigits == SCALE)
+				{
+					if (extraDigits == 0)
+						roundingDigit = digit;
+					else if (digit != 0)
+						sticky = true;
+					++extraDigits;
+					continue;
+				}
+				if (result < -Long.MAX_VALUE / 10)
+					throw new NumberFormatException("Out of range: " + value);
+				result = result * 10 - digit;
+				if (result > 0)
+					throw new NumberFormatException("Out of range: " + value);
+				if (hasDecimalPoint)
+					++fractionDigits;
+			}
+			else if (c == ',' && !hasDecimalPoint && hasDigits)
+			{
+				// Skip thousands separators
+			}
+			else if (c == '.' && !hasDecimalPoint)
+				hasDecimalPoint = true;
+			else
+				throw new NumberFormatException("Invalid number: " + value);
+		}
+		if (!hasDigits)
+			throw new NumberFormatException("Invalid number: " + value);
+		try
+		{
+			result = Math.multiplyExact(result, POWERS_OF_TEN[SCALE - fractionDigits]);
+			if (roundingDigit > 5 || (roundingDigit == 5 && (sticky || (result & 1) != 0)))
+				result = Math.subtractExact(result, 1);
+			if (negative)
+				return result;
+			return Math.negateExact(result);
+		}
+		catch (ArithmeticException e)
+		{
+			NumberFormatException exception = new NumberFormatException("Out of range: " + value);
+			exception.initCause(e);
+			throw exception;
+		}
+	}
+
+	/**
+	 * Converts a {@code BigDecimal} to a fixed-point value.
+	 *
+	 * @param value a number
+	 * @return the fixed-point value
+	 * @throws NullPointerException if {@code value} is null
+	 * @throws ArithmeticException  if {@code value} is out of range
+	 */
+	public static long valueOf(BigDecimal value)
+	{
+		// Neither setScale() nor movePointRight() inflate values whose unscaled value fits in a long
+		return value.setScale(SCALE, RoundingMode.HALF_EVEN).movePointRight(SCALE).longValueExact();
+	}
+
+	/**
+	 * Converts a fixed-point value to a {@code BigDecimal}.
+	 *
+	 * @param value a fixed-point value
+	 * @return a {@code BigDecimal} with a scale of 7
+	 */
+	public static BigDecimal toBigDecimal(long value)
+	{
+		return BigDecimal.valueOf(value, SCALE);
+	}
+
+	/**
+	 * Returns the String representation of a fixed-point value.
+	 *
+	 * @param value a fixed-point value
+	 * @return the number, with 7 fractional digits (e.g. {@code -1234.5000000})
+	 */
+	public static String toString(long value)
+	{
+		return toBigDecimal(value).toPlainString();
+	}
+
+	/**
+	 * Multiplies two fixed-point values.
+	 *
+	 * @param first  a fixed-point value
+	 * @param second a fixed-point value
+	 * @return {@code first * second}
+	 * @throws ArithmeticException if the result is out of range
+	 */
+	public static long multiply(long first, long second)
+	{
+		long high = Math.multiplyHigh(first, second);
+		long low = first * second;
+		if ((high == 0 && low >= 0) || (high == -1 && low < 0))
+			return divideAndRound(low, ONE);
+		// The intermediate product requires more than 64 bits
+		return valueOf(toBigDecimal(first).multiply(toBigDecimal(second)));
+	}
+
+	/**
+	 * Divides two fixed-point values.
+	 *
+	 * @param dividend the fixed-point value to divide
+	 * @param divisor  the fixed-point value to divide by
+	 * @return {@code dividend / divisor}
+	 * @throws ArithmeticException if {@code divisor} is zero or the result is out of range
+	 */
+	public static long divide(long dividend, long divisor)
+	{
+		if (divisor == 0)
+			throw new ArithmeticException("Division by zero");
+		long high = Math.multiplyHigh(dividend, ONE);
+		long low = dividend * ONE;
+		if (((high == 0 && low >= 0) || (high == -1 && low < 0)) && divisor != Long.MIN_VALUE)
+			return divideAndRound(low, divisor);
+		// The scaled dividend requires more than 64 bits
+		return valueOf(toBigDecimal(dividend).divide(toBigDecimal(divisor), SCALE, RoundingMode.HALF_EVEN));
+	}
+
+	/**
+	 * Multiplies a fixed-point value by the ratio of two fixed-point values, rounding once instead of
+	 * rounding the ratio and then the product.
+	 *
+	 * @param value       a fixed-point value
+	 * @param numerator   the fixed-point value to multiply by
+	 * @param denominator the fixed-point value to divide by
+	 * @return {@code value * numerator / denominator}
+	 * @throws ArithmeticException if {@code denominator} is zero or the result is out of range
+	 */
+	public static long multiplyRatio(long value, long numerator, long denominator)
+	{
+		if (denominator == 0)
+			throw new ArithmeticException("Division by zero");
+		// Quantities are typically whole numbers, in which case the ratio can be reduced without losing
+		// precision
+		if (numerator % ONE == 0 && denominator % ONE == 0)
+		{
+			numerator /= ONE;
+			denominator /= ONE;
+		}
+		long high = Math.multiplyHigh(value, numerator);
+		long low = value * numerator;
+		if (((high == 0 && low >= 0) || (high == -1 && low < 0)) && denominator != Long.MIN_VALUE)
+			return divideAndRound(low, denominator);
+		// The intermediate product requires more than 64 bits
+		BigDecimal product = BigDecimal.valueOf(value).multiply(BigDecimal.valueOf(numerator));
+		return product.divide(BigDecimal.valueOf(denominator), 0, RoundingMode.HALF_EVEN).longValueExact();
+	}
+
+	/**
+	 * Divides two integers, rounding the result using {@link RoundingMode#HALF_EVEN}.
+	 *
+	 * @param dividend the value to divide
+	 * @param divisor  the value to divide by, which may not be {@code Long.MIN_VALUE}
+	 * @return the rounded quotient
+	 */
+	private static long divideAndRound(long dividend, long divisor)
+	{
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0)
+			return quotient;
+		long absoluteRemainder = Math.abs(remainder);
+		// Compare the remainder to half the divisor without overflowing
+		long comparison = Long.compare(absoluteRemainder, Math.abs(divisor) - absoluteRemainder);
+		if (comparison > 0 || (comparison == 0 && (quotient & 1) != 0))
+		{
+			if (Long.signum(dividend) == Long.signum(divisor))
+				return quotient + 1;
+			return quotient - 1;
+		}
+		return quotient;
+	}
+
+	private FixedPoint()
+	{
+	}
+}
@@ -0,0 +1,83 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Forex;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses the {@code Trades} sections of foreign currency exchanges, one per currency pair.
+ */
+final class ForexParser implements SectionParser
+{
+	private final Consumer<Forex> consumer;
+	private final IbLoadFilter filter;
+	private final DateParser dates = new DateParser();
+	private int headerIndex;
+	private int symbolIndex;
+	private int dateTimeIndex;
+	private int quantityIndex;
+	private int priceIndex;
+	private int proceedsIndex;
+	private int commissionIndex;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param consumer receives each foreign currency exchange as soon as it is parsed
+	 * @param filter   selects the exchanges to parse
+	 * @throws NullPointerException if any of the arguments are null
+	 */
+	ForexParser(Consumer<Forex> consumer, IbLoadFilter filter)
+	{
+		requireThat(consumer, "consumer").isNotNull();
+		requireThat(filter, "filter").isNotNull();
+		this.consumer = consumer;
+		this.filter = filter;
+	}
+
+	@Override
+	public void startSection(List<String> columns) throws IOException
+	{
+		headerIndex = Columns.indexOf(columns, "Header");
+		symbolIndex = Columns.indexOf(columns, "Symbol");
+		dateTimeIndex = Columns.indexOf(columns, "Date/Time");
+		quantityIndex = Columns.indexOf(columns, "Quantity");
+		priceIndex = Columns.indexOf(columns, "T. Price");
+		proceedsIndex = Columns.indexOf(columns, "Proceeds");
+		commissionIndex = Columns.indexOf(columns, "Comm in USD");
+	}
+
+	@Override
+	public void parseRow(List<String> row)
+	{
+		boolean skip = switch (Columns.get(row, headerIndex))
+		{
+			case "Data" -> false;
+			case "SubTotal", "Total" -> true;
+			default -> throw new AssertionError("Unsupported header: " + row);
+		};
+		if (skip)
+			return;
+
+		String rawDateTime = Columns.get(row, dateTimeIndex);
+		if (!filter.acceptsDate(rawDateTime))
+			return;
+		String symbol = Columns.get(row, symbolIndex);
+		String[] currencyPair = symbol.split("\\.");
+		requireThat(currencyPair, "currencyPair").length().isEqualTo(2);
+		if (!filter.acceptsCurrency(currencyPair[0]) && !filter.acceptsCurrency(currencyPair[1]))
+			return;
+		LocalDateTime dateTime = dates.parseDateTime(rawDateTime);
+		long quantity = FixedPoint.parse(Columns.get(row, quantityIndex));
+		long price = FixedPoint.parse(Columns.get(row, priceIndex));
+		long proceeds = FixedPoint.parse(Columns.get(row, proceedsIndex));
+		long commission = FixedPoint.parse(Columns.get(row, commissionIndex));
+		consumer.accept(new Forex(dateTime, currencyPair[1], currencyPair[0], quantity, price, proceeds,
+			commission));
+	}
+}
@@ -0,0 +1,82 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Header;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses the {@code Statement} section.
+ */
+final class HeaderParser implements SectionParser
+{
+	private static final DateTimeFormatter HEADER_DATE_FORMAT = DateTimeFormatter.ofPattern("MMMM d, yyyy");
+	private static final DateTimeFormatter HEADER_DATE_TIME_FORMAT = DateTimeFormatter.
+		ofPattern("yyyy-MM-dd, HH:mm:ss z");
+	private int sections;
+	private LocalDate startDate;
+	private LocalDate endDate;
+	private LocalDateTime generatedAt;
+	private int headerIndex;
+	private int nameIndex;
+	private int valueIndex;
+
+	@Override
+	public void startSection(List<String> columns) throws IOException
+	{
+		++sections;
+		headerIndex = Columns.indexOf(columns, "Header");
+		nameIndex = Columns.indexOf(columns, "Field Name");
+		valueIndex = Columns.indexOf(columns, "Field Value");
+	}
+
+	@Override
+	public void parseRow(List<String> row)
+	{
+		requireThat(Columns.get(row, headerIndex), "Header").isEqualTo("Data");
+		String name = Columns.get(row, nameIndex);
+		String value = Columns.get(row, valueIndex);
+		switch (name)
+		{
+			case "BrokerName", "BrokerAddress" ->
+			{
+				// ignore
+			}
+			case "Title" -> requireThat(value, "value").withContext(row, "row").
+				isEqualTo("Activity Statement");
+			case "Period" ->
+			{
+				requireThat(startDate, "startDate").isNull();
+				requireThat(endDate, "endDate").isNull();
+
+				String[] period = value.split("-");
+				startDate = LocalDate.parse(period[0].strip(), HEADER_DATE_FORMAT);
+				endDate = LocalDate.parse(period[1].strip(), HEADER_DATE_FORMAT);
+			}
+			case "WhenGenerated" ->
+			{
+				requireThat(generatedAt, "generatedAt").isNull();
+				generatedAt = LocalDateTime.parse(value, HEADER_DATE_TIME_FORMAT);
+			}
+			default -> throw new AssertionError("Unsupported name: " + row);
+		}
+	}
+
+	/**
+	 * Returns the statement's header.
+	 *
+	 * @return the header
+	 * @throws IllegalArgumentException if the statement does not contain exactly one {@code Statement}
+	 *                                  section
+	 */
+	public Header getHeader()
+	{
+		requireThat(sections, "sections").isEqualTo(1);
+		return new Header(startDate, endDate, generatedAt);
+	}
+}
@@ -1,35 +1,26 @@
 package io.github.cowwoc.capi.interactivebrokers;
 
-import com.fasterxml.jackson.databind.MappingIterator;
-import com.fasterxml.jackson.databind.ObjectReader;
-import com.fasterxml.jackson.dataformat.csv.CsvMapper;
-import com.fasterxml.jackson.dataformat.csv.CsvSchema;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.StringJoiner;
-import java.util.function.Predicate;
+import java.util.concurrent.Executor;
 
 import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
-import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.that;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * An activity statement.
@@ -46,665 +37,256 @@ public record IbActivityStatement(Header header, Account account,
                                   Map<String, CashActivity> currencyToCashActivity, List<Trade> trades,
                                   List<Forex> forex, List<Deposit> deposits, List<Dividend> dividends)
 {
-	private static final DateTimeFormatter HEADER_DATE_FORMAT = DateTimeFormatter.ofPattern("MMMM d, yyyy");
-	private static final DateTimeFormatter HEADER_DATE_TIME_FORMAT = DateTimeFormatter.
-		ofPattern("yyyy-MM-dd, HH:mm:ss z");
-	private static final DateTimeFormatter LOCAL_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-	private static final DateTimeFormatter LOCAL_DATE_TIME_FORMAT = DateTimeFormatter.
-		ofPattern("yyyy-MM-dd, HH:mm:ss");
-	private static final CsvMapper CSV_MAPPER = new CsvMapper();
-	private static final CsvSchema EMPTY_SCHEMA = CsvSchema.emptySchema();
-	private static final CsvSchema SCHEMA_WITH_HEADER = EMPTY_SCHEMA.withHeader();
-	/**
-	 * The precision to use for numbers.
-	 */
-	private static final int PRECISION = 7;
-
 	/**
 	 * Loads a statement from a CSV file.
 	 *
 	 * @param csv the path of the CSV file
 	 * @return the parsed statement
-	 * @throws IOException if an I/O error occurs while reading the file
+	 * @throws NullPointerException     if {@code csv} is null
+	 * @throws IllegalArgumentException if the file is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the file
 	 */
 	public static IbActivityStatement load(Path csv) throws IOException
 	{
-		List<String> lines = Files.readAllLines(csv);
-		String firstLine = lines.getFirst();
-		if (firstLine.startsWith("\uFEFF"))
-		{
-			// Strip out the Byte Order Mark (BOM) at the beginning of the file indicating the use of UTF-8.
-			lines.set(0, firstLine.substring(1));
-		}
-
-		Header header = parseHeader(filter(lines, line -> line.containsKey("Statement")));
-		Account account = parseAccount(filter(lines, line -> line.containsKey("Account Information")));
-		Map<String, CashActivity> cashActivities = parseCashActivities(filter(lines, line ->
-			line.containsKey("Cash Report")));
-		Map<String, Set<Code>> stringCodeToEnums = parseCodes(filter(lines, line -> line.containsKey("Codes")));
-		Map<String, MarkToMarket> symbolToMarkToMarket = parseMarkToMarket(filter(lines,
-			line -> line.containsKey("Mark-to-Market Performance Summary")));
-		List<Trade> trades = parseTrades(filter(lines, line -> line.containsKey("Trades") &&
-			!line.get("Asset Category").equals("Forex")), stringCodeToEnums, symbolToMarkToMarket);
-		List<Forex> forex = parseForex(filter(lines, line -> line.containsKey("Trades") &&
-			line.get("Asset Category").equals("Forex")));
-
-		List<Deposit> deposits = parseDeposits(filter(lines, line ->
-			line.containsKey("Deposits & Withdrawals")));
-		List<Dividend> dividends = parseDividends(filter(lines, line ->
-			line.containsKey("Dividends") || line.containsKey("Withholding Tax")));
-
-		return new IbActivityStatement(header, account, cashActivities, trades, forex, deposits, dividends);
+		requireThat(csv, "csv").isNotNull();
+		StatementParser parser = new StatementParser();
+		parseRows(csv, parser);
+		return parser.getStatement();
 	}
 
 	/**
-	 * Filters the given {@code lines}, retaining only those that match {@code predicate}. The matching lines
-	 * are then joined into a single string, separated by {@code \n}.
+	 * Loads a subset of a statement from a CSV file.
+	 * <p>
+	 * Rows that the filter excludes are skipped before their numbers and dates are decoded, and sections
+	 * that it excludes are skipped entirely. The parts of the statement that are loaded are equal to the
+	 * corresponding parts of {@link #load(Path)}, minus the excluded rows.
 	 *
-	 * @param lines     the file contents, represented as a collection of lines
-	 * @param predicate a function that returns {@code true} if the given section matches the criteria
-	 * @return one {@code Reader} per section that matches {@code predicate}
-	 * @throws IOException if the line cannot be parsed as comma-separated values
+	 * @param csv    the path of the CSV file
+	 * @param filter selects the parts of the statement to load
+	 * @return the parsed statement
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if the file is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the file
 	 */
-	@SuppressWarnings("PMD.AvoidDeeplyNestedIfStmts")
-	private static List<Reader> filter(List<String> lines, Predicate<Map<String, String>> predicate)
-		throws IOException
+	public static IbActivityStatement load(Path csv, IbLoadFilter filter) throws IOException
 	{
-		ObjectReader lineReader = CSV_MAPPER.readerForListOf(String.class).
-			with(EMPTY_SCHEMA);
-		StringJoiner joiner = new StringJoiner("\n");
-		List<Reader> sections = new ArrayList<>();
-		String firstColumn = "";
-
-		for (String line : lines)
-		{
-			List<String> row = lineReader.readValue(line);
-			if ((!row.isEmpty() && !row.getFirst().equals(firstColumn)) || row.contains("Header"))
-			{
-				// Start of a new section
-				firstColumn = row.getFirst();
-				String sectionAsString = joiner.toString();
-				if (!sectionAsString.isEmpty())
-				{
-					try (StringReader section = new StringReader(sectionAsString);
-					     MappingIterator<Map<String, String>> it = CSV_MAPPER.readerForMapOf(String.class).
-						     with(SCHEMA_WITH_HEADER).
-						     readValues(section))
-					{
-						if (it.hasNext() && predicate.test(it.next()))
-							sections.add(new StringReader(sectionAsString));
-					}
-				}
-				joiner = new StringJoiner("\n");
-			}
-			joiner.add(line);
-		}
-		return sections;
+		requireThat(csv, "csv").isNotNull();
+		StatementParser parser = new StatementParser(filter);
+		parseRows(csv, parser);
+		return parser.getStatement();
 	}
 
 	/**
-	 * Parses the transaction codes.
+	 * Loads a statement from a CSV file, parsing independent sections concurrently.
+	 * <p>
+	 * Each section is parsed by {@code executor} once it has been read, so the time it takes to load a
+	 * statement approaches the time it takes to read it and parse its largest section. Virtual threads
+	 * ({@link java.util.concurrent.Executors#newVirtualThreadPerTaskExecutor()}) are a good fit, as are the
+	 * threads of an existing pool.
+	 * <p>
+	 * The rows of the trades section are also decoded concurrently, since it typically dominates the size of
+	 * a statement. Positions are still tracked in the order that trades appear, so the result is identical to
+	 * that of {@link #load(Path)}.
 	 *
-	 * @param sections the code sections
-	 * @return a map from the string representation of each code to its corresponding enum values
-	 * @throws NullPointerException     if {@code sections} is null
-	 * @throws IllegalArgumentException if:
-	 *                                  <ul>
-	 *                                    <li>there is more than one section.</li>
-	 *                                    <li>the statement type is not "Activity Statement".</li>
-	 *                                  </ul>
-	 * @throws IOException              if an I/O error occurs while reading the lines
+	 * @param csv      the path of the CSV file
+	 * @param executor the executor that parses sections
+	 * @return the parsed statement
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if the file is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the file
 	 */
-	private static Map<String, Set<Code>> parseCodes(List<Reader> sections) throws IOException
+	public static IbActivityStatement load(Path csv, Executor executor) throws IOException
 	{
-		requireThat(sections, "sections").size().isEqualTo(1);
-
-		Map<String, Set<Code>> stringCodeToEnums = new HashMap<>();
-		try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-			with(SCHEMA_WITH_HEADER).
-			readValues(sections.getFirst()))
-		{
-			while (it.hasNext())
-			{
-				Map<String, String> row = it.next();
-				requireThat(row.get("Header"), "Header").isEqualTo("Data");
-				String codeAsString = row.get("Code");
-				String meaning = row.get("Meaning");
-				Set<Code> codes = switch (meaning)
-				{
-					case "Assignment" -> Set.of(Code.ASSIGNMENT);
-					case "Resulted from an Expired Position" -> Set.of(Code.EXPIRED);
-					case "Opening Trade" -> Set.of(Code.OPEN);
-					case "Closing Trade" -> Set.of(Code.CLOSE);
-					case "Partial Execution" -> Set.of(Code.PARTIAL_EXECUTION);
-					case "The transaction was executed against IB or an affiliate" -> Set.of(Code.INTERNAL_TRADE);
-					case "A portion of the order was executed against IB or an affiliate; IB acted as agent on " +
-						     "a portion." -> Set.of(Code.PARTIAL_EXECUTION, Code.INTERNAL_TRADE);
-					case "The fractional portion of this trade was executed against IB or an affiliate. IB acted as " +
-						     "agent for the whole share portion of this trade." -> Set.of(
-						Code.FRACTIONAL_PORTION_TRADED_INTERNALLY);
-					case "IB acted as agent for both the fractional share portion and the whole share portion of " +
-						     "this trade; the fractional share portion was executed by an IB Affiliate as riskless " +
-						     "principal." -> Set.of(Code.INTERNAL_TRADE);
-					case "Ordered by IB (Margin Violation)" -> Set.of(Code.MARGIN_VIOLATION);
-					// ignore unknown codes
-					default -> Set.of();
-				};
-				if (!codes.isEmpty())
-				{
-					Set<Code> oldCodes = stringCodeToEnums.put(codeAsString, codes);
-					assert oldCodes == null : "code has multiple meanings: " + codeAsString;
-				}
-			}
-		}
-		return stringCodeToEnums;
+		requireThat(csv, "csv").isNotNull();
+		StatementParser parser = new StatementParser(executor);
+		parseRows(csv, parser);
+		return parser.getStatement();
 	}
 
 	/**
-	 * Parses the header.
+	 * Loads a statement from a channel containing CSV data.
+	 * <p>
+	 * The channel is left open.
 	 *
-	 * @param sections the header sections
-	 * @return a {@code Header} object
-	 * @throws NullPointerException     if {@code sections} is null
-	 * @throws IllegalArgumentException if:
-	 *                                  <ul>
-	 *                                    <li>there is more than one section.</li>
-	 *                                    <li>the statement type is not "Activity Statement".</li>
-	 *                                  </ul>
-	 * @throws IOException              if an I/O error occurs while reading the lines
+	 * @param csv the CSV data
+	 * @return the parsed statement
+	 * @throws NullPointerException     if {@code csv} is null
+	 * @throws IllegalArgumentException if the data is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the data
 	 */
-	private static Header parseHeader(List<Reader> sections) throws IOException
+	public static IbActivityStatement load(ReadableByteChannel csv) throws IOException
 	{
-		requireThat(sections, "sections").size().isEqualTo(1);
-		LocalDate startDate = null;
-		LocalDate endDate = null;
-		LocalDateTime generatedAt = null;
-
-		try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-			with(SCHEMA_WITH_HEADER).
-			readValues(sections.getFirst()))
-		{
-			while (it.hasNext())
-			{
-				Map<String, String> row = it.next();
-				requireThat(row.get("Header"), "Header").isEqualTo("Data");
-				String name = row.get("Field Name");
-				String value = row.get("Field Value");
-				switch (name)
-				{
-					case "BrokerName", "BrokerAddress" ->
-					{
-						// ignore
-					}
-					case "Title" -> requireThat(value, "value").withContext(row, "row").
-						isEqualTo("Activity Statement");
-					case "Period" ->
-					{
-						requireThat(startDate, "startDate").isNull();
-						requireThat(endDate, "endDate").isNull();
-
-						String[] period = value.split("-");
-						startDate = LocalDate.parse(period[0].strip(), HEADER_DATE_FORMAT);
-						endDate = LocalDate.parse(period[1].strip(), HEADER_DATE_FORMAT);
-					}
-					case "WhenGenerated" ->
-					{
-						requireThat(generatedAt, "generatedAt").isNull();
-						generatedAt = LocalDateTime.parse(value, HEADER_DATE_TIME_FORMAT);
-					}
-					default -> throw new AssertionError("Unsupported name: " + row);
-				}
-			}
-		}
-		return new Header(startDate, endDate, generatedAt);
+		requireThat(csv, "csv").isNotNull();
+		return load(Channels.newInputStream(csv));
 	}
 
 	/**
-	 * Parses the account information.
+	 * Loads a statement from a stream of CSV data.
+	 * <p>
+	 * The contents of the stream are read into memory and then tokenized in place, exactly like a file passed
+	 * to {@link #load(Path)}. The stream is left open.
 	 *
-	 * @param sections the account sections
-	 * @return an {@code Account} object
-	 * @throws NullPointerException     if {@code sections} is null
-	 * @throws IllegalArgumentException if there is more than one section
-	 * @throws IOException              if an I/O error occurs while reading the lines
+	 * @param csv the UTF-8 encoded CSV data
+	 * @return the parsed statement
+	 * @throws NullPointerException     if {@code csv} is null
+	 * @throws IllegalArgumentException if the data is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the data
 	 */
-	private static Account parseAccount(List<Reader> sections) throws IOException
+	public static IbActivityStatement load(InputStream csv) throws IOException
 	{
-		requireThat(sections, "sections").size().isEqualTo(1);
-		String owner = null;
-		String number = null;
-
-		try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-			with(SCHEMA_WITH_HEADER).
-			readValues(sections.getFirst()))
-		{
-			while (it.hasNext())
-			{
-				Map<String, String> row = it.next();
-				requireThat(row.get("Header"), "Header").isEqualTo("Data");
-				String name = row.get("Field Name");
-				switch (name)
-				{
-					case "Name" ->
-					{
-						requireThat(owner, "owner").isNull();
-						owner = row.get("Field Value");
-					}
-					case "Account" ->
-					{
-						requireThat(number, "number").isNull();
-						number = row.get("Field Value");
-					}
-					case "Account Type", "Customer Type", "Account Capabilities", "Base Currency" ->
-					{
-						// ignore
-					}
-					default -> throw new AssertionError("Unsupported name: " + row);
-				}
-			}
-		}
-		return new Account(number, owner);
+		return parse(csv, new StatementParser());
 	}
 
 	/**
-	 * Parses the cash activities.
+	 * Loads a statement from a stream of CSV data, parsing independent sections concurrently.
+	 * <p>
+	 * The contents of the stream are read into memory. Each section is then parsed by {@code executor} once it
+	 * has been tokenized, and the rows of the trades section are decoded concurrently. The stream is left
+	 * open.
 	 *
-	 * @param sections one section per currency
-	 * @return a map from a currency to its {@code CashActivity}
-	 * @throws NullPointerException if {@code sections} is null
-	 * @throws IOException          if an I/O error occurs while reading the lines
+	 * @param csv      the UTF-8 encoded CSV data
+	 * @param executor the executor that parses sections
+	 * @return the parsed statement
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if the data is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the data
+	 * @see #load(Path, Executor)
 	 */
-	private static Map<String, CashActivity> parseCashActivities(List<Reader> sections) throws IOException
+	public static IbActivityStatement load(InputStream csv, Executor executor) throws IOException
 	{
-		Map<String, CashActivity> activities = new HashMap<>();
-		Set<String> currencies = new HashSet<>();
-		Map<String, BigDecimal> openingBalance = new HashMap<>();
-		Map<String, BigDecimal> closingBalance = new HashMap<>();
-
-		for (Reader section : sections)
-		{
-			try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-				with(SCHEMA_WITH_HEADER).
-				readValues(section))
-			{
-				while (it.hasNext())
-				{
-					Map<String, String> row = it.next();
-					requireThat(row.get("Header"), "Header").isEqualTo("Data");
-
-					String currency = row.get("Currency");
-					if (currency.equals("Base Currency Summary"))
-					{
-						// The data will be repeated with the currency's name explicitly mentioned
-						continue;
-					}
-					currencies.add(currency);
-
-					String name = row.get("Currency Summary");
-					String total = row.get("Total");
-					switch (name)
-					{
-						case "Starting Cash" ->
-						{
-							BigDecimal previousValue = openingBalance.put(currency, new BigDecimal(total));
-							if (previousValue != null)
-								throw new AssertionError(currency + " already had an opening balance of " + previousValue);
-						}
-						case "Ending Cash" ->
-						{
-							BigDecimal previousValue = closingBalance.put(currency, new BigDecimal(total));
-							if (previousValue != null)
-								throw new AssertionError(currency + " already had an closing balance of " + previousValue);
-						}
-						case "Ending Settled Cash", "Deposits", "Trades (Sales)", "Trades (Purchase)", "Commissions",
-						     "Dividends", "Payment In Lieu of Dividends", "Withholding Tax", "Account Transfers",
-						     "Broker Interest Paid and Received" ->
-						{
-							// ignore
-						}
-						default -> throw new AssertionError("Unsupported Currency Summary: " + row);
-					}
-				}
-			}
-		}
-		for (String currency : currencies)
-		{
-			activities.put(currency,
-				new CashActivity(currency, openingBalance.get(currency), closingBalance.get(currency)));
-		}
-		return activities;
+		return parse(csv, new StatementParser(executor));
 	}
 
 	/**
-	 * Parses the mark-to-market section, comparing the portfolio between the beginning and end of the
-	 * statement's period.
+	 * Parses a CSV file, sending the parts of the statement to a visitor as soon as they are parsed.
+	 * <p>
+	 * Unlike {@link #load(Path)}, the parts of the statement are not retained, so the amount of memory that is
+	 * used does not grow with the number of trades. Trades are split and assigned asset IDs exactly as in
+	 * {@link #trades()}.
+	 * <p>
+	 * The codes of a trade are defined by the {@code Codes} section, which typically follows the trades. In
+	 * order to send each trade as soon as it is parsed, the file is read twice: once to locate the
+	 * {@code Codes} section, and once to parse the rest of the statement.
 	 *
-	 * @param sections the mark-to-market sections
-	 * @return a map from the symbol of each asset to its {@code MarkToMarket} value
-	 * @throws NullPointerException     if {@code sections} is null
-	 * @throws IllegalArgumentException if there is more than one section
-	 * @throws IOException              if an I/O error occurs while reading the lines
+	 * @param csv     the path of the CSV file
+	 * @param visitor the visitor that receives the parts of the statement
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if the file is not a valid activity statement. Parts of the statement
+	 *                                  may have already been sent to the visitor.
+	 * @throws IOException              if an I/O error occurs while reading the file
+	 * @see IbStatementVisitor
 	 */
-	private static Map<String, MarkToMarket> parseMarkToMarket(List<Reader> sections) throws IOException
+	public static void parse(Path csv, IbStatementVisitor visitor) throws IOException
 	{
-		requireThat(sections, "sections").size().isEqualTo(1);
-		Map<String, MarkToMarket> symbolToMarkToMarket = new HashMap<>();
-
-		for (Reader section : sections)
-		{
-			try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-				with(SCHEMA_WITH_HEADER).
-				readValues(section))
-			{
-				while (it.hasNext())
-				{
-					Map<String, String> row = it.next();
-					requireThat(row.get("Header"), "Header").isEqualTo("Data");
-
-					String assetCategory = row.get("Asset Category");
-					boolean skip = switch (assetCategory)
-					{
-						case "Stocks", "Equity and Index Options" -> false;
-						case "Total", "Forex", "Total (All Assets)", "Broker Interest Paid and Received" -> true;
-						default -> throw new AssertionError("Unsupported asset category: " + row);
-					};
-					if (skip)
-						continue;
-					String rawSymbol = row.get("Symbol");
-					ParsedSymbol symbol = ParsedSymbol.fromStatement(rawSymbol);
-					BigDecimal startQuantity = new BigDecimal(row.get("Prior Quantity").replaceAll(",", "")).
-						setScale(PRECISION, RoundingMode.HALF_EVEN);
-					BigDecimal endQuantity = new BigDecimal(row.get("Current Quantity").replaceAll(",", "")).
-						setScale(PRECISION, RoundingMode.HALF_EVEN);
-					symbolToMarkToMarket.put(symbol.value, new MarkToMarket(startQuantity, endQuantity));
-				}
-			}
-		}
-		return symbolToMarkToMarket;
+		requireThat(csv, "csv").isNotNull();
+		requireThat(visitor, "visitor").isNotNull();
+		StatementParser parser = new StatementParser(visitor, readCodes(csv));
+		parseRows(csv, parser);
 	}
 
 	/**
-	 * Parses the trades.
+	 * Parses the {@code Codes} section of a CSV file, without parsing the rest of the file.
 	 *
-	 * @param sections             one section per asset type (e.g. Stocks, Equity and Index Options)
-	 * @param stringCodeToEnums    a map from the String representation of each code to its corresponding enum
-	 *                             values
-	 * @param symbolToMarkToMarket a map from the symbol of each asset to its {@code MarkToMarket} value
-	 * @return a list of {@code Trade}s
-	 * @throws NullPointerException if any of the arguments are null
-	 * @throws IOException          if an I/O error occurs while reading the lines
+	 * @param csv the path of the CSV file
+	 * @return a map from the string representation of each code to its corresponding enum values
+	 * @throws IllegalArgumentException if the file does not contain exactly one {@code Codes} section
+	 * @throws IOException              if an I/O error occurs while reading the file
 	 */
-	@SuppressWarnings("PMD.NcssCount")
-	private static List<Trade> parseTrades(List<Reader> sections, Map<String, Set<Code>> stringCodeToEnums,
-		Map<String, MarkToMarket> symbolToMarkToMarket)
-		throws IOException
+	private static Map<String, Set<Code>> readCodes(Path csv) throws IOException
 	{
-		requireThat(stringCodeToEnums, "stringCodeToEnums").isNotNull();
-		List<Trade> trades = new ArrayList<>();
-
-		// Design: Assets have a different ID per position, even if they have the same symbol.
-		// This allows us to differentiate between different option contracts even if they have the same
-		// underlying asset.
-		Map<String, Integer> symbolToId = new HashMap<>();
-		Map<Integer, BigDecimal> assetToTotalUnits = new HashMap<>();
-		int nextId = 0;
-
-		// Adds assets that were held in the previous statement.
-		for (Entry<String, MarkToMarket> entry : symbolToMarkToMarket.entrySet())
+		byte[] prefix = "Codes,".getBytes(UTF_8);
+		ByteArrayOutputStream codesSection = new ByteArrayOutputStream();
+		try (InputStream in = Files.newInputStream(csv))
 		{
-			String symbol = entry.getKey();
-			++nextId;
-			Integer assetId = nextId;
-			assetToTotalUnits.put(assetId, entry.getValue().startQuantity());
-			symbolToId.put(symbol, assetId);
-		}
-
-		Logger log = LoggerFactory.getLogger(IbActivityStatement.class);
-		for (Reader section : sections)
-		{
-			Set<String> symbolsReferencedBySection = new HashSet<>();
-			try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-				with(SCHEMA_WITH_HEADER).
-				readValues(section))
+			byte[] buffer = new byte[64 * 1024];
+			// The number of bytes at the start of the current line that match the prefix, or -1 if the line
+			// does not start with the prefix.
+			int matched = 0;
+			boolean quoted = false;
+			while (true)
 			{
-				while (it.hasNext())
+				int length = in.read(buffer);
+				if (length == -1)
+					break;
+				for (int i = 0; i < length; ++i)
 				{
-					Map<String, String> row = it.next();
-					log.debug("row: {}", row);
-					boolean skip = switch (row.get("Header"))
-					{
-						case "Data" -> false;
-						case "SubTotal", "Total" -> true;
-						default -> throw new AssertionError("Unsupported header: " + row);
-					};
-					if (skip)
-						continue;
-
-					String codesAsString = row.get("Code");
-					Set<Code> codes = EnumSet.noneOf(Code.class);
-					for (String codeAsString : codesAsString.split(";"))
-					{
-						Set<Code> codesEntry = stringCodeToEnums.get(codeAsString);
-						if (codesEntry == null)
-							throw new IOException("Unknown code: " + codeAsString);
-						codes.addAll(codesEntry);
-					}
-
-					// INTERNAL_TRADE implies more than FRACTIONAL_PORTION_TRADED_INTERNALLY but some trades are
-					// annotated with both codes.
-					if (codes.contains(Code.INTERNAL_TRADE))
-						codes.remove(Code.FRACTIONAL_PORTION_TRADED_INTERNALLY);
-
-					String assetCategory = row.get("Asset Category");
-					ParsedSymbol symbol = switch (assetCategory)
-					{
-						case "Stocks", "Equity and Index Options" ->
-						{
-							String rawSymbol = row.get("Symbol");
-							yield ParsedSymbol.fromStatement(rawSymbol);
-						}
-						default -> throw new AssertionError("Unsupported asset category: " + row);
-					};
-
-					LocalDateTime dateTime = LocalDateTime.parse(row.get("Date/Time"), LOCAL_DATE_TIME_FORMAT);
-					BigDecimal quantity = new BigDecimal(row.get("Quantity").replaceAll(",", "")).
-						setScale(PRECISION, RoundingMode.HALF_EVEN);
-
-					BigDecimal price = new BigDecimal(row.get("T. Price")).setScale(PRECISION, RoundingMode.HALF_EVEN);
-					BigDecimal proceeds = new BigDecimal(row.get("Proceeds")).setScale(PRECISION,
-						RoundingMode.HALF_EVEN);
-					BigDecimal commission = new BigDecimal(row.get("Comm/Fee")).setScale(PRECISION,
-						RoundingMode.HALF_EVEN);
-					String currency = row.get("Currency");
-					Integer assetId = symbolToId.get(symbol.value);
-					symbolsReferencedBySection.add(symbol.value);
-
-					BigDecimal oldTotalUnits = assetToTotalUnits.getOrDefault(assetId, BigDecimal.ZERO);
-					assert !quantity.equals(BigDecimal.ZERO) : row;
-
-					BigDecimal newTotalUnits = oldTotalUnits.add(quantity);
-					if (oldTotalUnits.signum() == -newTotalUnits.signum())
+					byte b = buffer[i];
+					if (matched == prefix.length)
+						codesSection.write(b);
+					else if (matched != -1)
 					{
-						// Split the trade into two since it involves a combination of:
-						// 1. Buying to close a short position followed by a long buy, or
-						// 2. Selling to close a long position followed by a short sell.
-						assert assetId != null : "The asset being closed is unknown: " + symbol;
-
-						BigDecimal proportionOfClose = oldTotalUnits.abs().divide(quantity.abs(), RoundingMode.HALF_EVEN);
-						BigDecimal commissionForClose = proportionOfClose.multiply(commission);
-						BigDecimal proceedsForClose = proportionOfClose.multiply(proceeds);
-						Set<Code> codesForClose = EnumSet.copyOf(codes);
-						codesForClose.remove(Code.OPEN);
-
-						// The first trade closes the position
-						trades.add(new Trade(dateTime, symbol.value, assetId, oldTotalUnits.negate(), price,
-							proceedsForClose, commissionForClose, currency, codesForClose, symbol.underlyingAsset,
-							symbol.strikePrice));
-
-						// The second trade opens a new position
-						++nextId;
-						assetId = nextId;
-						symbolToId.put(symbol.value, assetId);
-						BigDecimal commissionForOpen = commission.subtract(commissionForClose);
-						BigDecimal proceedsForOpen = proceeds.subtract(proceedsForClose);
-						Set<Code> codesForOpen = EnumSet.copyOf(codes);
-						codesForClose.remove(Code.CLOSE);
-
-						assetToTotalUnits.put(assetId, newTotalUnits);
-						trades.add(new Trade(dateTime, symbol.value, assetId, newTotalUnits, price, proceedsForOpen,
-							commissionForOpen, currency, codesForOpen, symbol.underlyingAsset, symbol.strikePrice));
-					}
-					else
-					{
-						boolean closedPosition = newTotalUnits.compareTo(BigDecimal.ZERO) == 0;
-						if (closedPosition)
-						{
-							assert assetId != null : "The asset being closed is unknown: " + symbol;
-							assetToTotalUnits.remove(assetId);
-							// Ensure that the next trade of this asset receives a new ID
-							symbolToId.remove(symbol.value);
-						}
-						else
-						{
-							if (assetId == null)
-							{
-								// The opening of a new trading position
-								++nextId;
-								assetId = nextId;
-								symbolToId.put(symbol.value, assetId);
-							}
-							assetToTotalUnits.put(assetId, newTotalUnits);
-						}
-						trades.add(new Trade(dateTime, symbol.value, assetId, quantity, price, proceeds, commission,
-							currency, codes, symbol.underlyingAsset, symbol.strikePrice));
+						if (b != prefix[matched])
+							matched = -1;
+						else if (++matched == prefix.length)
+							codesSection.writeBytes(prefix);
 					}
+					// Quoted values may contain line breaks
+					if (b == '"')
+						quoted = !quoted;
+					else if (b == '\n' && !quoted)
+						matched = 0;
 				}
 			}
-			// Ensure that symbols get assigned a different ID per section but only reset the symbols that were
-			// referenced; otherwise, we might remove assets that were held in the previous statement before they
-			// get referenced.
-			for (String symbol : symbolsReferencedBySection)
-				symbolToId.remove(symbol);
 		}
-		return trades;
+		StatementParser parser = new StatementParser();
+		parser.parseRows(MemorySegment.ofArray(codesSection.toByteArray()));
+		parser.finish();
+		return parser.getStringCodeToEnums();
 	}
 
 	/**
-	 * Parses the foreign currency exchanges.
+	 * Parses a stream of CSV data.
+	 * <p>
+	 * The stream is read into memory so that it can be tokenized by {@link CsvTokenizer}, like a file.
 	 *
-	 * @param sections one section per currency pair
-	 * @return a list of {@code Forex}s
-	 * @throws NullPointerException if {@code sections} is null
-	 * @throws IOException          if an I/O error occurs while reading the lines
+	 * @param csv    the UTF-8 encoded CSV data
+	 * @param parser the parser to send the rows to
+	 * @return the parsed statement
+	 * @throws NullPointerException     if {@code csv} is null
+	 * @throws IllegalArgumentException if the data is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the data
 	 */
-	private static List<Forex> parseForex(List<Reader> sections) throws IOException
+	private static IbActivityStatement parse(InputStream csv, StatementParser parser) throws IOException
 	{
-		List<Forex> exchanges = new ArrayList<>();
-
-		for (Reader section : sections)
-		{
-			try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-				with(SCHEMA_WITH_HEADER).
-				readValues(section))
-			{
-				while (it.hasNext())
-				{
-					Map<String, String> row = it.next();
-					boolean skip = switch (row.get("Header"))
-					{
-						case "Data" -> false;
-						case "SubTotal", "Total" -> true;
-						default -> throw new AssertionError("Unsupported header: " + row);
-					};
-					if (skip)
-						continue;
-
-					String symbol = row.get("Symbol");
-					String[] currencyPair = symbol.split("\\.");
-					requireThat(currencyPair, "currencyPair").length().isEqualTo(2);
-					LocalDateTime dateTime = LocalDateTime.parse(row.get("Date/Time"), LOCAL_DATE_TIME_FORMAT);
-					BigDecimal quantity = new BigDecimal(row.get("Quantity").replaceAll(",", ""));
-					BigDecimal price = new BigDecimal(row.get("T. Price"));
-					BigDecimal proceeds = new BigDecimal(row.get("Proceeds"));
-					BigDecimal commission = new BigDecimal(row.get("Comm in USD"));
-					exchanges.add(new Forex(dateTime, currencyPair[1], currencyPair[0], quantity, price, proceeds,
-						commission));
-				}
-			}
-		}
-		return exchanges;
+		requireThat(csv, "csv").isNotNull();
+		parser.parseRows(MemorySegment.ofArray(csv.readAllBytes()));
+		return parser.getStatement();
 	}
 
 	/**
-	 * Parses deposits and withdrawals.
+	 * Parses a CSV file, and {@link StatementParser#finish() finishes} parsing it.
+	 * <p>
+	 * The file is mapped into memory and tokenized in place, so values that the parsers do not read are never
+	 * decoded. The mapping is released before this method returns.
 	 *
-	 * @param sections one section per currency
-	 * @return a list of {@code Deposit}s
-	 * @throws NullPointerException if any of the arguments are null
-	 * @throws IOException          if an I/O error occurs while reading the lines
+	 * @param csv    the path of the CSV file
+	 * @param parser the parser to send the rows to
+	 * @throws IllegalArgumentException if the file is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the file
 	 */
-	private static List<Deposit> parseDeposits(List<Reader> sections) throws IOException
+	private static void parseRows(Path csv, StatementParser parser) throws IOException
 	{
-		List<Deposit> deposits = new ArrayList<>();
-
-		for (Reader section : sections)
+		// Sections that are parsed by an executor read the mapping from its threads until they are finished
+		try (FileChannel channel = FileChannel.open(csv); Arena arena = Arena.ofShared())
 		{
-			try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-				with(SCHEMA_WITH_HEADER).
-				readValues(section))
-			{
-				while (it.hasNext())
-				{
-					Map<String, String> row = it.next();
-					requireThat(row.get("Header"), "Header").isEqualTo("Data");
-
-					String currency = row.get("Currency");
-					if (currency.startsWith("Total"))
-						continue;
-					LocalDate date = LocalDate.parse(row.get("Settle Date"), LOCAL_DATE_FORMAT);
-					BigDecimal quantity = new BigDecimal(row.get("Amount"));
-					String description = row.get("Description");
-					deposits.add(new Deposit(date, currency, quantity, description));
-				}
-			}
+			parser.parseRows(channel.map(MapMode.READ_ONLY, 0, channel.size(), arena));
+			parser.finish();
 		}
-		return deposits;
 	}
 
 	/**
-	 * Parses dividend paid out and tax withheld.
+	 * Converts a {@code BigDecimal} argument to a fixed-point value.
 	 *
-	 * @param sections one section per currency
-	 * @return a list of {@code Dividend}s
-	 * @throws NullPointerException if any of the arguments are null
-	 * @throws IOException          if an I/O error occurs while reading the lines
+	 * @param value the value of the argument
+	 * @param name  the name of the argument
+	 * @return the fixed-point value
+	 * @throws NullPointerException if {@code value} is null
+	 * @throws ArithmeticException  if {@code value} is out of range
 	 */
-	private static List<Dividend> parseDividends(List<Reader> sections) throws IOException
+	private static long toFixedPoint(BigDecimal value, String name)
 	{
-		List<Dividend> dividends = new ArrayList<>();
-
-		for (Reader section : sections)
-		{
-			try (MappingIterator<Map<String, String>> it = CSV_MAPPER.readerFor(Map.class).
-				with(SCHEMA_WITH_HEADER).
-				readValues(section))
-			{
-				while (it.hasNext())
-				{
-					Map<String, String> row = it.next();
-					requireThat(row.get("Header"), "Header").isEqualTo("Data");
-
-					String currency = row.get("Currency");
-					if (currency.startsWith("Total"))
-						continue;
-					LocalDate date = LocalDate.parse(row.get("Date"), LOCAL_DATE_FORMAT);
-					BigDecimal quantity = new BigDecimal(row.get("Amount"));
-					String description = row.get("Description");
-					dividends.add(new Dividend(date, currency, quantity, description));
-				}
-			}
-		}
-		return dividends;
+		requireThat(value, name).isNotNull();
+		return FixedPoint.valueOf(value);
 	}
 
 	/**
@@ -730,6 +312,19 @@ public record IbActivityStatement(Header header, Account account,
 		requireThat(dividends, "dividends").isNotNull();
 	}
 
+	/**
+	 * Returns the trades in a column-oriented form that is better suited to scans and aggregations.
+	 * <p>
+	 * A new table is built on each invocation.
+	 *
+	 * @return a table containing {@link #trades()}, in the same order
+	 * @throws ArithmeticException if a number cannot be represented as a {@code FixedPoint} value
+	 */
+	public TradeTable toTradeTable()
+	{
+		return TradeTable.of(trades);
+	}
+
 	/**
 	 * The statement's header.
 	 *
@@ -815,121 +410,137 @@ public record IbActivityStatement(Header header, Account account,
 	/**
 	 * A trade of assets.
 	 *
-	 * @param startQuantity the total units held at the start of the statement's period
-	 * @param endQuantity   the total units held at the end of the statement's period
+	 * @param startQuantityAsFixedPoint the total units held at the start of the statement's period, as a
+	 *                                  {@link FixedPoint} value
+	 * @param endQuantityAsFixedPoint   the total units held at the end of the statement's period, as a
+	 *                                  {@link FixedPoint} value
 	 */
-	public record MarkToMarket(BigDecimal startQuantity, BigDecimal endQuantity)
+	public record MarkToMarket(long startQuantityAsFixedPoint, long endQuantityAsFixedPoint)
 	{
 		/**
-		 * Creates a new instance.
+		 * Creates a new instance from {@code BigDecimal} values.
 		 *
 		 * @param startQuantity the total units held at the start of the statement's period
 		 * @param endQuantity   the total units held at the end of the statement's period
 		 * @throws NullPointerException if any of the arguments are null
+		 * @throws ArithmeticException  if any of the arguments are out of the range of {@link FixedPoint}
 		 */
-		public MarkToMarket
+		public MarkToMarket(BigDecimal startQuantity, BigDecimal endQuantity)
 		{
-			requireThat(startQuantity, "startQuantity").isNotNull();
-			requireThat(endQuantity, "endQuantity").isNotNull();
+			this(toFixedPoint(startQuantity, "startQuantity"), toFixedPoint(endQuantity, "endQuantity"));
 		}
-	}
 
-	/**
-	 * A parsed representation of an asset's symbol.
-	 *
-	 * @param value           the value of the symbol
-	 * @param underlyingAsset (optional) the symbol of the underlying asset if this asset is an option;
-	 *                        otherwise, undefined.
-	 * @param strikePrice     (optional) the strike price if this asset is an option; otherwise, undefined.
-	 */
-	private record ParsedSymbol(String value, String underlyingAsset, BigDecimal strikePrice)
-	{
 		/**
-		 * Parses the String representation of an asset symbol in the format used by the Activity statement.
+		 * Returns the total units held at the start of the statement's period.
 		 *
-		 * @param symbol the String representation
-		 * @return the parsed symbol
+		 * @return the total units held at the start of the statement's period, with a scale of 7
 		 */
-		private static ParsedSymbol fromStatement(String symbol)
+		public BigDecimal startQuantity()
 		{
-			// e.g. SQQQ 17JUN22 42.0 P
-			String[] tokens = symbol.split(" ");
-			if (tokens.length == 1)
-				return new ParsedSymbol(tokens[0], "", BigDecimal.ZERO);
-			assert that(tokens, "tokens").length().isEqualTo(4).elseThrow();
-			String underlyingAsset = tokens[0];
-			String date = tokens[1];
-			BigDecimal strikePrice = new BigDecimal(tokens[2]).setScale(PRECISION, RoundingMode.HALF_EVEN);
-			String type = switch (tokens[3])
-			{
-				case "C" -> "CALL";
-				case "P" -> "PUT";
-				default -> throw new AssertionError("Unsupported option type: " + tokens[4]);
-			};
-			// e.g. PUT SQQQ 17JUN22@42.0
-			String value = type + " " + underlyingAsset + " " + date + "@" + strikePrice.toPlainString();
-			return new ParsedSymbol(value, underlyingAsset, strikePrice);
+			return FixedPoint.toBigDecimal(startQuantityAsFixedPoint);
 		}
 
+		/**
+		 * Returns the total units held at the end of the statement's period.
+		 *
+		 * @return the total units held at the end of the statement's period, with a scale of 7
+		 */
+		public BigDecimal endQuantity()
+		{
+			return FixedPoint.toBigDecimal(endQuantityAsFixedPoint);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "MarkToMarket[startQuantity=" + startQuantity() + ", endQuantity=" + endQuantity() + "]";
+		}
+	}
+
+	/**
+	 * A trade of assets.
+	 * <p>
+	 * Amounts are stored as {@link FixedPoint} values. Their {@code BigDecimal} accessors are derived from the
+	 * fixed-point values and have a scale of 7.
+	 *
+	 * @param dateTime               the date and time of the trade
+	 * @param symbol                 the symbol of the asset
+	 * @param assetId                a value that groups trades related to the same stock symbol, equity, or
+	 *                               index option, helping to identify and differentiate transactions within the
+	 *                               same category
+	 * @param quantityAsFixedPoint   the quantity being traded; negative if securities are being sold, positive
+	 *                               if they are being bought.
+	 * @param priceAsFixedPoint      the price of each unit
+	 * @param proceedsAsFixedPoint   The total amount received from the trade, which is negative if the trade
+	 *                               resulted in a cost. The amount does not take commissions into
+	 *                               consideration.
+	 * @param commissionAsFixedPoint the trade fees, typically represented as a negative value to indicate a
+	 *                               cost. It may be positive in the case of liquidity rebates, exchange
+	 *                               incentives, or in the case of an accounting correction.
+	 * @param currency               the currency of all quantities
+	 * @param codes                  annotations that provide additional information about the trade
+	 * @param underlyingAsset        The symbol of the underlying asset if this asset is an option; otherwise,
+	 *                               undefined.
+	 * @param strikePrice            The strike price if this asset is an option; otherwise, undefined.
+	 */
+	public record Trade(LocalDateTime dateTime, String symbol, int assetId, long quantityAsFixedPoint,
+	                    long priceAsFixedPoint, long proceedsAsFixedPoint, long commissionAsFixedPoint,
+	                    String currency, Set<Code> codes, String underlyingAsset, BigDecimal strikePrice)
+	{
 		/**
 		 * Creates a new instance.
 		 *
-		 * @param value           the value of the symbol
-		 * @param underlyingAsset (optional) the symbol of the underlying asset if this asset is an option;
-		 *                        otherwise, undefined.
-		 * @param strikePrice     (optional) the strike price if this asset is an option; otherwise, undefined.
+		 * @param dateTime               the date and time of the trade
+		 * @param symbol                 the symbol of the asset
+		 * @param assetId                a value that groups trades related to the same stock symbol, equity, or
+		 *                               index option, helping to identify and differentiate transactions within
+		 *                               the same category
+		 * @param quantityAsFixedPoint   the quantity being traded; negative if securities are being sold,
+		 *                               positive if they are being bought.
+		 * @param priceAsFixedPoint      the price of each unit
+		 * @param proceedsAsFixedPoint   the total value of the assets traded. It is positive when the assets are
+		 *                               sold and negative when they are purchased.
+		 * @param commissionAsFixedPoint the trade fees, typically represented as a negative value to indicate a
+		 *                               cost. It may be positive in the case of liquidity rebates, exchange
+		 *                               incentives, or in the case of an accounting correction.
+		 * @param currency               the currency of all quantities
+		 * @param codes                  annotations that provide additional information about the trade
+		 * @param underlyingAsset        (optional) the symbol of the underlying asset if this asset is an
+		 *                               option; otherwise, undefined.
+		 * @param strikePrice            (optional) the strike price if this asset is an option; otherwise,
+		 *                               undefined.
 		 * @throws NullPointerException     if any of the arguments are null
 		 * @throws IllegalArgumentException if:
 		 *                                  <ul>
 		 *                                  <li>any of the arguments contain leading or trailing whitespace.</li>
 		 *                                  <li>any of the mandatory arguments are empty.</li>
-		 *                                  <li>{@code strikePrice} is negative.</li>
+		 *                                  <li>{@code assetId}, {@code priceAsFixedPoint} or {@code strikePrice}
+		 *                                  are negative.</li>
 		 *                                  </ul>
 		 */
-		private ParsedSymbol
+		public Trade
 		{
-			requireThat(value, "value").isStripped().isNotEmpty();
+			requireThat(dateTime, "dateTime").isNotNull();
+			requireThat(symbol, "symbol").isStripped().isNotEmpty();
+			requireThat(assetId, "assetId").isNotNegative();
+			requireThat(priceAsFixedPoint, "priceAsFixedPoint").isNotNegative();
+			requireThat(currency, "currency").isNotNull();
+			requireThat(codes, "codes").isNotNull();
 			requireThat(underlyingAsset, "underlyingAsset").isStripped();
 			requireThat(strikePrice, "strikePrice").isNotNegative();
+			codes = CodeSet.copyOf(codes);
 		}
-	}
 
-	/**
-	 * A trade of assets.
-	 *
-	 * @param dateTime        the date and time of the trade
-	 * @param symbol          the symbol of the asset
-	 * @param assetId         a value that groups trades related to the same stock symbol, equity, or index
-	 *                        option, helping to identify and differentiate transactions within the same
-	 *                        category
-	 * @param quantity        the quantity being traded; negative if securities are being sold, positive if they
-	 *                        are being bought.
-	 * @param price           the price of each unit
-	 * @param proceeds        The total amount received from the trade, which is negative if the trade resulted
-	 *                        in a cost. The amount does not take commissions into consideration.
-	 * @param commission      the trade fees, typically represented as a negative value to indicate a cost. It
-	 *                        may be positive in the case of liquidity rebates, exchange incentives, or in the
-	 *                        case of an accounting correction.
-	 * @param currency        the currency of all quantities
-	 * @param codes           annotations that provide additional information about the trade
-	 * @param underlyingAsset The symbol of the underlying asset if this asset is an option; otherwise,
-	 *                        undefined.
-	 * @param strikePrice     The strike price if this asset is an option; otherwise, undefined.
-	 */
-	public record Trade(LocalDateTime dateTime, String symbol, int assetId, BigDecimal quantity,
-	                    BigDecimal price, BigDecimal proceeds, BigDecimal commission, String currency,
-	                    Set<Code> codes, String underlyingAsset, BigDecimal strikePrice)
-	{
 		/**
-		 * Creates a new instance.
+		 * Creates a new instance from {@code BigDecimal} amounts.
 		 *
 		 * @param dateTime        the date and time of the trade
 		 * @param symbol          the symbol of the asset
-		 * @param quantity        the quantity being traded; negative if securities are being sold, positive if
-		 *                        they are being bought.
 		 * @param assetId         a value that groups trades related to the same stock symbol, equity, or index
 		 *                        option, helping to identify and differentiate transactions within the same
 		 *                        category
+		 * @param quantity        the quantity being traded; negative if securities are being sold, positive if
+		 *                        they are being bought.
 		 * @param price           the price of each unit
 		 * @param proceeds        the total value of the assets traded. It is positive when the assets are sold
 		 *                        and negative when they are purchased.
@@ -949,44 +560,138 @@ public record IbActivityStatement(Header header, Account account,
 		 *                                  <li>{@code assetId}, {@code price} or {@code strikePrice} are
 		 *                                  negative.</li>
 		 *                                  </ul>
+		 * @throws ArithmeticException      if {@code quantity}, {@code price}, {@code proceeds} or
+		 *                                  {@code commission} are out of the range of {@link FixedPoint}
 		 */
-		public Trade
+		public Trade(LocalDateTime dateTime, String symbol, int assetId, BigDecimal quantity, BigDecimal price,
+			BigDecimal proceeds, BigDecimal commission, String currency, Set<Code> codes, String underlyingAsset,
+			BigDecimal strikePrice)
 		{
-			requireThat(dateTime, "dateTime").isNotNull();
-			requireThat(symbol, "symbol").isStripped().isNotEmpty();
-			requireThat(assetId, "assetId").isNotNegative();
-			requireThat(quantity, "quantity").isNotNull();
-			requireThat(price, "price").isNotNegative();
-			requireThat(proceeds, "proceeds").isNotNull();
-			requireThat(commission, "commission").isNotNull();
-			requireThat(currency, "currency").isNotNull();
-			requireThat(codes, "codes").isNotNull();
-			requireThat(underlyingAsset, "underlyingAsset").isStripped();
-			requireThat(strikePrice, "strikePrice").isNotNegative();
+			this(dateTime, symbol, assetId, toFixedPoint(quantity, "quantity"), toFixedPoint(price, "price"),
+				toFixedPoint(proceeds, "proceeds"), toFixedPoint(commission, "commission"), currency, codes,
+				underlyingAsset, strikePrice);
+		}
+
+		/**
+		 * Returns the trade's codes as a bitmask.
+		 * <p>
+		 * Unlike {@link #codes()}, the mask can be tested without iterating over the codes. For example,
+		 * {@code (trade.codeMask() & Code.ASSIGNMENT.mask()) != 0} indicates that the trade resulted from an
+		 * assignment.
+		 *
+		 * @return a bitmask that contains the {@link Code#mask() bit} of each of the trade's codes
+		 * @see CodeSet
+		 */
+		public int codeMask()
+		{
+			return ((CodeSet) codes).mask();
+		}
+
+		/**
+		 * Returns the quantity being traded.
+		 *
+		 * @return the quantity being traded, with a scale of 7
+		 */
+		public BigDecimal quantity()
+		{
+			return FixedPoint.toBigDecimal(quantityAsFixedPoint);
+		}
+
+		/**
+		 * Returns the price of each unit.
+		 *
+		 * @return the price of each unit, with a scale of 7
+		 */
+		public BigDecimal price()
+		{
+			return FixedPoint.toBigDecimal(priceAsFixedPoint);
+		}
+
+		/**
+		 * Returns the total value of the assets traded.
+		 *
+		 * @return the total value of the assets traded, with a scale of 7
+		 */
+		public BigDecimal proceeds()
+		{
+			return FixedPoint.toBigDecimal(proceedsAsFixedPoint);
+		}
+
+		/**
+		 * Returns the trade fees.
+		 *
+		 * @return the trade fees, with a scale of 7
+		 */
+		public BigDecimal commission()
+		{
+			return FixedPoint.toBigDecimal(commissionAsFixedPoint);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Trade[dateTime=" + dateTime + ", symbol=" + symbol + ", assetId=" + assetId + ", quantity=" +
+				quantity() + ", price=" + price() + ", proceeds=" + proceeds() + ", commission=" + commission() +
+				", currency=" + currency + ", codes=" + codes + ", underlyingAsset=" + underlyingAsset +
+				", strikePrice=" + strikePrice + "]";
 		}
 	}
 
 	/**
 	 * A foreign currency trade.
+	 * <p>
+	 * Amounts are stored as {@link FixedPoint} values. Their {@code BigDecimal} accessors are derived from the
+	 * fixed-point values and have a scale of 7.
 	 *
-	 * @param dateTime       the date and time of the trade
-	 * @param sourceCurrency the source being spent
-	 * @param targetCurrency the target being received
-	 * @param quantity       the quantity being traded; negative if securities are being sold, positive if they
-	 *                       are being bought.
-	 * @param price          the price of each unit
-	 * @param proceeds       the total value of the assets traded. It is positive when the assets are sold and
-	 *                       negative when they are purchased.
-	 * @param commission     the trade fees in USD, typically represented as a negative value to indicate a
-	 *                       cost. It may be positive in the case of liquidity rebates, exchange incentives, or
-	 *                       in the case of an accounting correction.
+	 * @param dateTime               the date and time of the trade
+	 * @param sourceCurrency         the source being spent
+	 * @param targetCurrency         the target being received
+	 * @param quantityAsFixedPoint   the quantity being traded; negative if securities are being sold, positive
+	 *                               if they are being bought.
+	 * @param priceAsFixedPoint      the price of each unit
+	 * @param proceedsAsFixedPoint   the total value of the assets traded. It is positive when the assets are
+	 *                               sold and negative when they are purchased.
+	 * @param commissionAsFixedPoint the trade fees in USD, typically represented as a negative value to
+	 *                               indicate a cost. It may be positive in the case of liquidity rebates,
+	 *                               exchange incentives, or in the case of an accounting correction.
 	 */
 	public record Forex(LocalDateTime dateTime, String sourceCurrency, String targetCurrency,
-	                    BigDecimal quantity, BigDecimal price, BigDecimal proceeds, BigDecimal commission)
+	                    long quantityAsFixedPoint, long priceAsFixedPoint, long proceedsAsFixedPoint,
+	                    long commissionAsFixedPoint)
 	{
 		/**
 		 * Creates a new instance.
 		 *
+		 * @param dateTime               the date and time of the trade
+		 * @param sourceCurrency         the source currency
+		 * @param targetCurrency         the target currency
+		 * @param quantityAsFixedPoint   the quantity being traded; negative if {@code sourceCurrency} is being
+		 *                               sold, positive if it is being bought.
+		 * @param priceAsFixedPoint      the price of each unit
+		 * @param proceedsAsFixedPoint   The total amount received from the trade, which is negative if the trade
+		 *                               resulted in a cost
+		 * @param commissionAsFixedPoint the trade fees in USD, typically represented as a negative value to
+		 *                               indicate a cost. It may be positive in the case of liquidity rebates,
+		 *                               exchange incentives, or in the case of an accounting correction.
+		 * @throws NullPointerException     if any of the arguments are null
+		 * @throws IllegalArgumentException if:
+		 *                                  <ul>
+		 *                                  <li>any of the arguments contain leading or trailing whitespace or
+		 *                                  are empty.</li>
+		 *                                  <li>{@code priceAsFixedPoint} is negative.</li>
+		 *                                  </ul>
+		 */
+		public Forex
+		{
+			requireThat(dateTime, "dateTime").isNotNull();
+			requireThat(sourceCurrency, "sourceCurrency").isStripped().isNotEmpty();
+			requireThat(targetCurrency, "targetCurrency").isStripped().isNotEmpty();
+			requireThat(priceAsFixedPoint, "priceAsFixedPoint").isNotNegative();
+		}
+
+		/**
+		 * Creates a new instance from {@code BigDecimal} amounts.
+		 *
 		 * @param dateTime       the date and time of the trade
 		 * @param sourceCurrency the source currency
 		 * @param targetCurrency the target currency
@@ -1005,16 +710,63 @@ public record IbActivityStatement(Header header, Account account,
 		 *                                  are empty.</li>
 		 *                                  <li>{@code price} is negative.</li>
 		 *                                  </ul>
+		 * @throws ArithmeticException      if {@code quantity}, {@code price}, {@code proceeds} or
+		 *                                  {@code commission} are out of the range of {@link FixedPoint}
 		 */
-		public Forex
+		public Forex(LocalDateTime dateTime, String sourceCurrency, String targetCurrency, BigDecimal quantity,
+			BigDecimal price, BigDecimal proceeds, BigDecimal commission)
 		{
-			requireThat(dateTime, "dateTime").isNotNull();
-			requireThat(sourceCurrency, "sourceCurrency").isStripped().isNotEmpty();
-			requireThat(targetCurrency, "targetCurrency").isStripped().isNotEmpty();
-			requireThat(quantity, "quantity").isNotNull();
-			requireThat(price, "price").isNotNegative();
-			requireThat(proceeds, "proceeds").isNotNull();
-			requireThat(commission, "commission").isNotNull();
+			this(dateTime, sourceCurrency, targetCurrency, toFixedPoint(quantity, "quantity"),
+				toFixedPoint(price, "price"), toFixedPoint(proceeds, "proceeds"),
+				toFixedPoint(commission, "commission"));
+		}
+
+		/**
+		 * Returns the quantity being traded.
+		 *
+		 * @return the quantity being traded, with a scale of 7
+		 */
+		public BigDecimal quantity()
+		{
+			return FixedPoint.toBigDecimal(quantityAsFixedPoint);
+		}
+
+		/**
+		 * Returns the price of each unit.
+		 *
+		 * @return the price of each unit, with a scale of 7
+		 */
+		public BigDecimal price()
+		{
+			return FixedPoint.toBigDecimal(priceAsFixedPoint);
+		}
+
+		/**
+		 * Returns the total value of the assets traded.
+		 *
+		 * @return the total value of the assets traded, with a scale of 7
+		 */
+		public BigDecimal proceeds()
+		{
+			return FixedPoint.toBigDecimal(proceedsAsFixedPoint);
+		}
+
+		/**
+		 * Returns the trade fees in USD.
+		 *
+		 * @return the trade fees in USD, with a scale of 7
+		 */
+		public BigDecimal commission()
+		{
+			return FixedPoint.toBigDecimal(commissionAsFixedPoint);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Forex[dateTime=" + dateTime + ", sourceCurrency=" + sourceCurrency + ", targetCurrency=" +
+				targetCurrency + ", quantity=" + quantity() + ", price=" + price() + ", proceeds=" + proceeds() +
+				", commission=" + commission() + "]";
 		}
 	}
 
@@ -1136,6 +888,16 @@ public record IbActivityStatement(Header header, Account account,
 		 * typically as a result of losses on existing positions. In such cases, the broker may sell assets in the
 		 * account to restore the margin balance and protect against further risk exposure.
 		 */
-		MARGIN_VIOLATION
+		MARGIN_VIOLATION;
+
+		/**
+		 * Returns the bit that represents this code in {@link CodeSet#mask()} and {@link Trade#codeMask()}.
+		 *
+		 * @return {@code 1 << ordinal()}
+		 */
+		public int mask()
+		{
+			return 1 << ordinal();
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Operations that act on multiple activity statements.
+ */
+public final class IbActivityStatements
+{
+	/**
+	 * Merges the trades, foreign currency exchanges, deposits and dividends of multiple statements into a
+	 * single chronological timeline.
+	 * <p>
+	 * The statements may belong to different accounts; each event is tagged with the account that it belongs
+	 * to. The events of each statement are split into chronological runs, such as the trades of a single
+	 * symbol, which are merged lazily. Retrieving each event costs {@code O(log k)} for {@code k} runs, and
+	 * no events are copied or sorted. Deposits and dividends are settled at the end of their day, so they
+	 * follow the trades of the same day. Events that occur at the same time are returned in the
+	 * order of {@code statements}.
+	 * <p>
+	 * Statements that overlap are not deduplicated; use {@link #combine(List)} to remove the events that they
+	 * have in common.
+	 *
+	 * @param statements the statements to merge
+	 * @return the events, in chronological order
+	 * @throws NullPointerException if {@code statements} or any of its elements are null
+	 */
+	public static Stream<IbTimelineEvent> timeline(List<IbActivityStatement> statements)
+	{
+		requireThat(statements, "statements").isNotNull().doesNotContain(null);
+		List<IbActivityStatement> copy = List.copyOf(statements);
+		long size = 0;
+		for (IbActivityStatement statement : copy)
+		{
+			size += statement.trades().size() + statement.forex().size() + statement.deposits().size() +
+				statement.dividends().size();
+		}
+		long events = size;
+		// Defer scanning the statements for runs until the stream is consumed
+		return StreamSupport.stream(() -> Spliterators.spliterator(new TimelineIterator(copy), events,
+			Spliterator.ORDERED | Spliterator.NONNULL), Spliterator.SIZED | Spliterator.SUBSIZED |
+			Spliterator.ORDERED | Spliterator.NONNULL, false);
+	}
+
+	/**
+	 * Removes the trades, foreign currency exchanges, deposits and dividends that statements with overlapping
+	 * periods have in common, such as a monthly statement and a year-to-date statement of the same account.
+	 * <p>
+	 * Statements overlap if they belong to the same {@link IbActivityStatement.Account#number() account}
+	 * and their {@link IbActivityStatement.Header header} periods share at least one day. The shared events
+	 * are kept by the statement that starts first (or, if several start on the same day, the one that ends
+	 * last) and removed from the others. An event is only removed from a statement if the days that it shares
+	 * with other statements contain more copies of it elsewhere than in the statement itself, so events that
+	 * legitimately repeat, such as identical fills in the same second, are retained. The headers, accounts and
+	 * cash activities of the statements are left unchanged.
+	 * <p>
+	 * Events are compared using 64-bit fingerprints of their fields, excluding the asset IDs of trades since
+	 * each statement numbers its positions independently. Each event is hashed once, so the cost grows
+	 * linearly with the number of events. Two different events are mistaken for one another with a
+	 * probability of about {@code n^2 / 2^65} for {@code n} events.
+	 *
+	 * @param statements the statements to combine
+	 * @return the statements without duplicate events, in the same order as {@code statements}. Statements
+	 *     that do not contain duplicates are returned as-is.
+	 * @throws NullPointerException if {@code statements} or any of its elements are null
+	 * @throws ArithmeticException  if a number cannot be represented as a {@code FixedPoint} value
+	 * @see #timeline(List)
+	 */
+	public static List<IbActivityStatement> combine(List<IbActivityStatement> statements)
+	{
+		requireThat(statements, "statements").isNotNull().doesNotContain(null);
+		return StatementCombiner.combine(statements);
+	}
+
+	/**
+	 * Loads all the CSV files in a directory concurrently.
+	 * <p>
+	 * Files are loaded in the order of their names. Files whose name does not end with {@code .csv} and
+	 * subdirectories are ignored.
+	 *
+	 * @param directory   the directory containing the statements
+	 * @param parallelism the maximum number of statements to load at the same time
+	 * @return the outcome of loading each file, in the order of the file names
+	 * @throws NullPointerException     if {@code directory} is null
+	 * @throws IllegalArgumentException if {@code parallelism} is not positive
+	 * @throws IOException              if an I/O error occurs while listing the contents of the directory
+	 * @throws InterruptedException     if the thread is interrupted while waiting for the statements to load
+	 * @see #loadAll(List, int)
+	 */
+	public static List<IbLoadResult> loadAll(Path directory, int parallelism)
+		throws IOException, InterruptedException
+	{
+		requireThat(directory, "directory").isNotNull();
+		return loadAll(listStatements(directory), parallelism);
+	}
+
+	/**
+	 * Loads all the CSV files in a directory concurrently, skipping the files that are already cached.
+	 * <p>
+	 * Files are loaded in the order of their names. Files whose name does not end with {@code .csv} and
+	 * subdirectories are ignored.
+	 *
+	 * @param directory   the directory containing the statements
+	 * @param parallelism the maximum number of statements to load at the same time
+	 * @param cache       the statements that were previously loaded
+	 * @return the outcome of loading each file, in the order of the file names
+	 * @throws NullPointerException     if {@code directory} or {@code cache} are null
+	 * @throws IllegalArgumentException if {@code parallelism} is not positive
+	 * @throws IOException              if an I/O error occurs while listing the contents of the directory
+	 * @throws InterruptedException     if the thread is interrupted while waiting for the statements to load
+	 * @see #loadAll(List, int, IbStatementCache)
+	 */
+	public static List<IbLoadResult> loadAll(Path directory, int parallelism, IbStatementCache cache)
+		throws IOException, InterruptedException
+	{
+		requireThat(directory, "directory").isNotNull();
+		requireThat(cache, "cache").isNotNull();
+		return loadAll(listStatements(directory), parallelism, cache);
+	}
+
+	/**
+	 * Returns the CSV files in a directory.
+	 *
+	 * @param directory a directory
+	 * @return the paths of the files, sorted by their name
+	 * @throws IOException if an I/O error occurs while listing the contents of the directory
+	 */
+	private static List<Path> listStatements(Path directory) throws IOException
+	{
+		try (Stream<Path> children = Files.list(directory))
+		{
+			return children.filter(path -> Files.isRegularFile(path) &&
+					path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")).
+				sorted(Comparator.comparing(path -> path.getFileName().toString())).
+				toList();
+		}
+	}
+
+	/**
+	 * Loads multiple statements concurrently.
+	 * <p>
+	 * A file that fails to load does not prevent the remaining files from loading. Instead, the failure is
+	 * recorded in its {@code IbLoadResult}.
+	 *
+	 * @param paths       the paths of the CSV files
+	 * @param parallelism the maximum number of statements to load at the same time
+	 * @return the outcome of loading each file, in the same order as {@code paths}
+	 * @throws NullPointerException     if {@code paths} or any of its elements are null
+	 * @throws IllegalArgumentException if {@code parallelism} is not positive
+	 * @throws InterruptedException     if the thread is interrupted while waiting for the statements to load
+	 */
+	public static List<IbLoadResult> loadAll(List<Path> paths, int parallelism) throws InterruptedException
+	{
+		requireThat(paths, "paths").isNotNull().doesNotContain(null);
+		requireThat(parallelism, "parallelism").isPositive();
+		return loadConcurrently(paths, parallelism, null);
+	}
+
+	/**
+	 * Loads multiple statements concurrently, skipping the files that are already cached.
+	 * <p>
+	 * A file that fails to load does not prevent the remaining files from loading. Instead, the failure is
+	 * recorded in its {@code IbLoadResult}. Files whose contents are cached only cost the time it takes to
+	 * hash them.
+	 *
+	 * @param paths       the paths of the CSV files
+	 * @param parallelism the maximum number of statements to load at the same time
+	 * @param cache       the statements that were previously loaded
+	 * @return the outcome of loading each file, in the same order as {@code paths}
+	 * @throws NullPointerException     if {@code paths}, any of its elements or {@code cache} are null
+	 * @throws IllegalArgumentException if {@code parallelism} is not positive
+	 * @throws InterruptedException     if the thread is interrupted while waiting for the statements to load
+	 */
+	public static List<IbLoadResult> loadAll(List<Path> paths, int parallelism, IbStatementCache cache)
+		throws InterruptedException
+	{
+		requireThat(paths, "paths").isNotNull().doesNotContain(null);
+		requireThat(parallelism, "parallelism").isPositive();
+		requireThat(cache, "cache").isNotNull();
+		return loadConcurrently(paths, parallelism, cache);
+	}
+
+	/**
+	 * Loads multiple statements concurrently.
+	 *
+	 * @param paths       the paths of the CSV files
+	 * @param parallelism the maximum number of statements to load at the same time
+	 * @param cache       the statements that were previously loaded, or {@code null} to parse every file
+	 * @return the outcome of loading each file, in the same order as {@code paths}
+	 * @throws InterruptedException if the thread is interrupted while waiting for the statements to load
+	 */
+	private static List<IbLoadResult> loadConcurrently(List<Path> paths, int parallelism,
+		IbStatementCache cache) throws InterruptedException
+	{
+		if (paths.isEmpty())
+			return List.of();
+
+		// Parsing is CPU-bound, so the number of platform threads caps the number of concurrent loads
+		try (ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, paths.size())))
+		{
+			List<Future<IbLoadResult>> futures = new ArrayList<>(paths.size());
+			for (Path path : paths)
+				futures.add(executor.submit(() -> load(path, cache)));
+
+			List<IbLoadResult> results = new ArrayList<>(paths.size());
+			for (Future<IbLoadResult> future : futures)
+			{
+				try
+				{
+					results.add(future.get());
+				}
+				catch (ExecutionException e)
+				{
+					// load() only lets through Errors such as OutOfMemoryError
+					if (e.getCause() instanceof Error error)
+						throw error;
+					throw new AssertionError(e);
+				}
+				catch (InterruptedException e)
+				{
+					// close() waits for all submitted loads to complete, so discard the ones that have not
+					// started. The loads that are running are interrupted and only delay the caller until they
+					// finish.
+					executor.shutdownNow();
+					throw e;
+				}
+			}
+			return results;
+		}
+	}
+
+	/**
+	 * Loads a single statement, capturing any failure.
+	 *
+	 * @param path  the path of the CSV file
+	 * @param cache the statements that were previously loaded, or {@code null} to parse the file
+	 * @return the outcome of loading the file
+	 */
+	private static IbLoadResult load(Path path, IbStatementCache cache)
+	{
+		try
+		{
+			IbActivityStatement statement;
+			if (cache == null)
+				statement = IbActivityStatement.load(path);
+			else
+				statement = cache.load(path);
+			return new IbLoadResult(path, statement, null);
+		}
+		catch (IOException | RuntimeException | AssertionError e)
+		{
+			// The parsers throw AssertionError when they encounter unsupported values
+			return new IbLoadResult(path, null, e);
+		}
+	}
+
+	private IbActivityStatements()
+	{
+	}
+}
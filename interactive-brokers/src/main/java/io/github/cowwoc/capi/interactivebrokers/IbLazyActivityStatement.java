@@ -0,0 +1,586 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Account;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.CashActivity;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Deposit;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Dividend;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Forex;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Header;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An activity statement whose sections are parsed on first access.
+ * <p>
+ * Loading a statement from a file maps it into memory instead of reading it, and only scans and parses the
+ * {@code Statement} and {@code Account Information} sections, which appear at the beginning of the file. The
+ * byte ranges of the remaining sections are located the first time that any other part of the statement is
+ * accessed, and each part is parsed the first time that it is accessed and retained afterwards. Inspecting
+ * the header or account of a statement therefore only touches the first few rows of the file, regardless of
+ * its size, making it cheap to route many files to the accounts that they belong to.
+ * <p>
+ * The memory mapping of a file is released once the statement is garbage-collected.
+ * <p>
+ * This class is thread-safe. Each part is parsed at most once, even if multiple threads access it at the same
+ * time.
+ */
+public final class IbLazyActivityStatement
+{
+	private static final byte[] HEADER = "Header".getBytes(UTF_8);
+	/**
+	 * The UTF-8 encoded CSV data.
+	 */
+	private final MemorySegment csv;
+	/**
+	 * The sections of the statement that have been located, in the order that they appear. Guarded by itself.
+	 */
+	private final List<Section> sections = new ArrayList<>();
+	/**
+	 * Locates the sections that follow {@link #sections}. Guarded by {@link #sections}.
+	 */
+	private final SectionScanner scanner;
+	private final Header header;
+	private final Account account;
+	private final LazyPart<Map<String, CashActivity>> currencyToCashActivity = new LazyPart<>(
+		section -> section.name().equals("Cash Report"), StatementParser::getCashActivities);
+	private final LazyPart<List<Trade>> trades = new LazyPart<>(section -> switch (section.name())
+	{
+		// Trades depend on the assets held at the start of the period, and on the meaning of their codes
+		case "Mark-to-Market Performance Summary", "Codes" -> true;
+		case "Trades" -> !section.forex();
+		default -> false;
+	}, StatementParser::getTrades);
+	private final LazyPart<List<Forex>> forex = new LazyPart<>(
+		section -> section.name().equals("Trades") && section.forex(), StatementParser::getForex);
+	private final LazyPart<List<Deposit>> deposits = new LazyPart<>(
+		section -> section.name().equals("Deposits & Withdrawals"), StatementParser::getDeposits);
+	private final LazyPart<List<Dividend>> dividends = new LazyPart<>(
+		section -> switch (section.name())
+		{
+			case "Dividends", "Withholding Tax" -> true;
+			default -> false;
+		}, StatementParser::getDividends);
+
+	/**
+	 * Loads a statement from a CSV file.
+	 *
+	 * @param csv the path of the CSV file
+	 * @return the statement
+	 * @throws NullPointerException     if {@code csv} is null
+	 * @throws IllegalArgumentException if the file does not contain a valid {@code Statement} and
+	 *                                  {@code Account Information} section
+	 * @throws IOException              if an I/O error occurs while reading the file
+	 */
+	public static IbLazyActivityStatement load(Path csv) throws IOException
+	{
+		requireThat(csv, "csv").isNotNull();
+		try (FileChannel channel = FileChannel.open(csv))
+		{
+			// The mapping outlives the channel, and is released once the segment is no longer reachable
+			return new IbLazyActivityStatement(channel.map(MapMode.READ_ONLY, 0, channel.size(),
+				Arena.ofAuto()));
+		}
+	}
+
+	/**
+	 * Loads a statement from a stream of CSV data.
+	 * <p>
+	 * The stream is read to the end and left open.
+	 *
+	 * @param csv the UTF-8 encoded CSV data
+	 * @return the statement
+	 * @throws NullPointerException     if {@code csv} is null
+	 * @throws IllegalArgumentException if the data does not contain a valid {@code Statement} and
+	 *                                  {@code Account Information} section
+	 * @throws IOException              if an I/O error occurs while reading the data
+	 */
+	public static IbLazyActivityStatement load(InputStream csv) throws IOException
+	{
+		requireThat(csv, "csv").isNotNull();
+		return new IbLazyActivityStatement(MemorySegment.ofArray(csv.readAllBytes()));
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param csv the UTF-8 encoded CSV data
+	 * @throws IllegalArgumentException if the data does not contain a valid {@code Statement} and
+	 *                                  {@code Account Information} section
+	 * @throws IOException              if the data is malformed
+	 */
+	private IbLazyActivityStatement(MemorySegment csv) throws IOException
+	{
+		this.csv = csv;
+		this.scanner = new SectionScanner(csv);
+		// The Statement and Account Information sections come first, so stop scanning once both are found
+		boolean foundStatement = false;
+		boolean foundAccount = false;
+		while (!foundStatement || !foundAccount)
+		{
+			Section section = scanner.next();
+			if (section == null)
+				break;
+			sections.add(section);
+			switch (section.name())
+			{
+				case "Statement" -> foundStatement = true;
+				case "Account Information" -> foundAccount = true;
+				default ->
+				{
+				}
+			}
+		}
+		StatementParser parser = parse(sections, section -> switch (section.name())
+		{
+			case "Statement", "Account Information" -> true;
+			default -> false;
+		});
+		this.header = parser.getHeader();
+		this.account = parser.getAccount();
+	}
+
+	/**
+	 * Returns all the sections of the statement, locating the ones that have not been located yet.
+	 *
+	 * @return the sections, in the order that they appear
+	 * @throws IOException if the data is malformed
+	 */
+	private List<Section> getSections() throws IOException
+	{
+		synchronized (sections)
+		{
+			while (true)
+			{
+				Section section = scanner.next();
+				if (section == null)
+					break;
+				sections.add(section);
+			}
+			return List.copyOf(sections);
+		}
+	}
+
+	/**
+	 * Parses a subset of the statement's sections.
+	 *
+	 * @param sections the sections of the statement
+	 * @param filter   returns {@code true} for the sections to parse
+	 * @return a parser whose sections have been parsed
+	 * @throws IllegalArgumentException if the sections are not valid
+	 * @throws IOException              if the sections are malformed
+	 */
+	private StatementParser parse(List<Section> sections, Predicate<Section> filter) throws IOException
+	{
+		StatementParser parser = new StatementParser();
+		for (Section section : sections)
+		{
+			if (filter.test(section))
+				parser.parseRows(csv.asSlice(section.start(), section.end() - section.start()));
+		}
+		parser.finish();
+		return parser;
+	}
+
+	/**
+	 * Returns the statement's header.
+	 *
+	 * @return information about the statement
+	 */
+	public Header header()
+	{
+		return header;
+	}
+
+	/**
+	 * Returns the account's information.
+	 *
+	 * @return information about the account
+	 */
+	public Account account()
+	{
+		return account;
+	}
+
+	/**
+	 * Returns the cash activity of each currency, parsing it on first access.
+	 *
+	 * @return cash activity for each currency held
+	 * @throws IOException if the section is malformed
+	 */
+	public Map<String, CashActivity> currencyToCashActivity() throws IOException
+	{
+		return currencyToCashActivity.get();
+	}
+
+	/**
+	 * Returns the trades, parsing them on first access.
+	 *
+	 * @return the trades
+	 * @throws IllegalArgumentException if the statement does not contain exactly one {@code Codes} and
+	 *                                  {@code Mark-to-Market Performance Summary} section
+	 * @throws IOException              if the sections are malformed or a trade references an unknown code
+	 */
+	public List<Trade> trades() throws IOException
+	{
+		return trades.get();
+	}
+
+	/**
+	 * Returns the foreign currency exchanges, parsing them on first access.
+	 *
+	 * @return the foreign currency exchanges
+	 * @throws IOException if the sections are malformed
+	 */
+	public List<Forex> forex() throws IOException
+	{
+		return forex.get();
+	}
+
+	/**
+	 * Returns the deposits and withdrawals, parsing them on first access.
+	 *
+	 * @return the deposits and withdrawals
+	 * @throws IOException if the sections are malformed
+	 */
+	public List<Deposit> deposits() throws IOException
+	{
+		return deposits.get();
+	}
+
+	/**
+	 * Returns the dividends paid and tax withheld, parsing them on first access.
+	 *
+	 * @return the dividends paid and tax withheld
+	 * @throws IOException if the sections are malformed
+	 */
+	public List<Dividend> dividends() throws IOException
+	{
+		return dividends.get();
+	}
+
+	/**
+	 * Parses all the sections of the statement.
+	 *
+	 * @return the statement
+	 * @throws IllegalArgumentException if the statement is not valid
+	 * @throws IOException              if the statement is malformed
+	 */
+	public IbActivityStatement toStatement() throws IOException
+	{
+		return new IbActivityStatement(header, account, currencyToCashActivity(), trades(), forex(), deposits(),
+			dividends());
+	}
+
+	@Override
+	public String toString()
+	{
+		return "IbLazyActivityStatement[header=" + header + ", account=" + account + "]";
+	}
+
+	/**
+	 * A contiguous range of rows that share the same section name, beginning with a header row.
+	 *
+	 * @param name  the name of the section
+	 * @param start the offset of the first byte of the section
+	 * @param end   the offset after the last byte of the section
+	 * @param forex {@code true} if the section contains foreign currency exchanges
+	 */
+	private record Section(String name, long start, long end, boolean forex)
+	{
+	}
+
+	/**
+	 * Locates the sections of a statement, one at a time.
+	 * <p>
+	 * This class is not thread-safe.
+	 */
+	private static final class SectionScanner
+	{
+		/**
+		 * The UTF-8 encoded CSV data.
+		 */
+		private final MemorySegment csv;
+		private final long end;
+		private final DelimiterScanner delimiters;
+		/**
+		 * The offset of the next row.
+		 */
+		private long position;
+		/**
+		 * The offset of the first row of the current section.
+		 */
+		private long sectionStart;
+		/**
+		 * The offset of the name of the previous row.
+		 */
+		private long nameStart;
+		/**
+		 * The offset after the name of the previous row.
+		 */
+		private long nameEnd;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param csv the UTF-8 encoded CSV data
+		 */
+		SectionScanner(MemorySegment csv)
+		{
+			this.csv = csv;
+			this.end = csv.byteSize();
+			this.delimiters = new DelimiterScanner(csv);
+			// Skip the Byte Order Mark (BOM) indicating the use of UTF-8
+			if (end >= 3 && csv.get(JAVA_BYTE, 0) == (byte) 0xEF && csv.get(JAVA_BYTE, 1) == (byte) 0xBB &&
+				csv.get(JAVA_BYTE, 2) == (byte) 0xBF)
+			{
+				position = 3;
+			}
+			this.sectionStart = position;
+			this.nameStart = position;
+			this.nameEnd = position;
+		}
+
+		/**
+		 * Locates the next section.
+		 *
+		 * @return {@code null} if there are no more sections
+		 * @throws IOException if the data is malformed
+		 */
+		public Section next() throws IOException
+		{
+			while (position < end)
+			{
+				long lineStart = position;
+				long lineEnd = findLineEnd(lineStart);
+				long lineNameStart = lineStart;
+				if (csv.get(JAVA_BYTE, lineNameStart) == '"')
+					++lineNameStart;
+				long lineNameEnd = lineNameStart;
+				while (lineNameEnd < lineEnd && !isNameTerminator(csv.get(JAVA_BYTE, lineNameEnd)))
+					++lineNameEnd;
+				position = lineEnd;
+
+				// A section ends when the section name changes or a new header row begins
+				Section section = null;
+				if (lineStart != sectionStart && (!equals(nameStart, nameEnd, lineNameStart, lineNameEnd) ||
+					isHeaderRow(lineNameEnd, lineEnd)))
+				{
+					section = toSection(sectionStart, lineStart);
+					sectionStart = lineStart;
+				}
+				nameStart = lineNameStart;
+				nameEnd = lineNameEnd;
+				if (section != null)
+					return section;
+			}
+			if (sectionStart == end)
+				return null;
+			Section section = toSection(sectionStart, end);
+			sectionStart = end;
+			return section;
+		}
+
+		/**
+		 * Indicates if a byte terminates the first column of a row.
+		 *
+		 * @param b a byte
+		 * @return {@code true} if the byte is a separator, quote or line terminator
+		 */
+		private static boolean isNameTerminator(byte b)
+		{
+			return b == ',' || b == '"' || b == '\r' || b == '\n';
+		}
+
+		/**
+		 * Returns the end of a row.
+		 *
+		 * @param start the offset of the first byte of the row
+		 * @return the offset after the row's line terminator, or the length of the data if the row is not
+		 *         terminated
+		 */
+		private long findLineEnd(long start)
+		{
+			// Quoted values may contain line terminators
+			boolean quoted = false;
+			long i = start;
+			while (true)
+			{
+				i = delimiters.next(i);
+				if (i >= end)
+					return end;
+				byte b = csv.get(JAVA_BYTE, i);
+				if (b == '"')
+					quoted = !quoted;
+				else if (b == '\n' && !quoted)
+					return i + 1;
+				++i;
+			}
+		}
+
+		/**
+		 * Indicates if two ranges of the data contain the same bytes.
+		 *
+		 * @param firstStart  the offset of the first range
+		 * @param firstEnd    the offset after the first range
+		 * @param secondStart the offset of the second range
+		 * @param secondEnd   the offset after the second range
+		 * @return {@code true} if the ranges contain the same bytes
+		 */
+		private boolean equals(long firstStart, long firstEnd, long secondStart, long secondEnd)
+		{
+			long length = firstEnd - firstStart;
+			if (secondEnd - secondStart != length)
+				return false;
+			for (long i = 0; i < length; ++i)
+			{
+				if (csv.get(JAVA_BYTE, firstStart + i) != csv.get(JAVA_BYTE, secondStart + i))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Indicates if a row is a header row.
+		 *
+		 * @param nameEnd the offset of the end of the row's first column
+		 * @param lineEnd the offset after the end of the row
+		 * @return {@code true} if the second column of the row is {@code Header}
+		 */
+		private boolean isHeaderRow(long nameEnd, long lineEnd)
+		{
+			// Skip the closing quote of the first column, if any
+			long start = nameEnd;
+			if (start < lineEnd && csv.get(JAVA_BYTE, start) == '"')
+				++start;
+			if (start >= lineEnd || csv.get(JAVA_BYTE, start) != ',')
+				return false;
+			++start;
+			long headerEnd = start + HEADER.length;
+			if (headerEnd > lineEnd)
+				return false;
+			for (int i = 0; i < HEADER.length; ++i)
+			{
+				if (csv.get(JAVA_BYTE, start + i) != HEADER[i])
+					return false;
+			}
+			if (headerEnd == lineEnd)
+				return true;
+			byte b = csv.get(JAVA_BYTE, headerEnd);
+			return b == ',' || b == '\r' || b == '\n';
+		}
+
+		/**
+		 * Creates a section whose name is that of the previous row.
+		 *
+		 * @param start the offset of the first byte of the section
+		 * @param end   the offset after the last byte of the section
+		 * @return the section
+		 * @throws IOException if the section is malformed
+		 */
+		private Section toSection(long start, long end) throws IOException
+		{
+			String name = new String(csv.asSlice(nameStart, nameEnd - nameStart).toArray(JAVA_BYTE), UTF_8);
+			boolean forex = name.equals("Trades") && isForex(start, end);
+			return new Section(name, start, end, forex);
+		}
+
+		/**
+		 * Indicates if a {@code Trades} section contains foreign currency exchanges.
+		 *
+		 * @param start the offset of the first byte of the section
+		 * @param end   the offset after the last byte of the section
+		 * @return {@code true} if the section contains foreign currency exchanges
+		 * @throws IOException if the section is malformed
+		 */
+		private boolean isForex(long start, long end) throws IOException
+		{
+			CsvTokenizer tokens = new CsvTokenizer(csv.asSlice(start, end - start));
+			if (!tokens.nextRow())
+				return false;
+			List<String> columns = List.copyOf(tokens.row());
+			if (!tokens.nextRow())
+				return false;
+			return StatementParser.isForex(columns, tokens.row());
+		}
+	}
+
+	/**
+	 * Retrieves a part of the statement from a parser.
+	 *
+	 * @param <T> the type of the part
+	 */
+	@FunctionalInterface
+	private interface PartGetter<T>
+	{
+		/**
+		 * Returns the part.
+		 *
+		 * @param parser a parser whose sections have been parsed
+		 * @return the part
+		 * @throws IOException if the part is malformed
+		 */
+		T get(StatementParser parser) throws IOException;
+	}
+
+	/**
+	 * A part of the statement that is parsed on first access.
+	 *
+	 * @param <T> the type of the part
+	 */
+	private final class LazyPart<T>
+	{
+		private final Predicate<Section> filter;
+		private final PartGetter<T> getter;
+		private volatile T value;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param filter returns {@code true} for the sections that the part depends on
+		 * @param getter retrieves the part from a parser
+		 */
+		LazyPart(Predicate<Section> filter, PartGetter<T> getter)
+		{
+			this.filter = filter;
+			this.getter = getter;
+		}
+
+		/**
+		 * Returns the part, parsing it if necessary.
+		 *
+		 * @return the part
+		 * @throws IOException if the sections are malformed
+		 */
+		T get() throws IOException
+		{
+			T result = value;
+			if (result != null)
+				return result;
+			synchronized (this)
+			{
+				result = value;
+				if (result == null)
+				{
+					result = getter.get(parse(getSections(), filter));
+					value = result;
+				}
+				return result;
+			}
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Selects the parts of an activity statement to load.
+ * <p>
+ * The filter is applied while the statement is parsed, before the numbers and dates of a row are decoded, so
+ * the cost of loading a statement grows with the number of rows that are returned rather than with the size
+ * of the statement. Rows that are excluded are not validated.
+ * <p>
+ * The header and account information are always loaded. Trades that are excluded still contribute to the
+ * positions of their assets, so the {@link Trade#assetId() asset IDs} of the trades that are loaded are the
+ * same as those returned by {@link IbActivityStatement#load(Path)}.
+ * <p>
+ * This class is immutable and thread-safe.
+ *
+ * @see IbActivityStatement#load(Path, IbLoadFilter)
+ */
+public final class IbLoadFilter
+{
+	private static final IbLoadFilter ALL = new IbLoadFilter(EnumSet.allOf(Part.class), null, null, null,
+		null);
+	/**
+	 * The length of a date in the format {@code yyyy-MM-dd}.
+	 */
+	private static final int DATE_LENGTH = 10;
+	private final Set<Part> parts;
+	private final LocalDate startDate;
+	private final LocalDate endDate;
+	private final Set<String> currencies;
+	private final Set<String> symbols;
+	/**
+	 * {@link #startDate} in the format {@code yyyy-MM-dd}, or {@code null} if it is unbounded.
+	 */
+	private final String startDateText;
+	/**
+	 * {@link #endDate} in the format {@code yyyy-MM-dd}, or {@code null} if it is unbounded.
+	 */
+	private final String endDateText;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param parts      the parts to load
+	 * @param startDate  the first day to load, or {@code null} if unbounded
+	 * @param endDate    the last day to load (inclusive), or {@code null} if unbounded
+	 * @param currencies the currencies to load, or {@code null} to load all currencies
+	 * @param symbols    the symbols of the trades to load, or {@code null} to load all trades
+	 */
+	private IbLoadFilter(Set<Part> parts, LocalDate startDate, LocalDate endDate, Set<String> currencies,
+		Set<String> symbols)
+	{
+		this.parts = parts;
+		this.startDate = startDate;
+		this.endDate = endDate;
+		this.currencies = currencies;
+		this.symbols = symbols;
+		if (startDate == null)
+			this.startDateText = null;
+		else
+			this.startDateText = startDate.toString();
+		if (endDate == null)
+			this.endDateText = null;
+		else
+			this.endDateText = endDate.toString();
+	}
+
+	/**
+	 * Returns a filter that loads the entire statement.
+	 *
+	 * @return the filter
+	 */
+	public static IbLoadFilter all()
+	{
+		return ALL;
+	}
+
+	/**
+	 * Returns a filter that only loads some parts of the statement.
+	 * <p>
+	 * Excluded parts are returned as empty collections, and their sections are skipped without being parsed.
+	 *
+	 * @param parts the parts to load
+	 * @return a copy of this filter that loads the specified parts
+	 * @throws NullPointerException if {@code parts} or any of its elements are null
+	 */
+	public IbLoadFilter withParts(Set<Part> parts)
+	{
+		requireThat(parts, "parts").isNotNull();
+		EnumSet<Part> copy = EnumSet.noneOf(Part.class);
+		for (Part part : parts)
+		{
+			requireThat(part, "part").isNotNull();
+			copy.add(part);
+		}
+		return new IbLoadFilter(copy, startDate, endDate, currencies, symbols);
+	}
+
+	/**
+	 * Returns a filter that only loads the activity of some days.
+	 * <p>
+	 * The range applies to trades, foreign currency exchanges, deposits and dividends. Cash activities
+	 * summarize the entire period of the statement and are not affected.
+	 *
+	 * @param startDate the first day to load, or {@code null} if unbounded
+	 * @param endDate   the last day to load (inclusive), or {@code null} if unbounded
+	 * @return a copy of this filter that loads the specified days
+	 * @throws IllegalArgumentException if {@code startDate} is after {@code endDate}
+	 */
+	public IbLoadFilter withDates(LocalDate startDate, LocalDate endDate)
+	{
+		if (startDate != null && endDate != null)
+			requireThat(startDate, "startDate").isLessThanOrEqualTo(endDate, "endDate");
+		return new IbLoadFilter(parts, startDate, endDate, currencies, symbols);
+	}
+
+	/**
+	 * Returns a filter that only loads the activity of some currencies.
+	 * <p>
+	 * The currencies apply to cash activities, trades, deposits and dividends. A foreign currency exchange
+	 * is loaded if either of its currencies is selected.
+	 *
+	 * @param currencies the currencies to load, or {@code null} to load all currencies
+	 * @return a copy of this filter that loads the specified currencies
+	 * @throws NullPointerException if any of the currencies are null
+	 */
+	public IbLoadFilter withCurrencies(Set<String> currencies)
+	{
+		Set<String> copy;
+		if (currencies == null)
+			copy = null;
+		else
+			copy = Set.copyOf(currencies);
+		return new IbLoadFilter(parts, startDate, endDate, copy, symbols);
+	}
+
+	/**
+	 * Returns a filter that only loads the trades of some symbols.
+	 * <p>
+	 * A trade is loaded if its {@link Trade#symbol() symbol} or {@link Trade#underlyingAsset() underlying
+	 * asset} is selected. The other parts of the statement are not affected.
+	 *
+	 * @param symbols the symbols of the trades to load, or {@code null} to load all trades
+	 * @return a copy of this filter that loads the specified symbols
+	 * @throws NullPointerException if any of the symbols are null
+	 */
+	public IbLoadFilter withSymbols(Set<String> symbols)
+	{
+		Set<String> copy;
+		if (symbols == null)
+			copy = null;
+		else
+			copy = Set.copyOf(symbols);
+		return new IbLoadFilter(parts, startDate, endDate, currencies, copy);
+	}
+
+	/**
+	 * Returns the parts to load.
+	 *
+	 * @return an unmodifiable set
+	 */
+	public Set<Part> parts()
+	{
+		return Set.copyOf(parts);
+	}
+
+	/**
+	 * Returns the first day to load.
+	 *
+	 * @return {@code null} if unbounded
+	 */
+	public LocalDate startDate()
+	{
+		return startDate;
+	}
+
+	/**
+	 * Returns the last day to load (inclusive).
+	 *
+	 * @return {@code null} if unbounded
+	 */
+	public LocalDate endDate()
+	{
+		return endDate;
+	}
+
+	/**
+	 * Returns the currencies to load.
+	 *
+	 * @return {@code null} if all currencies are loaded
+	 */
+	public Set<String> currencies()
+	{
+		return currencies;
+	}
+
+	/**
+	 * Returns the symbols of the trades to load.
+	 *
+	 * @return {@code null} if all trades are loaded
+	 */
+	public Set<String> symbols()
+	{
+		return symbols;
+	}
+
+	/**
+	 * Indicates if a part of the statement is loaded.
+	 *
+	 * @param part a part of the statement
+	 * @return {@code true} if the part is loaded
+	 */
+	boolean includes(Part part)
+	{
+		return parts.contains(part);
+	}
+
+	/**
+	 * Indicates if a row with the specified date is loaded.
+	 *
+	 * @param text a value in the format {@code yyyy-MM-dd} or {@code yyyy-MM-dd, HH:mm:ss}
+	 * @return {@code true} if the date is within the range, or if {@code text} is too short to contain a date
+	 */
+	boolean acceptsDate(String text)
+	{
+		// Dates have a fixed width and their fields are in descending order of significance, so they can be
+		// compared without decoding them
+		if (text.length() < DATE_LENGTH)
+			return true;
+		if (startDateText != null && compareDate(text, startDateText) < 0)
+			return false;
+		return endDateText == null || compareDate(text, endDateText) <= 0;
+	}
+
+	/**
+	 * Compares the date at the start of a value to another date.
+	 *
+	 * @param text a value that starts with a date in the format {@code yyyy-MM-dd}
+	 * @param date a date in the format {@code yyyy-MM-dd}
+	 * @return a negative number, zero or a positive number if the first date is before, equal to or after the
+	 *         second date
+	 */
+	private static int compareDate(String text, String date)
+	{
+		for (int i = 0; i < DATE_LENGTH; ++i)
+		{
+			int difference = text.charAt(i) - date.charAt(i);
+			if (difference != 0)
+				return difference;
+		}
+		return 0;
+	}
+
+	/**
+	 * Indicates if a row with the specified currency is loaded.
+	 *
+	 * @param currency a currency
+	 * @return {@code true} if the currency is selected
+	 */
+	boolean acceptsCurrency(String currency)
+	{
+		return currencies == null || currencies.contains(currency);
+	}
+
+	/**
+	 * Indicates if a trade of the specified symbol is loaded.
+	 *
+	 * @param symbol the symbol of the asset
+	 * @return {@code true} if the symbol or its underlying asset is selected
+	 */
+	boolean acceptsSymbol(ParsedSymbol symbol)
+	{
+		return symbols == null || symbols.contains(symbol.value()) ||
+			symbols.contains(symbol.underlyingAsset());
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof IbLoadFilter other && other.parts.equals(parts) &&
+			Objects.equals(other.startDate, startDate) && Objects.equals(other.endDate, endDate) &&
+			Objects.equals(other.currencies, currencies) && Objects.equals(other.symbols, symbols);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(parts, startDate, endDate, currencies, symbols);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "IbLoadFilter[parts=" + parts + ", startDate=" + startDate + ", endDate=" + endDate +
+			", currencies=" + currencies + ", symbols=" + symbols + "]";
+	}
+
+	/**
+	 * The optional parts of a statement.
+	 */
+	public enum Part
+	{
+		/**
+		 * {@link IbActivityStatement#currencyToCashActivity()}.
+		 */
+		CASH_ACTIVITY,
+		/**
+		 * {@link IbActivityStatement#trades()}.
+		 */
+		TRADES,
+		/**
+		 * {@link IbActivityStatement#forex()}.
+		 */
+		FOREX,
+		/**
+		 * {@link IbActivityStatement#deposits()}.
+		 */
+		DEPOSITS,
+		/**
+		 * {@link IbActivityStatement#dividends()}.
+		 */
+		DIVIDENDS
+	}
+}
@@ -0,0 +1,46 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.nio.file.Path;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * The outcome of loading a single statement as part of a batch.
+ *
+ * @param path      the path of the CSV file
+ * @param statement the parsed statement, or {@code null} if the file could not be loaded
+ * @param failure   the reason that the file could not be loaded, or {@code null} on success
+ */
+public record IbLoadResult(Path path, IbActivityStatement statement, Throwable failure)
+{
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param path      the path of the CSV file
+	 * @param statement the parsed statement, or {@code null} if the file could not be loaded
+	 * @param failure   the reason that the file could not be loaded, or {@code null} on success
+	 * @throws NullPointerException     if {@code path} is null
+	 * @throws IllegalArgumentException if {@code statement} and {@code failure} are both null or both
+	 *                                  non-null
+	 */
+	public IbLoadResult
+	{
+		requireThat(path, "path").isNotNull();
+		if ((statement == null) == (failure == null))
+		{
+			throw new IllegalArgumentException("Exactly one of statement or failure must be non-null.\n" +
+				"statement: " + statement + "\n" +
+				"failure  : " + failure);
+		}
+	}
+
+	/**
+	 * Indicates if the statement was loaded successfully.
+	 *
+	 * @return {@code true} if {@link #statement()} is non-null
+	 */
+	public boolean isSuccess()
+	{
+		return statement != null;
+	}
+}
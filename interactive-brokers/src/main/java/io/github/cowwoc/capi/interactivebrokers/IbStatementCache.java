@@ -0,0 +1,275 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Caches parsed activity statements, keyed by the contents of their CSV file.
+ * <p>
+ * Statements do not change once they are generated, so a file whose contents have not changed does not need
+ * to be parsed again. Looking up a statement costs a SHA-256 hash of the file, which is much cheaper than
+ * parsing it. The key also covers the version of the parser, so statements that were parsed by a version
+ * that behaves differently are never returned.
+ * <p>
+ * The capacity of the cache is measured in rows (trades, foreign currency exchanges, deposits and dividends)
+ * because they account for most of a statement's memory. Once the capacity is exceeded, the least recently
+ * used statements are evicted.
+ * <p>
+ * Optionally, the cache also stores an {@link IbStatementSnapshot} of each statement in a directory. The
+ * snapshots survive evictions and process restarts, and are much faster to load than the CSV files.
+ * Snapshots that cannot be read or written are logged and ignored.
+ * <p>
+ * This class is thread-safe. Cached statements are shared by all callers. If multiple threads load the same
+ * uncached file at the same time, each of them parses it.
+ */
+public final class IbStatementCache
+{
+	private final long maximumRows;
+	/**
+	 * The directory containing the snapshots, or {@code null} if statements are only cached in memory.
+	 */
+	private final Path directory;
+	/**
+	 * Maps the hash of each statement to its value, in least-recently-used order.
+	 */
+	private final Map<String, IbActivityStatement> hashToStatement = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * The total number of rows in the cached statements.
+	 */
+	private long rows;
+	private final Logger log = LoggerFactory.getLogger(IbStatementCache.class);
+
+	/**
+	 * Creates a cache that stores statements in memory.
+	 *
+	 * @param maximumRows the maximum total number of rows in the cached statements
+	 * @throws IllegalArgumentException if {@code maximumRows} is not positive
+	 */
+	public IbStatementCache(long maximumRows)
+	{
+		requireThat(maximumRows, "maximumRows").isPositive();
+		this.maximumRows = maximumRows;
+		this.directory = null;
+	}
+
+	/**
+	 * Creates a cache that stores statements in memory and snapshots of them on disk.
+	 *
+	 * @param maximumRows the maximum total number of rows in the statements that are cached in memory
+	 * @param directory   the directory to store snapshots in. It is created if it does not exist.
+	 * @throws NullPointerException     if {@code directory} is null
+	 * @throws IllegalArgumentException if {@code maximumRows} is not positive
+	 * @throws IOException              if an I/O error occurs while creating the directory
+	 */
+	public IbStatementCache(long maximumRows, Path directory) throws IOException
+	{
+		requireThat(maximumRows, "maximumRows").isPositive();
+		requireThat(directory, "directory").isNotNull();
+		this.maximumRows = maximumRows;
+		this.directory = Files.createDirectories(directory);
+	}
+
+	/**
+	 * Loads a statement, reusing the result of a previous load if the file's contents have not changed.
+	 *
+	 * @param csv the path of the CSV file
+	 * @return the parsed statement
+	 * @throws NullPointerException     if {@code csv} is null
+	 * @throws IllegalArgumentException if the file is not a valid activity statement
+	 * @throws IOException              if an I/O error occurs while reading the file
+	 * @see IbActivityStatement#load(Path)
+	 */
+	public IbActivityStatement load(Path csv) throws IOException
+	{
+		requireThat(csv, "csv").isNotNull();
+		MessageDigest digest = newDigest();
+		try (InputStream in = new DigestInputStream(Files.newInputStream(csv), digest))
+		{
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		String hash = HexFormat.of().formatHex(digest.digest());
+		IbActivityStatement statement;
+		synchronized (this)
+		{
+			statement = hashToStatement.get(hash);
+		}
+		if (statement != null)
+			return statement;
+		if (directory != null)
+		{
+			statement = readSnapshot(hash);
+			if (statement != null)
+			{
+				put(hash, statement);
+				return statement;
+			}
+		}
+
+		// Hash the bytes that are parsed, in case the file was modified after it was hashed. The file is copied
+		// instead of being mapped because a mapping would reflect later modifications.
+		byte[] bytes = Files.readAllBytes(csv);
+		digest = newDigest();
+		digest.update(bytes);
+		hash = HexFormat.of().formatHex(digest.digest());
+		StatementParser parser = new StatementParser();
+		parser.parseRows(MemorySegment.ofArray(bytes));
+		statement = parser.getStatement();
+		put(hash, statement);
+		if (directory != null)
+			writeSnapshot(hash, statement);
+		return statement;
+	}
+
+	/**
+	 * Reads a statement from the disk cache.
+	 *
+	 * @param hash the hash of the statement's contents
+	 * @return {@code null} if the snapshot does not exist or cannot be read
+	 */
+	private IbActivityStatement readSnapshot(String hash)
+	{
+		Path snapshot = directory.resolve(hash + ".ibss");
+		if (Files.notExists(snapshot))
+			return null;
+		try
+		{
+			return IbStatementSnapshot.read(snapshot);
+		}
+		catch (IOException e)
+		{
+			log.warn("Ignoring unreadable snapshot: {}", snapshot, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a statement to the disk cache.
+	 *
+	 * @param hash      the hash of the statement's contents
+	 * @param statement the statement
+	 */
+	private void writeSnapshot(String hash, IbActivityStatement statement)
+	{
+		Path snapshot = directory.resolve(hash + ".ibss");
+		try
+		{
+			// Write to a temporary file first so that concurrent readers never observe a partial snapshot
+			Path temporary = Files.createTempFile(directory, hash, ".tmp");
+			try
+			{
+				IbStatementSnapshot.write(statement, temporary);
+				Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally
+			{
+				Files.deleteIfExists(temporary);
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to write snapshot: {}", snapshot, e);
+		}
+	}
+
+	/**
+	 * Returns a digest that has already been updated with the parser's version.
+	 *
+	 * @return a SHA-256 digest
+	 */
+	private static MessageDigest newDigest()
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// All Java implementations are required to support SHA-256
+			throw new AssertionError(e);
+		}
+		int version = StatementParser.VERSION;
+		digest.update(new byte[]{(byte) (version >>> 24), (byte) (version >>> 16), (byte) (version >>> 8),
+			(byte) version});
+		return digest;
+	}
+
+	/**
+	 * Adds a statement to the cache, evicting the least recently used statements if necessary.
+	 *
+	 * @param hash      the hash of the statement's contents
+	 * @param statement the statement
+	 */
+	private synchronized void put(String hash, IbActivityStatement statement)
+	{
+		IbActivityStatement previous = hashToStatement.put(hash, statement);
+		if (previous != null)
+			rows -= getRows(previous);
+		rows += getRows(statement);
+
+		Iterator<Entry<String, IbActivityStatement>> iterator = hashToStatement.entrySet().iterator();
+		while (rows > maximumRows)
+		{
+			IbActivityStatement eldest = iterator.next().getValue();
+			iterator.remove();
+			rows -= getRows(eldest);
+		}
+	}
+
+	/**
+	 * Returns the weight of a statement.
+	 *
+	 * @param statement a statement
+	 * @return the number of rows in the statement, including its header
+	 */
+	private static long getRows(IbActivityStatement statement)
+	{
+		return 1L + statement.trades().size() + statement.forex().size() + statement.deposits().size() +
+			statement.dividends().size();
+	}
+
+	/**
+	 * Returns the number of cached statements.
+	 *
+	 * @return the number of statements
+	 */
+	public synchronized int size()
+	{
+		return hashToStatement.size();
+	}
+
+	/**
+	 * Removes all statements from the cache.
+	 */
+	public synchronized void clear()
+	{
+		hashToStatement.clear();
+		rows = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "IbStatementCache[statements=" + hashToStatement.size() + ", rows=" + rows + ", maximumRows=" +
+			maximumRows + ", directory=" + directory + "]";
+	}
+}
@@ -0,0 +1,646 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Account;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.CashActivity;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Code;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Deposit;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Dividend;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Forex;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Header;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads and writes activity statements in a compact binary format.
+ * <p>
+ * Loading a snapshot skips CSV tokenization and the validation of the statement's structure, so it is much
+ * faster than parsing the CSV file that it was converted from. A snapshot contains:
+ * <ol>
+ *   <li>A magic number and the version of the format.</li>
+ *   <li>A table of the distinct strings in the statement. Strings are referenced by their index in the
+ *   table, so each symbol, currency and description is stored and decoded once.</li>
+ *   <li>The contents of the statement. Integers are variable-length, dates and times are stored as epoch
+ *   days and seconds, and timestamps within a list are stored relative to the previous element. The
+ *   {@link FixedPoint} amounts of trades and exchanges are stored as variable-length integers. Other numbers
+ *   are stored as their scale and unscaled value.</li>
+ * </ol>
+ * Snapshots reproduce the statement exactly, including the scale of its numbers.
+ */
+public final class IbStatementSnapshot
+{
+	/**
+	 * The first 4 bytes of every snapshot ({@code IBSS} in ASCII).
+	 */
+	private static final int MAGIC = 0x49425353;
+	/**
+	 * The version of the format. It must be incremented whenever the format changes.
+	 */
+	private static final int VERSION = 2;
+	private static final Code[] CODES = Code.values();
+	private static final int SECONDS_PER_DAY = 86_400;
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+	/**
+	 * The number of numbers that each decoder caches. Must be a power of two.
+	 */
+	private static final int DECIMAL_CACHE_SIZE = 1024;
+
+	/**
+	 * Writes a snapshot to a file.
+	 *
+	 * @param statement a statement
+	 * @param path      the path of the snapshot. An existing file is overwritten.
+	 * @throws NullPointerException if any of the arguments are null
+	 * @throws IOException          if an I/O error occurs while writing the file
+	 */
+	public static void write(IbActivityStatement statement, Path path) throws IOException
+	{
+		requireThat(statement, "statement").isNotNull();
+		requireThat(path, "path").isNotNull();
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path)))
+		{
+			write(statement, out);
+		}
+	}
+
+	/**
+	 * Writes a snapshot to a stream.
+	 * <p>
+	 * The stream is left open.
+	 *
+	 * @param statement a statement
+	 * @param out       the stream to write to
+	 * @throws NullPointerException if any of the arguments are null
+	 * @throws IOException          if an I/O error occurs while writing to the stream
+	 */
+	public static void write(IbActivityStatement statement, OutputStream out) throws IOException
+	{
+		requireThat(statement, "statement").isNotNull();
+		requireThat(out, "out").isNotNull();
+
+		Encoder body = new Encoder();
+		Header header = statement.header();
+		body.writeDate(header.startDate());
+		body.writeDate(header.endDate());
+		body.writeDateTime(header.generatedAt());
+
+		Account account = statement.account();
+		body.writeString(account.number());
+		body.writeString(account.owner());
+
+		body.writeUnsigned(statement.currencyToCashActivity().size());
+		for (Entry<String, CashActivity> entry : statement.currencyToCashActivity().entrySet())
+		{
+			CashActivity activity = entry.getValue();
+			body.writeString(entry.getKey());
+			body.writeString(activity.currency());
+			body.writeDecimal(activity.openingBalance());
+			body.writeDecimal(activity.closingBalance());
+		}
+
+		body.writeUnsigned(statement.trades().size());
+		body.previousEpochSecond = 0;
+		for (Trade trade : statement.trades())
+		{
+			body.writeDateTime(trade.dateTime());
+			body.writeString(trade.symbol());
+			body.writeUnsigned(trade.assetId());
+			body.writeSigned(trade.quantityAsFixedPoint());
+			body.writeSigned(trade.priceAsFixedPoint());
+			body.writeSigned(trade.proceedsAsFixedPoint());
+			body.writeSigned(trade.commissionAsFixedPoint());
+			body.writeString(trade.currency());
+			body.writeUnsigned(trade.codeMask());
+			body.writeString(trade.underlyingAsset());
+			body.writeDecimal(trade.strikePrice());
+		}
+
+		body.writeUnsigned(statement.forex().size());
+		body.previousEpochSecond = 0;
+		for (Forex forex : statement.forex())
+		{
+			body.writeDateTime(forex.dateTime());
+			body.writeString(forex.sourceCurrency());
+			body.writeString(forex.targetCurrency());
+			body.writeSigned(forex.quantityAsFixedPoint());
+			body.writeSigned(forex.priceAsFixedPoint());
+			body.writeSigned(forex.proceedsAsFixedPoint());
+			body.writeSigned(forex.commissionAsFixedPoint());
+		}
+
+		body.writeUnsigned(statement.deposits().size());
+		for (Deposit deposit : statement.deposits())
+		{
+			body.writeDate(deposit.date());
+			body.writeString(deposit.currency());
+			body.writeDecimal(deposit.quantity());
+			body.writeString(deposit.description());
+		}
+
+		body.writeUnsigned(statement.dividends().size());
+		for (Dividend dividend : statement.dividends())
+		{
+			body.writeDate(dividend.date());
+			body.writeString(dividend.currency());
+			body.writeDecimal(dividend.quantity());
+			body.writeString(dividend.description());
+		}
+
+		Encoder prefix = new Encoder();
+		prefix.writeInt(MAGIC);
+		prefix.writeUnsigned(VERSION);
+		prefix.writeUnsigned(body.strings.size());
+		for (String value : body.strings.keySet())
+		{
+			byte[] bytes = value.getBytes(UTF_8);
+			prefix.writeUnsigned(bytes.length);
+			prefix.writeBytes(bytes);
+		}
+		out.write(prefix.bytes, 0, prefix.size);
+		out.write(body.bytes, 0, body.size);
+	}
+
+	/**
+	 * Reads a snapshot from a file.
+	 * <p>
+	 * The file is memory-mapped instead of being copied into the heap. Snapshots may not exceed 2 GiB.
+	 *
+	 * @param path the path of the snapshot
+	 * @return the statement
+	 * @throws NullPointerException if {@code path} is null
+	 * @throws IOException          if an I/O error occurs while reading the file, if the file is larger than
+	 *                              2 GiB, or if the file is not a valid snapshot
+	 */
+	public static IbActivityStatement read(Path path) throws IOException
+	{
+		requireThat(path, "path").isNotNull();
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("The snapshot is too large: " + size + " bytes");
+			// The mapping remains valid after the channel is closed
+			buffer = channel.map(MapMode.READ_ONLY, 0, size);
+		}
+		return read(buffer);
+	}
+
+	/**
+	 * Reads a snapshot from a buffer.
+	 * <p>
+	 * The snapshot is read from the buffer's position up to its limit. The buffer's position is advanced past
+	 * the snapshot.
+	 *
+	 * @param buffer the snapshot
+	 * @return the statement
+	 * @throws NullPointerException if {@code buffer} is null
+	 * @throws IOException          if the buffer does not contain a valid snapshot
+	 */
+	public static IbActivityStatement read(ByteBuffer buffer) throws IOException
+	{
+		requireThat(buffer, "buffer").isNotNull();
+		try
+		{
+			return new Decoder(buffer).readStatement();
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("The snapshot is truncated", e);
+		}
+		catch (IllegalArgumentException | ArithmeticException | DateTimeException e)
+		{
+			// Thrown by the constructors of the records, or if a value is out of range
+			throw new IOException("The snapshot is corrupt", e);
+		}
+	}
+
+	/**
+	 * Encodes values into a growable byte array.
+	 */
+	private static final class Encoder
+	{
+		/**
+		 * Maps each string to its index in the string table, in the order that they were first written.
+		 */
+		final Map<String, Integer> strings = new LinkedHashMap<>();
+		byte[] bytes = new byte[8192];
+		int size;
+		/**
+		 * The epoch second of the last date and time that was written.
+		 */
+		long previousEpochSecond;
+
+		/**
+		 * Ensures that the array has room for additional bytes.
+		 *
+		 * @param length the number of bytes to add
+		 */
+		private void ensureCapacity(int length)
+		{
+			if (size + length > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+		}
+
+		/**
+		 * Writes 4 bytes in big-endian order.
+		 *
+		 * @param value a value
+		 */
+		void writeInt(int value)
+		{
+			ensureCapacity(Integer.BYTES);
+			bytes[size++] = (byte) (value >>> 24);
+			bytes[size++] = (byte) (value >>> 16);
+			bytes[size++] = (byte) (value >>> 8);
+			bytes[size++] = (byte) value;
+		}
+
+		/**
+		 * Writes a byte array.
+		 *
+		 * @param value a byte array
+		 */
+		void writeBytes(byte[] value)
+		{
+			ensureCapacity(value.length);
+			System.arraycopy(value, 0, bytes, size, value.length);
+			size += value.length;
+		}
+
+		/**
+		 * Writes an unsigned variable-length integer, 7 bits per byte.
+		 *
+		 * @param value a value, treated as unsigned
+		 */
+		void writeUnsigned(long value)
+		{
+			ensureCapacity(10);
+			while ((value & ~0x7FL) != 0)
+			{
+				bytes[size++] = (byte) (value & 0x7F | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		/**
+		 * Writes a signed variable-length integer, using zigzag encoding so that small negative numbers are
+		 * short.
+		 *
+		 * @param value a value
+		 */
+		void writeSigned(long value)
+		{
+			writeUnsigned(value << 1 ^ value >> 63);
+		}
+
+		/**
+		 * Writes a reference to the string table.
+		 *
+		 * @param value (optional) a string
+		 */
+		void writeString(String value)
+		{
+			if (value == null)
+			{
+				writeUnsigned(0);
+				return;
+			}
+			Integer index = strings.get(value);
+			if (index == null)
+			{
+				index = strings.size();
+				strings.put(value, index);
+			}
+			writeUnsigned(index + 1L);
+		}
+
+		/**
+		 * Writes a number.
+		 *
+		 * @param value (optional) a number
+		 */
+		void writeDecimal(BigDecimal value)
+		{
+			if (value == null)
+			{
+				writeUnsigned(0);
+				return;
+			}
+			// The tag combines the zigzag-encoded scale and whether the unscaled value overflows a long
+			long scale = value.scale();
+			long zigzagScale = scale << 1 ^ scale >> 63;
+			BigInteger unscaled = value.unscaledValue();
+			if (unscaled.bitLength() < Long.SIZE)
+			{
+				writeUnsigned((zigzagScale << 1) + 1);
+				writeSigned(unscaled.longValue());
+			}
+			else
+			{
+				writeUnsigned((zigzagScale << 1 | 1) + 1);
+				byte[] magnitude = unscaled.toByteArray();
+				writeUnsigned(magnitude.length);
+				writeBytes(magnitude);
+			}
+		}
+
+		/**
+		 * Writes a date.
+		 *
+		 * @param value a date
+		 */
+		void writeDate(LocalDate value)
+		{
+			writeSigned(value.toEpochDay());
+		}
+
+		/**
+		 * Writes a date and time relative to the previous one.
+		 *
+		 * @param value a date and time
+		 */
+		void writeDateTime(LocalDateTime value)
+		{
+			long epochSecond = value.toEpochSecond(ZoneOffset.UTC);
+			writeSigned(epochSecond - previousEpochSecond);
+			writeUnsigned(value.getNano());
+			previousEpochSecond = epochSecond;
+		}
+	}
+
+	/**
+	 * Decodes values from a buffer.
+	 */
+	private static final class Decoder
+	{
+		private final ByteBuffer buffer;
+		private String[] strings;
+		/**
+		 * The epoch second of the last date and time that was read.
+		 */
+		private long previousEpochSecond;
+		/**
+		 * The date of the last date and time that was read. Consecutive trades tend to take place on the same
+		 * day.
+		 */
+		private LocalDate previousDate = LocalDate.EPOCH;
+		/**
+		 * Recently decoded numbers, indexed by the hash of their unscaled value and scale. Prices, commissions
+		 * and strike prices repeat across many rows.
+		 */
+		private final BigDecimal[] decimals = new BigDecimal[DECIMAL_CACHE_SIZE];
+		private final long[] decimalUnscaledValues = new long[DECIMAL_CACHE_SIZE];
+		private final int[] decimalScales = new int[DECIMAL_CACHE_SIZE];
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param buffer the buffer to read from
+		 */
+		Decoder(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Reads a statement.
+		 *
+		 * @return the statement
+		 * @throws IOException if the buffer does not contain a valid snapshot
+		 */
+		IbActivityStatement readStatement() throws IOException
+		{
+			if (buffer.remaining() < Integer.BYTES || buffer.getInt(buffer.position()) != MAGIC)
+				throw new IOException("The data is not a statement snapshot");
+			buffer.position(buffer.position() + Integer.BYTES);
+			long version = readUnsigned();
+			if (version != VERSION)
+				throw new IOException("Unsupported snapshot version: " + version);
+
+			strings = new String[readCount()];
+			for (int i = 0; i < strings.length; ++i)
+			{
+				byte[] bytes = new byte[readCount()];
+				buffer.get(bytes);
+				strings[i] = new String(bytes, UTF_8);
+			}
+
+			Header header = new Header(readDate(), readDate(), readDateTime());
+			Account account = new Account(readString(), readString());
+
+			int count = readCount();
+			Map<String, CashActivity> currencyToCashActivity = LinkedHashMap.newLinkedHashMap(count);
+			for (int i = 0; i < count; ++i)
+			{
+				String key = readString();
+				currencyToCashActivity.put(key, new CashActivity(readString(), readDecimal(), readDecimal()));
+			}
+
+			count = readCount();
+			List<Trade> trades = new ArrayList<>(count);
+			previousEpochSecond = 0;
+			for (int i = 0; i < count; ++i)
+			{
+				trades.add(new Trade(readDateTime(), readString(), Math.toIntExact(readUnsigned()), readSigned(),
+					readSigned(), readSigned(), readSigned(), readString(), readCodes(), readString(),
+					readDecimal()));
+			}
+
+			count = readCount();
+			List<Forex> forex = new ArrayList<>(count);
+			previousEpochSecond = 0;
+			for (int i = 0; i < count; ++i)
+			{
+				forex.add(new Forex(readDateTime(), readString(), readString(), readSigned(), readSigned(),
+					readSigned(), readSigned()));
+			}
+
+			count = readCount();
+			List<Deposit> deposits = new ArrayList<>(count);
+			for (int i = 0; i < count; ++i)
+				deposits.add(new Deposit(readDate(), readString(), readDecimal(), readString()));
+
+			count = readCount();
+			List<Dividend> dividends = new ArrayList<>(count);
+			for (int i = 0; i < count; ++i)
+				dividends.add(new Dividend(readDate(), readString(), readDecimal(), readString()));
+
+			return new IbActivityStatement(header, account, Collections.unmodifiableMap(currencyToCashActivity),
+				Collections.unmodifiableList(trades), Collections.unmodifiableList(forex),
+				Collections.unmodifiableList(deposits), Collections.unmodifiableList(dividends));
+		}
+
+		/**
+		 * Reads an unsigned variable-length integer.
+		 *
+		 * @return the value
+		 * @throws IOException if the value is longer than 64 bits
+		 */
+		private long readUnsigned() throws IOException
+		{
+			long result = 0;
+			for (int shift = 0; shift < Long.SIZE; shift += 7)
+			{
+				byte b = buffer.get();
+				result |= (long) (b & 0x7F) << shift;
+				if (b >= 0)
+					return result;
+			}
+			throw new IOException("The snapshot is corrupt: variable-length integer is too long");
+		}
+
+		/**
+		 * Reads a signed variable-length integer.
+		 *
+		 * @return the value
+		 * @throws IOException if the value is longer than 64 bits
+		 */
+		private long readSigned() throws IOException
+		{
+			long value = readUnsigned();
+			return value >>> 1 ^ -(value & 1);
+		}
+
+		/**
+		 * Reads the number of elements in a collection.
+		 *
+		 * @return the number of elements
+		 * @throws IOException if the count exceeds the number of remaining bytes
+		 */
+		private int readCount() throws IOException
+		{
+			long count = readUnsigned();
+			// Every element occupies at least one byte, so this rejects corrupt counts before allocating memory
+			if (count > buffer.remaining())
+				throw new IOException("The snapshot is corrupt: count " + count + " exceeds the remaining bytes");
+			return (int) count;
+		}
+
+		/**
+		 * Reads a reference to the string table.
+		 *
+		 * @return the string, or {@code null} if the value is absent
+		 * @throws IOException if the reference is malformed
+		 */
+		private String readString() throws IOException
+		{
+			long index = readUnsigned();
+			if (index == 0)
+				return null;
+			if (index > strings.length)
+				throw new IOException("The snapshot is corrupt: string " + index + " does not exist");
+			return strings[(int) (index - 1)];
+		}
+
+		/**
+		 * Reads a number.
+		 *
+		 * @return the number, or {@code null} if the value is absent
+		 * @throws IOException if the number is malformed
+		 */
+		private BigDecimal readDecimal() throws IOException
+		{
+			long tag = readUnsigned();
+			if (tag == 0)
+				return null;
+			--tag;
+			long zigzagScale = tag >>> 1;
+			int scale = Math.toIntExact(zigzagScale >>> 1 ^ -(zigzagScale & 1));
+			if ((tag & 1) == 0)
+			{
+				long unscaled = readSigned();
+				int slot = (int) ((unscaled * 31 + scale) * 0x9E3779B97F4A7C15L >>> Long.SIZE -
+					Integer.numberOfTrailingZeros(DECIMAL_CACHE_SIZE));
+				BigDecimal value = decimals[slot];
+				if (value == null || decimalUnscaledValues[slot] != unscaled || decimalScales[slot] != scale)
+				{
+					value = BigDecimal.valueOf(unscaled, scale);
+					decimals[slot] = value;
+					decimalUnscaledValues[slot] = unscaled;
+					decimalScales[slot] = scale;
+				}
+				return value;
+			}
+			byte[] magnitude = new byte[readCount()];
+			buffer.get(magnitude);
+			return new BigDecimal(new BigInteger(magnitude), scale);
+		}
+
+		/**
+		 * Reads a date.
+		 *
+		 * @return the date
+		 * @throws IOException if the date is malformed
+		 */
+		private LocalDate readDate() throws IOException
+		{
+			return LocalDate.ofEpochDay(readSigned());
+		}
+
+		/**
+		 * Reads a date and time that is relative to the previous one.
+		 *
+		 * @return the date and time
+		 * @throws IOException if the date and time is malformed
+		 */
+		private LocalDateTime readDateTime() throws IOException
+		{
+			previousEpochSecond += readSigned();
+			long nanos = readUnsigned();
+			if (nanos >= NANOS_PER_SECOND)
+				throw new IOException("The snapshot is corrupt: nanoseconds out of range: " + nanos);
+			long epochDay = Math.floorDiv(previousEpochSecond, SECONDS_PER_DAY);
+			if (epochDay != previousDate.toEpochDay())
+				previousDate = LocalDate.ofEpochDay(epochDay);
+			long secondOfDay = Math.floorMod(previousEpochSecond, SECONDS_PER_DAY);
+			return LocalDateTime.of(previousDate, LocalTime.ofNanoOfDay(secondOfDay * NANOS_PER_SECOND + nanos));
+		}
+
+		/**
+		 * Reads the codes of a trade.
+		 *
+		 * @return the codes
+		 * @throws IOException if the codes are malformed
+		 */
+		private CodeSet readCodes() throws IOException
+		{
+			long mask = readUnsigned();
+			if (mask >>> CODES.length != 0)
+				throw new IOException("The snapshot is corrupt: unknown codes " + Long.toBinaryString(mask));
+			return CodeSet.of((int) mask);
+		}
+	}
+
+	private IbStatementSnapshot()
+	{
+	}
+}
@@ -0,0 +1,92 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Account;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.CashActivity;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Deposit;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Dividend;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Forex;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Header;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.nio.file.Path;
+
+/**
+ * Receives the parts of an activity statement as they are parsed.
+ * <p>
+ * Unlike {@link IbActivityStatement#load(Path)}, which returns the entire statement at once,
+ * {@link IbActivityStatement#parse(Path, IbStatementVisitor)} does not retain the parts that it sends to the
+ * visitor, so statements of any size can be processed in a constant amount of memory.
+ * <p>
+ * Parts are sent in the order that they appear in the statement, with the exception of the cash activities,
+ * which are sent once the entire statement has been parsed. All methods are invoked on the thread that
+ * parses the statement, and do nothing by default. An exception that is thrown by a method stops the
+ * statement from being parsed and is propagated to the caller.
+ */
+public interface IbStatementVisitor
+{
+	/**
+	 * Invoked when the statement's header has been parsed.
+	 *
+	 * @param header information about the statement
+	 */
+	default void onHeader(Header header)
+	{
+	}
+
+	/**
+	 * Invoked when the account's information has been parsed.
+	 *
+	 * @param account information about the account
+	 */
+	default void onAccount(Account account)
+	{
+	}
+
+	/**
+	 * Invoked once for each currency held, after the rest of the statement has been parsed.
+	 *
+	 * @param cashActivity the cash activity of the currency
+	 */
+	default void onCashActivity(CashActivity cashActivity)
+	{
+	}
+
+	/**
+	 * Invoked when a trade has been parsed.
+	 * <p>
+	 * Trades that reverse the direction of a position are split into a trade that closes the position and
+	 * a trade that opens a new one, as in {@link IbActivityStatement#trades()}.
+	 *
+	 * @param trade the trade
+	 */
+	default void onTrade(Trade trade)
+	{
+	}
+
+	/**
+	 * Invoked when a foreign currency exchange has been parsed.
+	 *
+	 * @param forex the exchange
+	 */
+	default void onForex(Forex forex)
+	{
+	}
+
+	/**
+	 * Invoked when a deposit or withdrawal has been parsed.
+	 *
+	 * @param deposit the deposit or withdrawal
+	 */
+	default void onDeposit(Deposit deposit)
+	{
+	}
+
+	/**
+	 * Invoked when a dividend payment or withheld tax has been parsed.
+	 *
+	 * @param dividend the dividend or withheld tax
+	 */
+	default void onDividend(Dividend dividend)
+	{
+	}
+}
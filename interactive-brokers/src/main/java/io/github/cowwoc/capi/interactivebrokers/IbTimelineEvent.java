@@ -0,0 +1,153 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Account;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Deposit;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Dividend;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Forex;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * An event of a timeline that spans multiple accounts.
+ *
+ * @see IbActivityStatements#timeline(List)
+ */
+public sealed interface IbTimelineEvent
+{
+	/**
+	 * Returns the account that the event belongs to.
+	 *
+	 * @return the {@link Account#number() account number}
+	 */
+	String accountNumber();
+
+	/**
+	 * Returns the time that the event is ordered by.
+	 *
+	 * @return the time of the event
+	 */
+	LocalDateTime dateTime();
+
+	/**
+	 * A trade.
+	 *
+	 * @param accountNumber the account that the trade belongs to
+	 * @param trade         the trade
+	 */
+	record TradeEvent(String accountNumber, Trade trade) implements IbTimelineEvent
+	{
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param accountNumber the account that the trade belongs to
+		 * @param trade         the trade
+		 * @throws NullPointerException if any of the arguments are null
+		 */
+		public TradeEvent
+		{
+			requireThat(accountNumber, "accountNumber").isNotNull();
+			requireThat(trade, "trade").isNotNull();
+		}
+
+		@Override
+		public LocalDateTime dateTime()
+		{
+			return trade.dateTime();
+		}
+	}
+
+	/**
+	 * A foreign currency exchange.
+	 *
+	 * @param accountNumber the account that the exchange belongs to
+	 * @param forex         the exchange
+	 */
+	record ForexEvent(String accountNumber, Forex forex) implements IbTimelineEvent
+	{
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param accountNumber the account that the exchange belongs to
+		 * @param forex         the exchange
+		 * @throws NullPointerException if any of the arguments are null
+		 */
+		public ForexEvent
+		{
+			requireThat(accountNumber, "accountNumber").isNotNull();
+			requireThat(forex, "forex").isNotNull();
+		}
+
+		@Override
+		public LocalDateTime dateTime()
+		{
+			return forex.dateTime();
+		}
+	}
+
+	/**
+	 * A deposit or withdrawal.
+	 * <p>
+	 * Transfers are settled at the end of the business day, so they are ordered after the trades of the same
+	 * day.
+	 *
+	 * @param accountNumber the account that the transfer belongs to
+	 * @param deposit       the transfer
+	 */
+	record DepositEvent(String accountNumber, Deposit deposit) implements IbTimelineEvent
+	{
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param accountNumber the account that the transfer belongs to
+		 * @param deposit       the transfer
+		 * @throws NullPointerException if any of the arguments are null
+		 */
+		public DepositEvent
+		{
+			requireThat(accountNumber, "accountNumber").isNotNull();
+			requireThat(deposit, "deposit").isNotNull();
+		}
+
+		@Override
+		public LocalDateTime dateTime()
+		{
+			return deposit.date().atTime(LocalTime.MAX);
+		}
+	}
+
+	/**
+	 * A dividend payment or withheld tax.
+	 * <p>
+	 * Transfers are settled at the end of the business day, so they are ordered after the trades of the same
+	 * day.
+	 *
+	 * @param accountNumber the account that the transfer belongs to
+	 * @param dividend      the transfer
+	 */
+	record DividendEvent(String accountNumber, Dividend dividend) implements IbTimelineEvent
+	{
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param accountNumber the account that the transfer belongs to
+		 * @param dividend      the transfer
+		 * @throws NullPointerException if any of the arguments are null
+		 */
+		public DividendEvent
+		{
+			requireThat(accountNumber, "accountNumber").isNotNull();
+			requireThat(dividend, "dividend").isNotNull();
+		}
+
+		@Override
+		public LocalDateTime dateTime()
+		{
+			return dividend.date().atTime(LocalTime.MAX);
+		}
+	}
+}
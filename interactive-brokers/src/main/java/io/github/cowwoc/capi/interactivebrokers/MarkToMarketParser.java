@@ -0,0 +1,83 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.MarkToMarket;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses the {@code Mark-to-Market Performance Summary} section, comparing the portfolio between the
+ * beginning and end of the statement's period.
+ */
+final class MarkToMarketParser implements SectionParser
+{
+	private final SymbolDictionary symbols;
+	private final Map<String, MarkToMarket> symbolToMarkToMarket = new HashMap<>();
+	private int sections;
+	private int headerIndex;
+	private int assetCategoryIndex;
+	private int symbolIndex;
+	private int priorQuantityIndex;
+	private int currentQuantityIndex;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param symbols the symbols of the statement
+	 * @throws NullPointerException if {@code symbols} is null
+	 */
+	MarkToMarketParser(SymbolDictionary symbols)
+	{
+		requireThat(symbols, "symbols").isNotNull();
+		this.symbols = symbols;
+	}
+
+	@Override
+	public void startSection(List<String> columns) throws IOException
+	{
+		++sections;
+		headerIndex = Columns.indexOf(columns, "Header");
+		assetCategoryIndex = Columns.indexOf(columns, "Asset Category");
+		symbolIndex = Columns.indexOf(columns, "Symbol");
+		priorQuantityIndex = Columns.indexOf(columns, "Prior Quantity");
+		currentQuantityIndex = Columns.indexOf(columns, "Current Quantity");
+	}
+
+	@Override
+	public void parseRow(List<String> row)
+	{
+		requireThat(Columns.get(row, headerIndex), "Header").isEqualTo("Data");
+
+		String assetCategory = Columns.get(row, assetCategoryIndex);
+		boolean skip = switch (assetCategory)
+		{
+			case "Stocks", "Equity and Index Options" -> false;
+			case "Total", "Forex", "Total (All Assets)", "Broker Interest Paid and Received" -> true;
+			default -> throw new AssertionError("Unsupported asset category: " + row);
+		};
+		if (skip)
+			return;
+		String rawSymbol = Columns.get(row, symbolIndex);
+		ParsedSymbol symbol = symbols.parse(rawSymbol);
+		long startQuantity = FixedPoint.parse(Columns.get(row, priorQuantityIndex));
+		long endQuantity = FixedPoint.parse(Columns.get(row, currentQuantityIndex));
+		symbolToMarkToMarket.put(symbol.value(), new MarkToMarket(startQuantity, endQuantity));
+	}
+
+	/**
+	 * Returns the mark-to-market values.
+	 *
+	 * @return a map from the symbol of each asset to its {@code MarkToMarket} value
+	 * @throws IllegalArgumentException if the statement does not contain exactly one
+	 *                                  {@code Mark-to-Market Performance Summary} section
+	 */
+	public Map<String, MarkToMarket> getSymbolToMarkToMarket()
+	{
+		requireThat(sections, "sections").isEqualTo(1);
+		return symbolToMarkToMarket;
+	}
+}
@@ -0,0 +1,66 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.math.BigDecimal;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.that;
+
+/**
+ * A parsed representation of an asset's symbol.
+ *
+ * @param value           the value of the symbol
+ * @param underlyingAsset (optional) the symbol of the underlying asset if this asset is an option;
+ *                        otherwise, undefined.
+ * @param strikePrice     (optional) the strike price if this asset is an option; otherwise, undefined.
+ */
+record ParsedSymbol(String value, String underlyingAsset, BigDecimal strikePrice)
+{
+	/**
+	 * Parses the String representation of an asset symbol in the format used by the Activity statement.
+	 *
+	 * @param symbol the String representation
+	 * @return the parsed symbol
+	 */
+	static ParsedSymbol fromStatement(String symbol)
+	{
+		// e.g. SQQQ 17JUN22 42.0 P
+		String[] tokens = symbol.split(" ");
+		if (tokens.length == 1)
+			return new ParsedSymbol(tokens[0], "", BigDecimal.ZERO);
+		assert that(tokens, "tokens").length().isEqualTo(4).elseThrow();
+		String underlyingAsset = tokens[0];
+		String date = tokens[1];
+		BigDecimal strikePrice = FixedPoint.toBigDecimal(FixedPoint.parse(tokens[2]));
+		String type = switch (tokens[3])
+		{
+			case "C" -> "CALL";
+			case "P" -> "PUT";
+			default -> throw new AssertionError("Unsupported option type: " + tokens[3]);
+		};
+		// e.g. PUT SQQQ 17JUN22@42.0
+		String value = type + " " + underlyingAsset + " " + date + "@" + strikePrice.toPlainString();
+		return new ParsedSymbol(value, underlyingAsset, strikePrice);
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param value           the value of the symbol
+	 * @param underlyingAsset (optional) the symbol of the underlying asset if this asset is an option;
+	 *                        otherwise, undefined.
+	 * @param strikePrice     (optional) the strike price if this asset is an option; otherwise, undefined.
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if:
+	 *                                  <ul>
+	 *                                  <li>any of the arguments contain leading or trailing whitespace.</li>
+	 *                                  <li>any of the mandatory arguments are empty.</li>
+	 *                                  <li>{@code strikePrice} is negative.</li>
+	 *                                  </ul>
+	 */
+	ParsedSymbol
+	{
+		requireThat(value, "value").isStripped().isNotEmpty();
+		requireThat(underlyingAsset, "underlyingAsset").isStripped();
+		requireThat(strikePrice, "strikePrice").isNotNegative();
+	}
+}
@@ -0,0 +1,305 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Tracks open positions across consecutive activity statements.
+ * <p>
+ * The asset IDs of {@link IbActivityStatement#trades()} are only unique within a single statement. The ledger
+ * assigns each position an ID that remains the same across all statements that it spans, so trades from
+ * different periods can be grouped by position.
+ * <p>
+ * Statements must be {@link #append(IbActivityStatement) appended} in chronological order. Appending a
+ * statement only processes its own trades, and the ledger can be {@link #PositionLedger(LocalDate, int, List)
+ * resumed} from the state of a previous run, so statements that have already been processed never need to
+ * be replayed.
+ * <p>
+ * A ledger that is created after the account has started trading must be resumed with the positions that
+ * were open at the start of its first statement; otherwise, the trades that close those positions are
+ * mistaken for trades that open new ones.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class PositionLedger
+{
+	private final Map<String, OpenPosition> symbolToPosition = new HashMap<>();
+	/**
+	 * The last day of the last statement that was appended, or {@code null} if no statement was appended.
+	 */
+	private LocalDate endDate;
+	/**
+	 * The highest asset ID that has been assigned.
+	 */
+	private int lastAssetId;
+
+	/**
+	 * Creates a ledger without any open positions.
+	 */
+	public PositionLedger()
+	{
+	}
+
+	/**
+	 * Resumes a ledger from a previous state.
+	 *
+	 * @param endDate       the last day of the last statement that was appended, or {@code null} if no
+	 *                      statement was appended
+	 * @param lastAssetId   the highest asset ID that has been assigned
+	 * @param openPositions the positions that are open at the end of {@code endDate}
+	 * @throws NullPointerException     if {@code openPositions} or any of its elements are null
+	 * @throws IllegalArgumentException if:
+	 *                                  <ul>
+	 *                                  <li>{@code lastAssetId} is negative.</li>
+	 *                                  <li>{@code openPositions} contains multiple positions with the same
+	 *                                  symbol or asset ID.</li>
+	 *                                  <li>the asset ID of a position is greater than
+	 *                                  {@code lastAssetId}.</li>
+	 *                                  </ul>
+	 */
+	public PositionLedger(LocalDate endDate, int lastAssetId, List<Position> openPositions)
+	{
+		requireThat(lastAssetId, "lastAssetId").isNotNegative();
+		requireThat(openPositions, "openPositions").isNotNull();
+		Set<Integer> assetIds = new HashSet<>();
+		for (Position position : openPositions)
+		{
+			requireThat(position, "position").isNotNull();
+			requireThat(position.assetId(), "position.assetId()").
+				isLessThanOrEqualTo(lastAssetId, "lastAssetId");
+			if (!assetIds.add(position.assetId()))
+				throw new IllegalArgumentException("Multiple positions have the same asset ID: " + position);
+			OpenPosition previous = symbolToPosition.put(position.symbol(),
+				new OpenPosition(position.assetId(), position.quantityAsFixedPoint()));
+			if (previous != null)
+				throw new IllegalArgumentException("Multiple positions have the same symbol: " + position);
+		}
+		this.endDate = endDate;
+		this.lastAssetId = lastAssetId;
+	}
+
+	/**
+	 * Appends a statement to the ledger.
+	 *
+	 * @param statement the statement that follows the last statement that was appended
+	 * @return the statement's trades, with asset IDs that are stable across statements
+	 * @throws NullPointerException     if {@code statement} is null
+	 * @throws IllegalArgumentException if:
+	 *                                  <ul>
+	 *                                  <li>the statement does not start after the last statement that was
+	 *                                  appended.</li>
+	 *                                  <li>a trade continues a position that the ledger has already closed,
+	 *                                  which indicates that the positions of the ledger do not match the
+	 *                                  ones that the statement started with. In that case, the ledger is
+	 *                                  left unchanged.</li>
+	 *                                  </ul>
+	 * @throws ArithmeticException      if a quantity cannot be represented as a {@code FixedPoint} value
+	 */
+	public List<Trade> append(IbActivityStatement statement)
+	{
+		requireThat(statement, "statement").isNotNull();
+		LocalDate startDate = statement.header().startDate();
+		if (endDate != null)
+			requireThat(startDate, "startDate").isGreaterThan(endDate, "endDate");
+
+		// Apply the trades to a copy of the open positions so that the ledger is left unchanged on failure
+		Map<String, OpenPosition> newSymbolToPosition = new HashMap<>(symbolToPosition.size());
+		for (Entry<String, OpenPosition> entry : symbolToPosition.entrySet())
+			newSymbolToPosition.put(entry.getKey(), entry.getValue().copy());
+		int newLastAssetId = lastAssetId;
+
+		// The statement's trades are already split at the points where positions close, so each of the
+		// statement's asset IDs refers to a single position. An ID that the statement assigns to a symbol with
+		// an open position continues that position; otherwise, it opens a new one.
+		Map<Integer, OpenPosition> statementIdToPosition = new HashMap<>();
+		List<Trade> trades = statement.trades();
+		List<Trade> result = new ArrayList<>(trades.size());
+		for (Trade trade : trades)
+		{
+			OpenPosition position = statementIdToPosition.get(trade.assetId());
+			if (position == null)
+			{
+				position = newSymbolToPosition.get(trade.symbol());
+				if (position == null)
+				{
+					++newLastAssetId;
+					position = new OpenPosition(newLastAssetId, 0);
+					newSymbolToPosition.put(trade.symbol(), position);
+				}
+				statementIdToPosition.put(trade.assetId(), position);
+			}
+			else if (position.quantity == 0)
+			{
+				throw new IllegalArgumentException("The trade continues a position that the ledger already " +
+					"closed. The ledger's open positions do not match the statement's.\n" +
+					"trade: " + trade);
+			}
+			position.quantity = Math.addExact(position.quantity, trade.quantityAsFixedPoint());
+			if (position.quantity == 0)
+				newSymbolToPosition.remove(trade.symbol());
+			result.add(new Trade(trade.dateTime(), trade.symbol(), position.assetId, trade.quantityAsFixedPoint(),
+				trade.priceAsFixedPoint(), trade.proceedsAsFixedPoint(), trade.commissionAsFixedPoint(),
+				trade.currency(), trade.codes(), trade.underlyingAsset(), trade.strikePrice()));
+		}
+
+		symbolToPosition.clear();
+		symbolToPosition.putAll(newSymbolToPosition);
+		lastAssetId = newLastAssetId;
+		endDate = statement.header().endDate();
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Returns the last day of the last statement that was appended.
+	 *
+	 * @return {@code null} if no statement was appended
+	 */
+	public LocalDate endDate()
+	{
+		return endDate;
+	}
+
+	/**
+	 * Returns the highest asset ID that has been assigned.
+	 *
+	 * @return zero if no asset ID has been assigned
+	 */
+	public int lastAssetId()
+	{
+		return lastAssetId;
+	}
+
+	/**
+	 * Returns the positions that are open at the end of {@link #endDate()}.
+	 *
+	 * @return the open positions, sorted by their asset ID
+	 */
+	public List<Position> openPositions()
+	{
+		List<Position> positions = new ArrayList<>(symbolToPosition.size());
+		for (Entry<String, OpenPosition> entry : symbolToPosition.entrySet())
+		{
+			OpenPosition position = entry.getValue();
+			positions.add(new Position(entry.getKey(), position.assetId,
+				FixedPoint.toBigDecimal(position.quantity)));
+		}
+		positions.sort(Comparator.comparingInt(Position::assetId));
+		return positions;
+	}
+
+	/**
+	 * Returns the open position of a symbol.
+	 *
+	 * @param symbol the symbol of an asset
+	 * @return {@code null} if the ledger does not have an open position for the symbol
+	 * @throws NullPointerException if {@code symbol} is null
+	 */
+	public Position getPosition(String symbol)
+	{
+		requireThat(symbol, "symbol").isNotNull();
+		OpenPosition position = symbolToPosition.get(symbol);
+		if (position == null)
+			return null;
+		return new Position(symbol, position.assetId, FixedPoint.toBigDecimal(position.quantity));
+	}
+
+	@Override
+	public String toString()
+	{
+		return "PositionLedger[endDate=" + endDate + ", lastAssetId=" + lastAssetId + ", openPositions=" +
+			symbolToPosition.size() + "]";
+	}
+
+	/**
+	 * An open position.
+	 *
+	 * @param symbol   the symbol of the asset
+	 * @param assetId  the ID of the position, which is stable across statements
+	 * @param quantity the number of units held; negative for short positions
+	 */
+	public record Position(String symbol, int assetId, BigDecimal quantity)
+	{
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param symbol   the symbol of the asset
+		 * @param assetId  the ID of the position, which is stable across statements
+		 * @param quantity the number of units held; negative for short positions
+		 * @throws NullPointerException     if any of the arguments are null
+		 * @throws IllegalArgumentException if:
+		 *                                  <ul>
+		 *                                  <li>{@code symbol} contains leading or trailing whitespace, or is
+		 *                                  empty.</li>
+		 *                                  <li>{@code assetId} is not positive.</li>
+		 *                                  <li>{@code quantity} is zero.</li>
+		 *                                  </ul>
+		 */
+		public Position
+		{
+			requireThat(symbol, "symbol").isStripped().isNotEmpty();
+			requireThat(assetId, "assetId").isPositive();
+			requireThat(quantity, "quantity").isNotNull();
+			if (quantity.signum() == 0)
+				throw new IllegalArgumentException("quantity may not be zero");
+		}
+
+		/**
+		 * Returns the number of units held as a fixed-point value.
+		 *
+		 * @return the number of units held
+		 * @throws ArithmeticException if the value is out of range
+		 * @see FixedPoint
+		 */
+		public long quantityAsFixedPoint()
+		{
+			return FixedPoint.valueOf(quantity);
+		}
+	}
+
+	/**
+	 * The mutable state of an open position.
+	 */
+	private static final class OpenPosition
+	{
+		private final int assetId;
+		/**
+		 * The number of units held, as a fixed-point value.
+		 */
+		private long quantity;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param assetId  the ID of the position
+		 * @param quantity the number of units held, as a fixed-point value
+		 */
+		OpenPosition(int assetId, long quantity)
+		{
+			this.assetId = assetId;
+			this.quantity = quantity;
+		}
+
+		/**
+		 * Returns a copy of this position.
+		 *
+		 * @return a new instance
+		 */
+		public OpenPosition copy()
+		{
+			return new OpenPosition(assetId, quantity);
+		}
+	}
+}
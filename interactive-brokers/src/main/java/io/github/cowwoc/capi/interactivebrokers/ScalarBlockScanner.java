@@ -0,0 +1,80 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.spi.BlockScanner;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+/**
+ * Scans blocks eight bytes at a time, by treating each {@code long} as a vector of bytes.
+ * <p>
+ * This class is thread-safe.
+ */
+final class ScalarBlockScanner implements BlockScanner
+{
+	/**
+	 * Reads the bytes of a {@code long} so that the byte at the lowest offset occupies the lowest bits.
+	 */
+	private static final ValueLayout.OfLong WORD = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(
+		ByteOrder.LITTLE_ENDIAN);
+	private static final long ONES = 0x0101_0101_0101_0101L;
+	private static final long LOW_BITS = 0x7F7F_7F7F_7F7F_7F7FL;
+	private static final long COMMAS = ',' * ONES;
+	private static final long QUOTES = '"' * ONES;
+	private static final long CARRIAGE_RETURNS = '\r' * ONES;
+	private static final long LINE_FEEDS = '\n' * ONES;
+
+	@Override
+	public long scan(MemorySegment csv, long offset)
+	{
+		long mask = 0;
+		for (int i = 0; i < BLOCK_SIZE; i += Long.BYTES)
+		{
+			long word = csv.get(WORD, offset + i);
+			long matches = zeroBytes(word ^ COMMAS) | zeroBytes(word ^ QUOTES) |
+				zeroBytes(word ^ CARRIAGE_RETURNS) | zeroBytes(word ^ LINE_FEEDS);
+			// Gather the high bit of each byte into the top eight bits
+			mask |= ((matches >>> 7) * 0x0102_0408_1020_4080L >>> 56) << i;
+		}
+		return mask;
+	}
+
+	/**
+	 * Locates the zero bytes of a word.
+	 *
+	 * @param word a word
+	 * @return a word in which the high bit of each byte is set if the corresponding byte of {@code word} is
+	 *     zero, and all other bits are clear
+	 */
+	private static long zeroBytes(long word)
+	{
+		// Adding 0x7F to the low seven bits carries into the high bit unless they are all zero
+		return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+	}
+
+	/**
+	 * Scans a block one byte at a time.
+	 * <p>
+	 * Unlike {@link #scan(MemorySegment, long)}, the data may end within the block.
+	 *
+	 * @param csv    the CSV data
+	 * @param offset the offset of the first byte of the block
+	 * @param end    the offset after the last byte of the data. The bytes after it are ignored.
+	 * @return a bitmask in which bit {@code n} is set if the byte at {@code offset + n} delimits a value
+	 */
+	static long scanBytes(MemorySegment csv, long offset, long end)
+	{
+		long mask = 0;
+		int length = (int) Math.min(end - offset, BLOCK_SIZE);
+		for (int i = 0; i < length; ++i)
+		{
+			byte b = csv.get(JAVA_BYTE, offset + i);
+			if (b == ',' || b == '"' || b == '\r' || b == '\n')
+				mask |= 1L << i;
+		}
+		return mask;
+	}
+}
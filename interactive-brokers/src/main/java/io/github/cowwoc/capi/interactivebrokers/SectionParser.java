@@ -0,0 +1,41 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Parses one type of section in an activity statement, one row at a time.
+ * <p>
+ * A statement may contain multiple occurrences of the same section. For each occurrence, the parser receives
+ * {@link #startSection(List)}, followed by its rows, followed by {@link #endSection()}.
+ */
+interface SectionParser
+{
+	/**
+	 * Invoked at the start of a section.
+	 * <p>
+	 * Implementations look up the positions of the columns that they read using {@link Columns#indexOf}.
+	 *
+	 * @param columns the header row, which starts with the name of the section
+	 * @throws IOException if the section is malformed
+	 */
+	default void startSection(List<String> columns) throws IOException
+	{
+	}
+
+	/**
+	 * Parses a row of the current section.
+	 *
+	 * @param row the values of the row, in the same order as the columns of the header row. The list is
+	 *            reused for subsequent rows, so implementations must not retain it.
+	 * @throws IOException if the row is malformed
+	 */
+	void parseRow(List<String> row) throws IOException;
+
+	/**
+	 * Invoked at the end of a section.
+	 */
+	default void endSection()
+	{
+	}
+}
@@ -0,0 +1,418 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Deposit;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Dividend;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Forex;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Header;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Removes the events that statements with overlapping periods have in common.
+ * <p>
+ * The statements of each account are visited in order of their start date, longest period first, while
+ * tracking the days that the statements visited so far cover. An event of a statement is only compared to
+ * earlier statements if its day is covered by them, in which case it is a duplicate as long as the earlier
+ * statements contain more copies of the event than the statement has presented so far. This keeps events that
+ * legitimately repeat within a single statement, such as two identical fills in the same second.
+ * <p>
+ * Events are compared using 64-bit fingerprints of their fields, which are counted in an open-addressing hash
+ * table of primitive values. The table only holds the events of the current run of overlapping statements,
+ * and each event is hashed once, so statements are combined in a single pass over their events.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class StatementCombiner
+{
+	/**
+	 * Distinguishes the fingerprints of events of different types that happen to have the same fields.
+	 */
+	private static final long TRADE_SALT = 0x5452_4144_4500_0000L;
+	private static final long FOREX_SALT = 0x464F_5245_5800_0000L;
+	private static final long DEPOSIT_SALT = 0x4445_504F_5349_5400L;
+	private static final long DIVIDEND_SALT = 0x4449_5649_4445_4E44L;
+	/**
+	 * The number of copies of each event that the statements of the current run contain.
+	 */
+	private final FingerprintCounter accepted = new FingerprintCounter();
+	/**
+	 * The number of copies of each event that the current statement has presented within the overlapping
+	 * days.
+	 */
+	private final FingerprintCounter presented = new FingerprintCounter();
+	/**
+	 * The fingerprints of the events of the current statement that were kept.
+	 */
+	private long[] kept = new long[1024];
+	private int keptSize;
+	/**
+	 * The last day that the statements of the current run cover, or {@code null} if no statements have been
+	 * visited.
+	 */
+	private LocalDate coveredUntil;
+	/**
+	 * The last day that the current statement shares with the statements before it, or {@code null} if it does
+	 * not overlap them.
+	 */
+	private LocalDate overlapUntil;
+
+	/**
+	 * Removes the events that statements have in common.
+	 *
+	 * @param statements the statements
+	 * @return the statements without duplicate events, in the same order as {@code statements}
+	 */
+	static List<IbActivityStatement> combine(List<IbActivityStatement> statements)
+	{
+		Map<String, List<Integer>> accountToIndexes = new HashMap<>();
+		for (int i = 0; i < statements.size(); ++i)
+		{
+			accountToIndexes.computeIfAbsent(statements.get(i).account().number(), _ -> new ArrayList<>()).
+				add(i);
+		}
+		IbActivityStatement[] result = new IbActivityStatement[statements.size()];
+		for (List<Integer> indexes : accountToIndexes.values())
+		{
+			// Visiting the longest statement first leaves the shorter ones with the duplicates
+			Comparator<Integer> byPeriod = Comparator.comparing(index -> statements.get(index).header().
+				startDate());
+			indexes.sort(byPeriod.thenComparing(index -> statements.get(index).header().endDate(),
+				Comparator.reverseOrder()));
+			StatementCombiner combiner = new StatementCombiner();
+			for (int index : indexes)
+				result[index] = combiner.deduplicate(statements.get(index));
+		}
+		return List.of(result);
+	}
+
+	/**
+	 * Removes the events of a statement that the statements before it contain.
+	 *
+	 * @param statement a statement whose start date is not before that of the previous statements
+	 * @return the statement without the duplicate events
+	 */
+	private IbActivityStatement deduplicate(IbActivityStatement statement)
+	{
+		Header header = statement.header();
+		if (coveredUntil == null || header.startDate().isAfter(coveredUntil))
+		{
+			// The statement starts a new run. Statements are sorted by their start date, so none of the
+			// following statements can overlap the previous run.
+			accepted.clear();
+			overlapUntil = null;
+			coveredUntil = header.endDate();
+		}
+		else
+		{
+			if (header.endDate().isBefore(coveredUntil))
+				overlapUntil = header.endDate();
+			else
+			{
+				overlapUntil = coveredUntil;
+				coveredUntil = header.endDate();
+			}
+		}
+		presented.clear();
+		keptSize = 0;
+
+		List<Trade> trades = deduplicate(statement.trades(), trade -> trade.dateTime().toLocalDate(),
+			StatementCombiner::fingerprint);
+		List<Forex> forex = deduplicate(statement.forex(), exchange -> exchange.dateTime().toLocalDate(),
+			StatementCombiner::fingerprint);
+		List<Deposit> deposits = deduplicate(statement.deposits(), Deposit::date,
+			StatementCombiner::fingerprint);
+		List<Dividend> dividends = deduplicate(statement.dividends(), Dividend::date,
+			StatementCombiner::fingerprint);
+
+		// The events of a statement are only compared to those of the statements before it
+		for (int i = 0; i < keptSize; ++i)
+			accepted.increment(kept[i]);
+		if (trades == statement.trades() && forex == statement.forex() && deposits == statement.deposits() &&
+			dividends == statement.dividends())
+		{
+			return statement;
+		}
+		return new IbActivityStatement(header, statement.account(), statement.currencyToCashActivity(),
+			trades, forex, deposits, dividends);
+	}
+
+	/**
+	 * Removes the events of one type that the statements before the current one contain.
+	 *
+	 * @param <E>         the type of events
+	 * @param events      the events of the current statement
+	 * @param toDate      returns the day of an event
+	 * @param fingerprint returns the fingerprint of an event
+	 * @return {@code events} if it does not contain duplicates, or an unmodifiable list of the remaining events
+	 */
+	private <E> List<E> deduplicate(List<E> events, Function<E, LocalDate> toDate,
+		ToLongFunction<E> fingerprint)
+	{
+		List<E> result = null;
+		for (int i = 0; i < events.size(); ++i)
+		{
+			E event = events.get(i);
+			long value = fingerprint.applyAsLong(event);
+			boolean duplicate = overlapUntil != null && !toDate.apply(event).isAfter(overlapUntil) &&
+				presented.increment(value) <= accepted.get(value);
+			if (duplicate)
+			{
+				if (result == null)
+					result = new ArrayList<>(events.subList(0, i));
+				continue;
+			}
+			if (keptSize == kept.length)
+				kept = Arrays.copyOf(kept, keptSize * 2);
+			kept[keptSize] = value;
+			++keptSize;
+			if (result != null)
+				result.add(event);
+		}
+		if (result == null)
+			return events;
+		return List.copyOf(result);
+	}
+
+	/**
+	 * Returns the fingerprint of a trade.
+	 * <p>
+	 * The asset ID is excluded, since each statement numbers its positions independently.
+	 *
+	 * @param trade a trade
+	 * @return the fingerprint
+	 */
+	private static long fingerprint(Trade trade)
+	{
+		long hash = mix(TRADE_SALT, trade.dateTime());
+		hash = mix(hash, trade.symbol());
+		hash = mix(hash, trade.quantityAsFixedPoint());
+		hash = mix(hash, trade.priceAsFixedPoint());
+		hash = mix(hash, trade.proceedsAsFixedPoint());
+		hash = mix(hash, trade.commissionAsFixedPoint());
+		hash = mix(hash, trade.currency());
+		return finish(mix(hash, trade.codeMask()));
+	}
+
+	/**
+	 * Returns the fingerprint of a foreign currency exchange.
+	 *
+	 * @param forex an exchange
+	 * @return the fingerprint
+	 */
+	private static long fingerprint(Forex forex)
+	{
+		long hash = mix(FOREX_SALT, forex.dateTime());
+		hash = mix(hash, forex.sourceCurrency());
+		hash = mix(hash, forex.targetCurrency());
+		hash = mix(hash, forex.quantityAsFixedPoint());
+		hash = mix(hash, forex.priceAsFixedPoint());
+		hash = mix(hash, forex.proceedsAsFixedPoint());
+		return finish(mix(hash, forex.commissionAsFixedPoint()));
+	}
+
+	/**
+	 * Returns the fingerprint of a deposit or withdrawal.
+	 *
+	 * @param deposit a transfer
+	 * @return the fingerprint
+	 */
+	private static long fingerprint(Deposit deposit)
+	{
+		long hash = mix(DEPOSIT_SALT, deposit.date().toEpochDay());
+		hash = mix(hash, deposit.currency());
+		hash = mix(hash, FixedPoint.valueOf(deposit.quantity()));
+		return finish(mix(hash, deposit.description()));
+	}
+
+	/**
+	 * Returns the fingerprint of a dividend or withheld tax.
+	 *
+	 * @param dividend a transfer
+	 * @return the fingerprint
+	 */
+	private static long fingerprint(Dividend dividend)
+	{
+		long hash = mix(DIVIDEND_SALT, dividend.date().toEpochDay());
+		hash = mix(hash, dividend.currency());
+		hash = mix(hash, FixedPoint.valueOf(dividend.quantity()));
+		return finish(mix(hash, dividend.description()));
+	}
+
+	/**
+	 * Adds a field to a fingerprint.
+	 *
+	 * @param hash  the fingerprint of the previous fields
+	 * @param value the value of the field
+	 * @return the updated fingerprint
+	 */
+	private static long mix(long hash, long value)
+	{
+		return Long.rotateLeft((hash ^ value) * 0x9E37_79B9_7F4A_7C15L, 31);
+	}
+
+	/**
+	 * Adds a time to a fingerprint.
+	 *
+	 * @param hash  the fingerprint of the previous fields
+	 * @param value the time
+	 * @return the updated fingerprint
+	 */
+	private static long mix(long hash, LocalDateTime value)
+	{
+		hash = mix(hash, value.toLocalDate().toEpochDay());
+		return mix(hash, value.toLocalTime().toNanoOfDay());
+	}
+
+	/**
+	 * Adds a string to a fingerprint.
+	 * <p>
+	 * {@link String#hashCode()} is only 32 bits wide, so the characters are hashed using the 64-bit FNV-1a
+	 * function instead.
+	 *
+	 * @param hash  the fingerprint of the previous fields
+	 * @param value the string
+	 * @return the updated fingerprint
+	 */
+	private static long mix(long hash, String value)
+	{
+		long result = 0xCBF2_9CE4_8422_2325L;
+		for (int i = 0; i < value.length(); ++i)
+		{
+			result ^= value.charAt(i);
+			result *= 0x0000_0100_0000_01B3L;
+		}
+		return mix(hash, result);
+	}
+
+	/**
+	 * Spreads the bits of a fingerprint (the finalizer of MurmurHash3).
+	 *
+	 * @param hash the fingerprint of all the fields
+	 * @return the final fingerprint
+	 */
+	private static long finish(long hash)
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xFF51_AFD7_ED55_8CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CE_B9FE_1A85_EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	/**
+	 * Counts the occurrences of fingerprints.
+	 */
+	private static final class FingerprintCounter
+	{
+		/**
+		 * Marks the empty slots of {@link #keys}. The fingerprint {@code 0} is stored as {@link #ZERO_KEY},
+		 * which makes the two fingerprints collide; this is as unlikely as any other collision.
+		 */
+		private static final long EMPTY = 0;
+		private static final long ZERO_KEY = 0x8000_0000_0000_0000L;
+		private long[] keys = new long[1024];
+		private int[] counts = new int[1024];
+		private int size;
+
+		/**
+		 * Returns the number of occurrences of a fingerprint.
+		 *
+		 * @param fingerprint a fingerprint
+		 * @return the number of occurrences
+		 */
+		public int get(long fingerprint)
+		{
+			long key = toKey(fingerprint);
+			int mask = keys.length - 1;
+			for (int slot = (int) key & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask)
+			{
+				if (keys[slot] == key)
+					return counts[slot];
+			}
+			return 0;
+		}
+
+		/**
+		 * Adds an occurrence of a fingerprint.
+		 *
+		 * @param fingerprint a fingerprint
+		 * @return the updated number of occurrences
+		 */
+		public int increment(long fingerprint)
+		{
+			// Keep the load factor at or below 50%
+			if (size * 2 >= keys.length)
+				grow();
+			long key = toKey(fingerprint);
+			int mask = keys.length - 1;
+			int slot = (int) key & mask;
+			while (keys[slot] != EMPTY)
+			{
+				if (keys[slot] == key)
+					return ++counts[slot];
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			counts[slot] = 1;
+			++size;
+			return 1;
+		}
+
+		/**
+		 * Removes all fingerprints.
+		 */
+		public void clear()
+		{
+			if (size == 0)
+				return;
+			Arrays.fill(keys, EMPTY);
+			size = 0;
+		}
+
+		/**
+		 * Doubles the capacity of the table.
+		 */
+		private void grow()
+		{
+			long[] oldKeys = keys;
+			int[] oldCounts = counts;
+			keys = new long[oldKeys.length * 2];
+			counts = new int[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; ++i)
+			{
+				long key = oldKeys[i];
+				if (key == EMPTY)
+					continue;
+				int slot = (int) key & mask;
+				while (keys[slot] != EMPTY)
+					slot = (slot + 1) & mask;
+				keys[slot] = key;
+				counts[slot] = oldCounts[i];
+			}
+		}
+
+		/**
+		 * Maps a fingerprint to the value that represents it in {@link #keys}.
+		 *
+		 * @param fingerprint a fingerprint
+		 * @return a non-empty key
+		 */
+		private static long toKey(long fingerprint)
+		{
+			if (fingerprint == EMPTY)
+				return ZERO_KEY;
+			return fingerprint;
+		}
+	}
+}
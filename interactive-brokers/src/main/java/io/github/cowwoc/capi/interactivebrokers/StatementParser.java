@@ -0,0 +1,576 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Account;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.CashActivity;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Code;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Deposit;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Dividend;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Forex;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Header;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+import io.github.cowwoc.capi.interactivebrokers.IbLoadFilter.Part;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses an activity statement, one row at a time.
+ * <p>
+ * Rows are grouped into sections and passed on to the {@code SectionParser} of each section as soon as they
+ * are read. A section begins with a {@code Header} row and continues until the next {@code Header} row or a
+ * row whose first column contains a different section name. Sections without any data rows are ignored.
+ * <p>
+ * If an {@code Executor} is provided, the offsets of each section's rows are buffered until the section ends.
+ * The executor then tokenizes the section again and parses it, so the rows are only decoded by the threads of
+ * the executor. Sections of the same type are parsed in the order that they appear, but sections of different
+ * types are parsed concurrently. Trades are parsed after the {@code Mark-to-Market Performance Summary}
+ * section that they depend on.
+ * <p>
+ * If an {@code IbStatementVisitor} is provided, the parts of the statement are sent to it as soon as they are
+ * parsed instead of being retained.
+ */
+final class StatementParser
+{
+	/**
+	 * Identifies the behavior of the parsers. It must be incremented whenever a change to the parsers alters
+	 * the statements that they return, in order to invalidate statements that were cached by an older version.
+	 */
+	static final int VERSION = 1;
+	private static final int INITIAL_CAPACITY = 1024;
+	private final HeaderParser header = new HeaderParser();
+	private final AccountParser account = new AccountParser();
+	private final CashReportParser cashReport;
+	private final CodesParser codes = new CodesParser();
+	private final SymbolDictionary symbols = new SymbolDictionary();
+	private final MarkToMarketParser markToMarket = new MarkToMarketParser(symbols);
+	private final TradesParser trades;
+	private final ForexParser forex;
+	private final DepositsParser deposits;
+	private final DividendsParser dividends;
+	private final List<Trade> parsedTrades = new ArrayList<>();
+	private final List<Forex> parsedForex = new ArrayList<>();
+	private final List<Deposit> parsedDeposits = new ArrayList<>();
+	private final List<Dividend> parsedDividends = new ArrayList<>();
+	/**
+	 * Selects the parts of the statement to parse.
+	 */
+	private final IbLoadFilter filter;
+	/**
+	 * The executor that parses sections, or {@code null} to parse them on the calling thread.
+	 */
+	private final Executor executor;
+	/**
+	 * The visitor that receives the parts of the statement, or {@code null} to retain them.
+	 */
+	private final IbStatementVisitor visitor;
+	/**
+	 * The last task of each parser, if sections are parsed by {@link #executor}.
+	 */
+	private final Map<SectionParser, CompletableFuture<Void>> parserToLastTask = new IdentityHashMap<>();
+	/**
+	 * The header row of the current section.
+	 */
+	private List<String> columns = List.of();
+	/**
+	 * The parser of the current section, or {@code null} if the section is ignored.
+	 */
+	private SectionParser parser;
+	/**
+	 * {@code true} if the current section contains at least one data row.
+	 */
+	private boolean sectionStarted;
+	/**
+	 * The CSV data that is being parsed.
+	 */
+	private MemorySegment csv;
+	/**
+	 * The offset of each data row of the current section, if sections are parsed by {@link #executor}.
+	 */
+	private long[] rowOffsets = new long[INITIAL_CAPACITY];
+	/**
+	 * The number of data rows in the current section.
+	 */
+	private int rowCount;
+	/**
+	 * The offset of the end of the current section.
+	 */
+	private long sectionEnd;
+
+	/**
+	 * Creates a parser that parses sections on the calling thread.
+	 */
+	StatementParser()
+	{
+		this(IbLoadFilter.all());
+	}
+
+	/**
+	 * Creates a parser that parses a subset of the statement on the calling thread.
+	 *
+	 * @param filter selects the parts of the statement to parse
+	 * @throws NullPointerException if {@code filter} is null
+	 */
+	StatementParser(IbLoadFilter filter)
+	{
+		requireThat(filter, "filter").isNotNull();
+		this.filter = filter;
+		this.executor = null;
+		this.visitor = null;
+		this.cashReport = new CashReportParser(filter);
+		this.trades = new TradesParser(markToMarket, symbols, parsedTrades::add, filter);
+		this.forex = new ForexParser(parsedForex::add, filter);
+		this.deposits = new DepositsParser(parsedDeposits::add, filter);
+		this.dividends = new DividendsParser(parsedDividends::add, filter);
+	}
+
+	/**
+	 * Creates a parser that parses sections concurrently.
+	 *
+	 * @param executor the executor that parses sections
+	 * @throws NullPointerException if {@code executor} is null
+	 */
+	StatementParser(Executor executor)
+	{
+		requireThat(executor, "executor").isNotNull();
+		this.filter = IbLoadFilter.all();
+		this.executor = executor;
+		this.visitor = null;
+		this.cashReport = new CashReportParser(filter);
+		this.trades = new TradesParser(markToMarket, symbols, parsedTrades::add, filter);
+		this.forex = new ForexParser(parsedForex::add, filter);
+		this.deposits = new DepositsParser(parsedDeposits::add, filter);
+		this.dividends = new DividendsParser(parsedDividends::add, filter);
+	}
+
+	/**
+	 * Creates a parser that sends the parts of the statement to a visitor as soon as they are parsed.
+	 * <p>
+	 * Sections are parsed on the calling thread. The getters of this class return empty values.
+	 *
+	 * @param visitor           the visitor that receives the parts of the statement
+	 * @param stringCodeToEnums a map from the String representation of each code to its corresponding enum
+	 *                          values, which is used to resolve the codes of the trades before the
+	 *                          {@code Codes} section is parsed
+	 * @throws NullPointerException if any of the arguments are null
+	 * @throws IOException          if a trade references an unknown code
+	 */
+	StatementParser(IbStatementVisitor visitor, Map<String, Set<Code>> stringCodeToEnums) throws IOException
+	{
+		requireThat(visitor, "visitor").isNotNull();
+		this.filter = IbLoadFilter.all();
+		this.executor = null;
+		this.visitor = visitor;
+		this.cashReport = new CashReportParser(filter);
+		this.trades = new TradesParser(markToMarket, symbols, visitor::onTrade, filter);
+		this.forex = new ForexParser(visitor::onForex, filter);
+		this.deposits = new DepositsParser(visitor::onDeposit, filter);
+		this.dividends = new DividendsParser(visitor::onDividend, filter);
+		trades.resolveCodes(stringCodeToEnums);
+	}
+
+	/**
+	 * Parses UTF-8 encoded CSV data.
+	 * <p>
+	 * If sections are parsed by an executor, they may still be parsing {@code csv} when this method returns,
+	 * so it must remain accessible to the threads of the executor until {@link #finish()} returns. If this
+	 * method throws an exception, it first waits for the sections that were already submitted.
+	 *
+	 * @param csv the CSV data
+	 * @throws IllegalArgumentException if the data is not a valid activity statement
+	 * @throws IOException              if the data is malformed
+	 */
+	public void parseRows(MemorySegment csv) throws IOException
+	{
+		this.csv = csv;
+		CsvTokenizer tokens = new CsvTokenizer(csv);
+		try
+		{
+			while (tokens.nextRow())
+				parseRow(tokens.row(), tokens.rowStart(), tokens.rowEnd());
+		}
+		catch (IOException | RuntimeException | Error e)
+		{
+			// The sections that were already submitted read csv, which the caller may release once this
+			// method returns
+			for (CompletableFuture<Void> task : parserToLastTask.values())
+				task.exceptionally(_ -> null).join();
+			parserToLastTask.clear();
+			throw e;
+		}
+	}
+
+	/**
+	 * Parses the next row of the statement.
+	 * <p>
+	 * This method may only be used if sections are parsed on the calling thread.
+	 *
+	 * @param row the values of the row. The list may be reused by the caller once this method returns.
+	 * @throws IOException if the row is malformed
+	 */
+	public void parseRow(List<String> row) throws IOException
+	{
+		assert executor == null : "Rows must be passed to parseRows() so that their offsets are known";
+		parseRow(row, 0, 0);
+	}
+
+	/**
+	 * Parses the next row of the statement.
+	 *
+	 * @param row   the values of the row. The list may be reused by the caller once this method returns.
+	 * @param start the offset of the row within {@link #csv}
+	 * @param end   the offset of the end of the row within {@link #csv}
+	 * @throws IOException if the row is malformed
+	 */
+	private void parseRow(List<String> row, long start, long end) throws IOException
+	{
+		if (row.isEmpty())
+			return;
+		if (columns.isEmpty() || !row.getFirst().equals(columns.getFirst()) ||
+			(row.size() > 1 && row.get(1).equals("Header")))
+		{
+			// Start of a new section
+			endSection();
+			columns = List.copyOf(row);
+			return;
+		}
+		if (!sectionStarted)
+		{
+			sectionStarted = true;
+			parser = getParser(row);
+			if (parser == null)
+				return;
+			if (executor == null)
+				parser.startSection(columns);
+			else
+				rowCount = 0;
+		}
+		if (parser == null)
+			return;
+		if (executor == null)
+		{
+			parser.parseRow(row);
+			return;
+		}
+		if (rowCount == rowOffsets.length)
+			rowOffsets = Arrays.copyOf(rowOffsets, rowCount * 2);
+		rowOffsets[rowCount] = start;
+		++rowCount;
+		sectionEnd = end;
+	}
+
+	/**
+	 * Returns the parser of the current section.
+	 *
+	 * @param firstRow the first data row of the section
+	 * @return {@code null} if the section should be ignored
+	 */
+	private SectionParser getParser(List<String> firstRow)
+	{
+		SectionParser parser = switch (columns.getFirst())
+		{
+			case "Statement" -> header;
+			case "Account Information" -> account;
+			case "Cash Report" -> cashReport;
+			case "Codes" -> codes;
+			case "Mark-to-Market Performance Summary" -> markToMarket;
+			// Forex trades are listed in their own sections, alongside the other asset categories
+			case "Trades" ->
+			{
+				if (isForex(columns, firstRow))
+					yield forex;
+				yield trades;
+			}
+			case "Deposits & Withdrawals" -> deposits;
+			case "Dividends", "Withholding Tax" -> dividends;
+			default -> null;
+		};
+		if (isExcluded(parser))
+			return null;
+		return parser;
+	}
+
+	/**
+	 * Indicates if a parser's sections are excluded by {@link #filter}.
+	 *
+	 * @param parser the parser of a section
+	 * @return {@code true} if the section should be skipped
+	 */
+	private boolean isExcluded(SectionParser parser)
+	{
+		// The Mark-to-Market section is only used to track the positions of trades
+		if (parser == trades || parser == markToMarket)
+			return !filter.includes(Part.TRADES);
+		if (parser == cashReport)
+			return !filter.includes(Part.CASH_ACTIVITY);
+		if (parser == forex)
+			return !filter.includes(Part.FOREX);
+		if (parser == deposits)
+			return !filter.includes(Part.DEPOSITS);
+		if (parser == dividends)
+			return !filter.includes(Part.DIVIDENDS);
+		return false;
+	}
+
+	/**
+	 * Indicates if a {@code Trades} section contains foreign currency exchanges.
+	 *
+	 * @param columns  the header row of the section
+	 * @param firstRow the first data row of the section
+	 * @return {@code true} if the section contains foreign currency exchanges
+	 */
+	static boolean isForex(List<String> columns, List<String> firstRow)
+	{
+		int assetCategory = columns.indexOf("Asset Category");
+		return assetCategory != -1 && "Forex".equals(Columns.get(firstRow, assetCategory));
+	}
+
+	/**
+	 * Ends the current section.
+	 */
+	private void endSection()
+	{
+		if (parser != null)
+		{
+			if (executor == null)
+				parser.endSection();
+			else
+			{
+				// The offsets are relative to the start of the section, and end with the size of the section
+				long sectionStart = rowOffsets[0];
+				long[] offsets = new long[rowCount + 1];
+				for (int i = 0; i < rowCount; ++i)
+					offsets[i] = rowOffsets[i] - sectionStart;
+				offsets[rowCount] = sectionEnd - sectionStart;
+				submitSection(parser, columns, csv.asSlice(sectionStart, sectionEnd - sectionStart), offsets);
+			}
+			if (visitor != null)
+			{
+				if (parser == header)
+					visitor.onHeader(header.getHeader());
+				else if (parser == account)
+					visitor.onAccount(account.getAccount());
+			}
+		}
+		parser = null;
+		sectionStarted = false;
+	}
+
+	/**
+	 * Parses a section using {@link #executor}, once the previous sections that it depends on have been
+	 * parsed.
+	 *
+	 * @param parser     the parser of the section
+	 * @param columns    the header row of the section
+	 * @param rows       the UTF-8 encoded data rows of the section
+	 * @param rowOffsets the offset of each row within {@code rows}, followed by the size of {@code rows}
+	 */
+	private void submitSection(SectionParser parser, List<String> columns, MemorySegment rows,
+		long[] rowOffsets)
+	{
+		CompletableFuture<Void> dependencies = parserToLastTask.getOrDefault(parser,
+			CompletableFuture.completedFuture(null));
+		if (parser == trades)
+		{
+			CompletableFuture<Void> markToMarketTask = parserToLastTask.get(markToMarket);
+			if (markToMarketTask != null)
+				dependencies = CompletableFuture.allOf(dependencies, markToMarketTask);
+		}
+		CompletableFuture<Void> task = dependencies.thenRunAsync(() ->
+		{
+			try
+			{
+				if (parser == trades)
+				{
+					// Trades are the largest sections, so their rows are also decoded in parallel
+					trades.parseSection(columns, rows, rowOffsets, executor);
+					return;
+				}
+				parser.startSection(columns);
+				CsvTokenizer tokens = new CsvTokenizer(rows);
+				while (tokens.nextRow())
+					parser.parseRow(tokens.row());
+				parser.endSection();
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}, executor);
+		parserToLastTask.put(parser, task);
+	}
+
+	/**
+	 * Waits for all sections to get parsed.
+	 *
+	 * @throws IOException if a section is malformed
+	 */
+	private void awaitSections() throws IOException
+	{
+		try
+		{
+			CompletableFuture.allOf(parserToLastTask.values().toArray(CompletableFuture[]::new)).join();
+		}
+		catch (CompletionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException uioe)
+				throw uioe.getCause();
+			if (cause instanceof RuntimeException re)
+				throw re;
+			if (cause instanceof Error error)
+				throw error;
+			throw e;
+		}
+		finally
+		{
+			parserToLastTask.clear();
+		}
+	}
+
+	/**
+	 * Returns the statement, once all of its rows have been parsed.
+	 *
+	 * @return an unmodifiable statement
+	 * @throws IllegalArgumentException if the statement is missing a mandatory section or contains more than
+	 *                                  one instance of a section that must be unique
+	 * @throws IOException              if a section is malformed or a trade references an unknown code
+	 */
+	public IbActivityStatement getStatement() throws IOException
+	{
+		finish();
+		return new IbActivityStatement(getHeader(), getAccount(), getCashActivities(), getTrades(), getForex(),
+			getDeposits(), getDividends());
+	}
+
+	/**
+	 * Ends the last section and waits for all sections to get parsed. This method must be invoked before
+	 * retrieving the parts of the statement.
+	 * <p>
+	 * If the parts are sent to a visitor, this method also sends it the cash activities.
+	 *
+	 * @throws IllegalArgumentException if the parts are sent to a visitor and the statement is missing a
+	 *                                  mandatory section or contains more than one instance of a section
+	 *                                  that must be unique
+	 * @throws IOException              if a section is malformed
+	 */
+	public void finish() throws IOException
+	{
+		endSection();
+		columns = List.of();
+		awaitSections();
+		if (visitor == null)
+			return;
+		header.getHeader();
+		account.getAccount();
+		codes.getStringCodeToEnums();
+		trades.finish();
+		for (CashActivity cashActivity : cashReport.getCashActivities().values())
+			visitor.onCashActivity(cashActivity);
+	}
+
+	/**
+	 * Returns the transaction codes.
+	 *
+	 * @return a map from the string representation of each code to its corresponding enum values
+	 * @throws IllegalArgumentException if the statement does not contain exactly one {@code Codes} section
+	 */
+	public Map<String, Set<Code>> getStringCodeToEnums()
+	{
+		return codes.getStringCodeToEnums();
+	}
+
+	/**
+	 * Returns the statement's header.
+	 *
+	 * @return the header
+	 * @throws IllegalArgumentException if the statement does not contain exactly one {@code Statement} section
+	 */
+	public Header getHeader()
+	{
+		return header.getHeader();
+	}
+
+	/**
+	 * Returns the account's information.
+	 *
+	 * @return the account
+	 * @throws IllegalArgumentException if the statement does not contain exactly one
+	 *                                  {@code Account Information} section
+	 */
+	public Account getAccount()
+	{
+		return account.getAccount();
+	}
+
+	/**
+	 * Returns the cash activity of each currency.
+	 *
+	 * @return an unmodifiable map from a currency to its {@code CashActivity}
+	 */
+	public Map<String, CashActivity> getCashActivities()
+	{
+		// Statements may be shared between threads by IbStatementCache
+		return Collections.unmodifiableMap(cashReport.getCashActivities());
+	}
+
+	/**
+	 * Returns the trades.
+	 *
+	 * @return an unmodifiable list of trades, which is empty if the filter excludes them
+	 * @throws IllegalArgumentException if the statement does not contain exactly one {@code Codes} and
+	 *                                  {@code Mark-to-Market Performance Summary} section
+	 * @throws IOException              if a trade references an unknown code
+	 */
+	public List<Trade> getTrades() throws IOException
+	{
+		if (!filter.includes(Part.TRADES))
+			return List.of();
+		Map<String, Set<Code>> stringCodeToEnums = codes.getStringCodeToEnums();
+		trades.finish();
+		trades.resolveCodes(stringCodeToEnums);
+		return Collections.unmodifiableList(parsedTrades);
+	}
+
+	/**
+	 * Returns the foreign currency exchanges.
+	 *
+	 * @return an unmodifiable list of exchanges
+	 */
+	public List<Forex> getForex()
+	{
+		return Collections.unmodifiableList(parsedForex);
+	}
+
+	/**
+	 * Returns the deposits and withdrawals.
+	 *
+	 * @return an unmodifiable list of deposits
+	 */
+	public List<Deposit> getDeposits()
+	{
+		return Collections.unmodifiableList(parsedDeposits);
+	}
+
+	/**
+	 * Returns the dividends and withholding taxes.
+	 *
+	 * @return an unmodifiable list of dividends
+	 */
+	public List<Dividend> getDividends()
+	{
+		return Collections.unmodifiableList(parsedDividends);
+	}
+}
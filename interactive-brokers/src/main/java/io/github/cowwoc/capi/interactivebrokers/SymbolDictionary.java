@@ -0,0 +1,129 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Decodes each distinct asset symbol of a statement once.
+ * <p>
+ * A statement references a few hundred distinct symbols across thousands of rows. The dictionary assigns
+ * each distinct {@link ParsedSymbol#value() canonical symbol} an ID, in the order that the symbols are first
+ * encountered, and hands out the same {@code ParsedSymbol} instance every time the symbol is referenced.
+ * Consequently, all trades of the same contract share the same {@code String} instance, whose hash code is
+ * computed once. The IDs are exposed by {@link TradeTable#symbolId(int)}, whose symbol columns are looked up
+ * by ID.
+ * <p>
+ * This class is not thread-safe. It is shared by the parsers of a single statement, and the
+ * {@code Mark-to-Market Performance Summary} section is parsed before the trades that depend on it. Threads
+ * that decode trades concurrently parse their symbols independently, and the symbols are then
+ * {@link #add(String, ParsedSymbol) added} in the order that the trades appear.
+ */
+final class SymbolDictionary
+{
+	private final Map<String, Integer> rawSymbolToId = new HashMap<>();
+	private final Map<String, Integer> valueToId = new HashMap<>();
+	private final List<ParsedSymbol> symbols = new ArrayList<>();
+
+	/**
+	 * Returns the ID of a symbol, adding it to the dictionary if necessary.
+	 *
+	 * @param rawSymbol the symbol in the format used by the activity statement (e.g.
+	 *                  {@code SQQQ 17JUN22 42.0 P})
+	 * @return the ID of the symbol
+	 * @throws NullPointerException if {@code rawSymbol} is null
+	 */
+	public int idOf(String rawSymbol)
+	{
+		return idOf(rawSymbol, ParsedSymbol::fromStatement);
+	}
+
+	/**
+	 * Returns the ID of a symbol, adding it to the dictionary if necessary.
+	 *
+	 * @param rawSymbol the symbol in the format used by the activity statement (e.g.
+	 *                  {@code SQQQ 17JUN22 42.0 P})
+	 * @param parser    parses {@code rawSymbol} if it is not in the dictionary
+	 * @return the ID of the symbol
+	 * @throws NullPointerException if any of the arguments are null
+	 */
+	public int idOf(String rawSymbol, Function<String, ParsedSymbol> parser)
+	{
+		Integer id = rawSymbolToId.get(rawSymbol);
+		if (id != null)
+			return id;
+		return register(rawSymbol, parser.apply(rawSymbol));
+	}
+
+	/**
+	 * Adds a symbol that was parsed outside the dictionary, such as by another thread.
+	 *
+	 * @param rawSymbol the symbol in the format used by the activity statement (e.g.
+	 *                  {@code SQQQ 17JUN22 42.0 P})
+	 * @param symbol    the value returned by {@link ParsedSymbol#fromStatement(String)} for {@code rawSymbol}
+	 * @return the instance of the symbol that the dictionary hands out
+	 * @throws NullPointerException if any of the arguments are null
+	 */
+	public ParsedSymbol add(String rawSymbol, ParsedSymbol symbol)
+	{
+		return symbols.get(idOf(rawSymbol, _ -> symbol));
+	}
+
+	/**
+	 * Assigns an ID to a symbol that is not in the dictionary.
+	 *
+	 * @param rawSymbol the symbol in the format used by the activity statement
+	 * @param symbol    the parsed symbol
+	 * @return the ID of the symbol
+	 */
+	private int register(String rawSymbol, ParsedSymbol symbol)
+	{
+		// Different representations of the same contract (e.g. "42.0" and "42.00") share an ID
+		Integer id = valueToId.get(symbol.value());
+		if (id == null)
+		{
+			id = symbols.size();
+			symbols.add(symbol);
+			valueToId.put(symbol.value(), id);
+		}
+		rawSymbolToId.put(rawSymbol, id);
+		return id;
+	}
+
+	/**
+	 * Parses a symbol, adding it to the dictionary if necessary.
+	 *
+	 * @param rawSymbol the symbol in the format used by the activity statement (e.g.
+	 *                  {@code SQQQ 17JUN22 42.0 P})
+	 * @return the parsed symbol
+	 * @throws NullPointerException if {@code rawSymbol} is null
+	 */
+	public ParsedSymbol parse(String rawSymbol)
+	{
+		return symbols.get(idOf(rawSymbol));
+	}
+
+	/**
+	 * Returns the symbol with the specified ID.
+	 *
+	 * @param id the ID of the symbol
+	 * @return the parsed symbol
+	 * @throws IndexOutOfBoundsException if the dictionary does not contain {@code id}
+	 */
+	public ParsedSymbol get(int id)
+	{
+		return symbols.get(id);
+	}
+
+	/**
+	 * Returns the number of distinct symbols in the dictionary.
+	 *
+	 * @return the number of symbols
+	 */
+	public int size()
+	{
+		return symbols.size();
+	}
+}
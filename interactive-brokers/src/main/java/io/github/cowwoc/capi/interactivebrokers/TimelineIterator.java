@@ -0,0 +1,231 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Deposit;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Dividend;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Forex;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+import io.github.cowwoc.capi.interactivebrokers.IbTimelineEvent.DepositEvent;
+import io.github.cowwoc.capi.interactivebrokers.IbTimelineEvent.DividendEvent;
+import io.github.cowwoc.capi.interactivebrokers.IbTimelineEvent.ForexEvent;
+import io.github.cowwoc.capi.interactivebrokers.IbTimelineEvent.TradeEvent;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Merges the events of multiple statements into a single chronological sequence.
+ * <p>
+ * The trades, exchanges, deposits and dividends of each statement are split into runs: maximal sublists
+ * whose events are in chronological order. The trades of a statement are grouped by symbol, so they typically
+ * form one run per symbol. Runs are views of the statements' lists, so no events are copied or sorted.
+ * <p>
+ * Runs are merged using a binary heap that is keyed by the time of each run's next event, so retrieving an
+ * event costs {@code O(log k)} comparisons for {@code k} runs, and events are only wrapped once they are
+ * retrieved. Events that occur at the same time are returned in the order of their statements, and within a
+ * statement, in the order trades, exchanges, deposits, dividends, and then in the order of their lists.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class TimelineIterator implements Iterator<IbTimelineEvent>
+{
+	/**
+	 * A binary heap of the runs that have events left, ordered by the time of their next event.
+	 */
+	private final Run<?>[] heap;
+	/**
+	 * The number of runs in {@link #heap}.
+	 */
+	private int size;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param statements the statements to merge
+	 */
+	TimelineIterator(List<IbActivityStatement> statements)
+	{
+		List<Run<?>> runs = new ArrayList<>();
+		for (IbActivityStatement statement : statements)
+		{
+			String account = statement.account().number();
+			addRuns(runs, statement.trades(), Comparator.comparing(Trade::dateTime),
+				trade -> new TradeEvent(account, trade));
+			addRuns(runs, statement.forex(), Comparator.comparing(Forex::dateTime),
+				forex -> new ForexEvent(account, forex));
+			addRuns(runs, statement.deposits(), Comparator.comparing(Deposit::date),
+				deposit -> new DepositEvent(account, deposit));
+			addRuns(runs, statement.dividends(), Comparator.comparing(Dividend::date),
+				dividend -> new DividendEvent(account, dividend));
+		}
+		this.heap = runs.toArray(new Run<?>[0]);
+		this.size = heap.length;
+		for (int i = size / 2 - 1; i >= 0; --i)
+			siftDown(i);
+	}
+
+	/**
+	 * Splits a list of events into chronological runs.
+	 *
+	 * @param <E>        the type of events
+	 * @param runs       the runs to add to
+	 * @param events     the events
+	 * @param comparator orders the events chronologically
+	 * @param toEvent    wraps the events
+	 */
+	private static <E> void addRuns(List<Run<?>> runs, List<E> events, Comparator<E> comparator,
+		Function<E, IbTimelineEvent> toEvent)
+	{
+		if (events.isEmpty())
+			return;
+		int start = 0;
+		for (int i = 1; i < events.size(); ++i)
+		{
+			// A new run begins wherever time goes backwards
+			if (comparator.compare(events.get(i - 1), events.get(i)) > 0)
+			{
+				addRun(runs, events.subList(start, i), toEvent);
+				start = i;
+			}
+		}
+		addRun(runs, events.subList(start, events.size()), toEvent);
+	}
+
+	/**
+	 * Adds a run.
+	 *
+	 * @param <E>     the type of events
+	 * @param runs    the runs to add to
+	 * @param events  the events of the run, in chronological order
+	 * @param toEvent wraps the events
+	 */
+	private static <E> void addRun(List<Run<?>> runs, List<E> events, Function<E, IbTimelineEvent> toEvent)
+	{
+		Run<E> run = new Run<>(events, toEvent, runs.size());
+		run.advance();
+		runs.add(run);
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return size > 0;
+	}
+
+	@Override
+	public IbTimelineEvent next()
+	{
+		if (size == 0)
+			throw new NoSuchElementException();
+		Run<?> first = heap[0];
+		IbTimelineEvent event = first.next;
+		if (!first.advance())
+		{
+			--size;
+			heap[0] = heap[size];
+			heap[size] = null;
+		}
+		if (size > 0)
+			siftDown(0);
+		return event;
+	}
+
+	/**
+	 * Moves a run down the heap until it is no later than its children.
+	 *
+	 * @param index the index of the run
+	 */
+	private void siftDown(int index)
+	{
+		Run<?> run = heap[index];
+		while (true)
+		{
+			int child = 2 * index + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && isBefore(heap[child + 1], heap[child]))
+				++child;
+			if (!isBefore(heap[child], run))
+				break;
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = run;
+	}
+
+	/**
+	 * Indicates if the next event of a run should be returned before that of another run.
+	 *
+	 * @param first  a run
+	 * @param second another run
+	 * @return {@code true} if {@code first} should be returned first
+	 */
+	private static boolean isBefore(Run<?> first, Run<?> second)
+	{
+		int result = first.nextTime.compareTo(second.nextTime);
+		if (result != 0)
+			return result < 0;
+		return first.order < second.order;
+	}
+
+	/**
+	 * A chronological sequence of events of the same type and statement.
+	 *
+	 * @param <E> the type of events
+	 */
+	private static final class Run<E>
+	{
+		private final List<E> events;
+		private final Function<E, IbTimelineEvent> toEvent;
+		/**
+		 * The position of the run among all runs, which breaks ties between events that occurred at the same
+		 * time.
+		 */
+		private final int order;
+		/**
+		 * The index of the event after {@link #next}.
+		 */
+		private int position;
+		/**
+		 * The next event of the run.
+		 */
+		private IbTimelineEvent next;
+		/**
+		 * The time of {@link #next}.
+		 */
+		private LocalDateTime nextTime;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param events  the events, sorted chronologically
+		 * @param toEvent wraps the events
+		 * @param order   the position of the run among all runs
+		 */
+		Run(List<E> events, Function<E, IbTimelineEvent> toEvent, int order)
+		{
+			this.events = events;
+			this.toEvent = toEvent;
+			this.order = order;
+		}
+
+		/**
+		 * Moves to the next event.
+		 *
+		 * @return {@code false} if there are no more events
+		 */
+		boolean advance()
+		{
+			if (position == events.size())
+				return false;
+			next = toEvent.apply(events.get(position));
+			nextTime = next.dateTime();
+			++position;
+			return true;
+		}
+	}
+}
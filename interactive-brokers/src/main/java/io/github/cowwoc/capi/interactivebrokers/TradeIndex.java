@@ -0,0 +1,447 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Code;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Indexes the trades of one or more statements for fast lookups.
+ * <p>
+ * Trades are sorted by their date and time, and are additionally indexed by symbol, underlying asset, currency
+ * and code. Each index lists its trades in chronological order, so every lookup can be narrowed down to a
+ * range of dates using a binary search. Lookups return unmodifiable views of the index instead of copying the
+ * trades.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public final class TradeIndex
+{
+	/**
+	 * The trades, sorted by their date and time.
+	 */
+	private final Trade[] trades;
+	/**
+	 * Maps each symbol to the indexes of its trades in {@link #trades}.
+	 */
+	private final Map<String, int[]> symbolToTrades;
+	/**
+	 * Maps each underlying asset to the indexes of its option trades in {@link #trades}.
+	 */
+	private final Map<String, int[]> underlyingAssetToTrades;
+	/**
+	 * Maps each currency to the indexes of its trades in {@link #trades}.
+	 */
+	private final Map<String, int[]> currencyToTrades;
+	/**
+	 * Maps each code to the indexes of its trades in {@link #trades}.
+	 */
+	private final Map<Code, int[]> codeToTrades;
+
+	/**
+	 * Creates a new index.
+	 *
+	 * @param trades the trades, sorted by their date and time
+	 */
+	private TradeIndex(Trade[] trades)
+	{
+		this.trades = trades;
+		this.symbolToTrades = index(trades, Trade::symbol);
+		// The underlying asset is only defined for options
+		this.underlyingAssetToTrades = index(trades, trade ->
+		{
+			if (trade.underlyingAsset().isEmpty())
+				return null;
+			return trade.underlyingAsset();
+		});
+		this.currencyToTrades = index(trades, Trade::currency);
+
+		Map<Code, int[]> codeToCount = new EnumMap<>(Code.class);
+		for (Trade trade : trades)
+		{
+			for (Code code : trade.codes())
+				++codeToCount.computeIfAbsent(code, _ -> new int[1])[0];
+		}
+		this.codeToTrades = new EnumMap<>(Code.class);
+		for (Entry<Code, int[]> entry : codeToCount.entrySet())
+			codeToTrades.put(entry.getKey(), new int[entry.getValue()[0]]);
+		for (int i = 0; i < trades.length; ++i)
+		{
+			for (Code code : trades[i].codes())
+			{
+				int[] count = codeToCount.get(code);
+				int[] postings = codeToTrades.get(code);
+				postings[postings.length - count[0]] = i;
+				--count[0];
+			}
+		}
+	}
+
+	/**
+	 * Indexes the trades of statements.
+	 *
+	 * @param statements the statements
+	 * @return the index
+	 * @throws NullPointerException if {@code statements} or any of its elements are null
+	 */
+	public static TradeIndex of(List<IbActivityStatement> statements)
+	{
+		requireThat(statements, "statements").isNotNull().doesNotContain(null);
+		int size = 0;
+		for (IbActivityStatement statement : statements)
+			size += statement.trades().size();
+		Trade[] trades = new Trade[size];
+		int offset = 0;
+		for (IbActivityStatement statement : statements)
+		{
+			for (Trade trade : statement.trades())
+			{
+				trades[offset] = trade;
+				++offset;
+			}
+		}
+		// The sort is stable, so trades that occurred at the same time retain the order of the statements
+		Arrays.sort(trades, Comparator.comparing(Trade::dateTime));
+		return new TradeIndex(trades);
+	}
+
+	/**
+	 * Maps each key to the indexes of the trades that have it.
+	 *
+	 * @param trades      the trades, sorted by their date and time
+	 * @param keyFunction returns the key of a trade, or {@code null} if the trade should not be indexed
+	 * @return a map from each key to the indexes of its trades, in ascending order
+	 */
+	private static Map<String, int[]> index(Trade[] trades, Function<Trade, String> keyFunction)
+	{
+		// Count the trades of each key before allocating the arrays, to avoid growing them
+		String[] keys = new String[trades.length];
+		Map<String, int[]> keyToCount = new HashMap<>();
+		for (int i = 0; i < trades.length; ++i)
+		{
+			String key = keyFunction.apply(trades[i]);
+			keys[i] = key;
+			if (key != null)
+				++keyToCount.computeIfAbsent(key, _ -> new int[1])[0];
+		}
+		Map<String, int[]> keyToTrades = HashMap.newHashMap(keyToCount.size());
+		for (Entry<String, int[]> entry : keyToCount.entrySet())
+			keyToTrades.put(entry.getKey(), new int[entry.getValue()[0]]);
+		for (int i = 0; i < trades.length; ++i)
+		{
+			String key = keys[i];
+			if (key == null)
+				continue;
+			int[] count = keyToCount.get(key);
+			int[] postings = keyToTrades.get(key);
+			postings[postings.length - count[0]] = i;
+			--count[0];
+		}
+		return keyToTrades;
+	}
+
+	/**
+	 * Returns the number of trades.
+	 *
+	 * @return the number of trades
+	 */
+	public int size()
+	{
+		return trades.length;
+	}
+
+	/**
+	 * Returns all trades.
+	 *
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 */
+	public List<Trade> trades()
+	{
+		return new TradeView(trades, null, 0, trades.length);
+	}
+
+	/**
+	 * Returns the trades that occurred in a period of time.
+	 *
+	 * @param from the start of the period (inclusive)
+	 * @param to   the end of the period (exclusive)
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if {@code to} is before {@code from}
+	 */
+	public List<Trade> between(LocalDateTime from, LocalDateTime to)
+	{
+		requireThat(from, "from").isNotNull();
+		requireThat(to, "to").isNotNull().isGreaterThanOrEqualTo(from, "from");
+		int start = lowerBound(null, trades.length, from);
+		int end = lowerBound(null, trades.length, to);
+		if (start == end)
+			return List.of();
+		return new TradeView(trades, null, start, end);
+	}
+
+	/**
+	 * Returns the trades of a symbol.
+	 *
+	 * @param symbol the symbol of an asset
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException if {@code symbol} is null
+	 */
+	public List<Trade> bySymbol(String symbol)
+	{
+		requireThat(symbol, "symbol").isNotNull();
+		return all(symbolToTrades.get(symbol));
+	}
+
+	/**
+	 * Returns the trades of a symbol that occurred in a period of time.
+	 *
+	 * @param symbol the symbol of an asset
+	 * @param from   the start of the period (inclusive)
+	 * @param to     the end of the period (exclusive)
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if {@code to} is before {@code from}
+	 */
+	public List<Trade> bySymbol(String symbol, LocalDateTime from, LocalDateTime to)
+	{
+		requireThat(symbol, "symbol").isNotNull();
+		requireThat(from, "from").isNotNull();
+		requireThat(to, "to").isNotNull().isGreaterThanOrEqualTo(from, "from");
+		return range(symbolToTrades.get(symbol), from, to);
+	}
+
+	/**
+	 * Returns the trades of options on an underlying asset.
+	 * <p>
+	 * Trades of the underlying asset itself are not included; they can be looked up using
+	 * {@link #bySymbol(String)}.
+	 *
+	 * @param underlyingAsset the symbol of the underlying asset
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException if {@code underlyingAsset} is null
+	 */
+	public List<Trade> byUnderlyingAsset(String underlyingAsset)
+	{
+		requireThat(underlyingAsset, "underlyingAsset").isNotNull();
+		return all(underlyingAssetToTrades.get(underlyingAsset));
+	}
+
+	/**
+	 * Returns the trades of options on an underlying asset that occurred in a period of time.
+	 * <p>
+	 * Trades of the underlying asset itself are not included; they can be looked up using
+	 * {@link #bySymbol(String, LocalDateTime, LocalDateTime)}.
+	 *
+	 * @param underlyingAsset the symbol of the underlying asset
+	 * @param from            the start of the period (inclusive)
+	 * @param to              the end of the period (exclusive)
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if {@code to} is before {@code from}
+	 */
+	public List<Trade> byUnderlyingAsset(String underlyingAsset, LocalDateTime from, LocalDateTime to)
+	{
+		requireThat(underlyingAsset, "underlyingAsset").isNotNull();
+		requireThat(from, "from").isNotNull();
+		requireThat(to, "to").isNotNull().isGreaterThanOrEqualTo(from, "from");
+		return range(underlyingAssetToTrades.get(underlyingAsset), from, to);
+	}
+
+	/**
+	 * Returns the trades that were settled in a currency.
+	 *
+	 * @param currency a currency
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException if {@code currency} is null
+	 */
+	public List<Trade> byCurrency(String currency)
+	{
+		requireThat(currency, "currency").isNotNull();
+		return all(currencyToTrades.get(currency));
+	}
+
+	/**
+	 * Returns the trades that were settled in a currency and occurred in a period of time.
+	 *
+	 * @param currency a currency
+	 * @param from     the start of the period (inclusive)
+	 * @param to       the end of the period (exclusive)
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if {@code to} is before {@code from}
+	 */
+	public List<Trade> byCurrency(String currency, LocalDateTime from, LocalDateTime to)
+	{
+		requireThat(currency, "currency").isNotNull();
+		requireThat(from, "from").isNotNull();
+		requireThat(to, "to").isNotNull().isGreaterThanOrEqualTo(from, "from");
+		return range(currencyToTrades.get(currency), from, to);
+	}
+
+	/**
+	 * Returns the trades that are annotated with a code.
+	 *
+	 * @param code a code
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException if {@code code} is null
+	 */
+	public List<Trade> byCode(Code code)
+	{
+		requireThat(code, "code").isNotNull();
+		return all(codeToTrades.get(code));
+	}
+
+	/**
+	 * Returns the trades that are annotated with a code and occurred in a period of time.
+	 *
+	 * @param code a code
+	 * @param from the start of the period (inclusive)
+	 * @param to   the end of the period (exclusive)
+	 * @return an unmodifiable view of the trades, sorted by their date and time
+	 * @throws NullPointerException     if any of the arguments are null
+	 * @throws IllegalArgumentException if {@code to} is before {@code from}
+	 */
+	public List<Trade> byCode(Code code, LocalDateTime from, LocalDateTime to)
+	{
+		requireThat(code, "code").isNotNull();
+		requireThat(from, "from").isNotNull();
+		requireThat(to, "to").isNotNull().isGreaterThanOrEqualTo(from, "from");
+		return range(codeToTrades.get(code), from, to);
+	}
+
+	/**
+	 * Returns all the trades of an index.
+	 *
+	 * @param postings the indexes of the trades in {@link #trades}, or {@code null} if there are none
+	 * @return an unmodifiable view of the trades
+	 */
+	private List<Trade> all(int[] postings)
+	{
+		if (postings == null)
+			return List.of();
+		return new TradeView(trades, postings, 0, postings.length);
+	}
+
+	/**
+	 * Returns the trades of an index that occurred in a period of time.
+	 *
+	 * @param postings the indexes of the trades in {@link #trades}, or {@code null} if there are none
+	 * @param from     the start of the period (inclusive)
+	 * @param to       the end of the period (exclusive)
+	 * @return an unmodifiable view of the trades
+	 */
+	private List<Trade> range(int[] postings, LocalDateTime from, LocalDateTime to)
+	{
+		if (postings == null)
+			return List.of();
+		int start = lowerBound(postings, postings.length, from);
+		int end = lowerBound(postings, postings.length, to);
+		if (start == end)
+			return List.of();
+		return new TradeView(trades, postings, start, end);
+	}
+
+	/**
+	 * Returns the position of the first trade that occurred at or after a point in time.
+	 *
+	 * @param postings the indexes of the trades in {@link #trades}, or {@code null} to search all trades
+	 * @param size     the number of trades to search
+	 * @param dateTime a point in time
+	 * @return {@code size} if all trades occurred before {@code dateTime}
+	 */
+	private int lowerBound(int[] postings, int size, LocalDateTime dateTime)
+	{
+		int low = 0;
+		int high = size;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			int index;
+			if (postings == null)
+				index = middle;
+			else
+				index = postings[middle];
+			if (trades[index].dateTime().isBefore(dateTime))
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TradeIndex[trades=" + trades.length + ", symbols=" + symbolToTrades.size() +
+			", underlyingAssets=" + underlyingAssetToTrades.size() + ", currencies=" + currencyToTrades.size() +
+			"]";
+	}
+
+	/**
+	 * An unmodifiable view of a range of trades.
+	 */
+	private static final class TradeView extends AbstractList<Trade> implements RandomAccess
+	{
+		private final Trade[] trades;
+		/**
+		 * The indexes of the trades in {@link #trades}, or {@code null} if the view is a range of
+		 * {@link #trades}.
+		 */
+		private final int[] postings;
+		private final int from;
+		private final int to;
+
+		/**
+		 * Creates a new view.
+		 *
+		 * @param trades   all trades
+		 * @param postings the indexes of the trades in {@code trades}, or {@code null} if the view is a range
+		 *                 of {@code trades}
+		 * @param from     the index of the first element (inclusive)
+		 * @param to       the index of the last element (exclusive)
+		 */
+		TradeView(Trade[] trades, int[] postings, int from, int to)
+		{
+			this.trades = trades;
+			this.postings = postings;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Trade get(int index)
+		{
+			Objects.checkIndex(index, size());
+			if (postings == null)
+				return trades[from + index];
+			return trades[postings[from + index]];
+		}
+
+		@Override
+		public int size()
+		{
+			return to - from;
+		}
+
+		@Override
+		public List<Trade> subList(int fromIndex, int toIndex)
+		{
+			Objects.checkFromToIndex(fromIndex, toIndex, size());
+			return new TradeView(trades, postings, from + fromIndex, from + toIndex);
+		}
+	}
+}
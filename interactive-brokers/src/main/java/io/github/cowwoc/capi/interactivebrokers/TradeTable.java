@@ -0,0 +1,497 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Code;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * An immutable, column-oriented table of trades.
+ * <p>
+ * Each attribute of a trade is stored in a primitive array, indexed by the trade's row. Numbers are stored
+ * as {@link FixedPoint} values, symbols and currencies are replaced by indexes into a dictionary, and codes
+ * are stored as a bitmask. This takes a fraction of the memory of the equivalent {@code List<Trade>} and
+ * allows aggregations to scan a single array sequentially. For example:
+ * {@snippet :
+ * long totalCommission = 0;
+ * for (int row = 0; row < table.size(); ++row)
+ *   totalCommission += table.commission(row);
+ * }
+ * <p>
+ * Tables are created from a list of trades using {@link #of(List)}, or by appending trades to a
+ * {@link Builder}.
+ */
+public final class TradeTable
+{
+	private final long[] dateTimes;
+	private final int[] assetIds;
+	private final int[] symbolIds;
+	private final int[] currencyIds;
+	private final long[] quantities;
+	private final long[] prices;
+	private final long[] proceeds;
+	private final long[] commissions;
+	private final int[] codeMasks;
+	private final List<String> symbols;
+	private final String[] underlyingAssets;
+	private final long[] strikePrices;
+	// The original strike prices, so that trade() preserves their scale
+	private final BigDecimal[] decimalStrikePrices;
+	private final List<String> currencies;
+
+	/**
+	 * Creates a table from a list of trades.
+	 *
+	 * @param trades the trades
+	 * @return the table, with one row per trade in the same order as {@code trades}
+	 * @throws NullPointerException if {@code trades} or any of its elements are null
+	 * @throws ArithmeticException  if a number cannot be represented as a {@code FixedPoint} value
+	 * @see Builder
+	 */
+	public static TradeTable of(List<Trade> trades)
+	{
+		requireThat(trades, "trades").isNotNull().doesNotContain(null);
+		Builder builder = new Builder(trades.size());
+		for (Trade trade : trades)
+			builder.add(trade);
+		return builder.build();
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param builder the trades
+	 * @throws ArithmeticException if a number cannot be represented as a {@code FixedPoint} value
+	 */
+	private TradeTable(Builder builder)
+	{
+		int size = builder.size;
+		this.dateTimes = Arrays.copyOf(builder.dateTimes, size);
+		this.assetIds = Arrays.copyOf(builder.assetIds, size);
+		this.symbolIds = Arrays.copyOf(builder.symbolIds, size);
+		this.currencyIds = Arrays.copyOf(builder.currencyIds, size);
+		this.quantities = Arrays.copyOf(builder.quantities, size);
+		this.prices = Arrays.copyOf(builder.prices, size);
+		this.proceeds = Arrays.copyOf(builder.proceeds, size);
+		this.commissions = Arrays.copyOf(builder.commissions, size);
+		this.codeMasks = Arrays.copyOf(builder.codeMasks, size);
+
+		// The IDs of the symbols are the indexes of their entries
+		int symbolCount = builder.symbols.size();
+		String[] symbols = new String[symbolCount];
+		this.underlyingAssets = new String[symbolCount];
+		this.strikePrices = new long[symbolCount];
+		this.decimalStrikePrices = new BigDecimal[symbolCount];
+		for (int id = 0; id < symbolCount; ++id)
+		{
+			ParsedSymbol symbol = builder.symbols.get(id);
+			symbols[id] = symbol.value();
+			underlyingAssets[id] = symbol.underlyingAsset();
+			decimalStrikePrices[id] = symbol.strikePrice();
+			strikePrices[id] = FixedPoint.valueOf(symbol.strikePrice());
+		}
+		this.symbols = List.of(symbols);
+		this.currencies = List.copyOf(builder.currencies);
+	}
+
+	/**
+	 * Returns the number of trades in the table.
+	 *
+	 * @return the number of rows
+	 */
+	public int size()
+	{
+		return dateTimes.length;
+	}
+
+	/**
+	 * Returns the date and time of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the number of seconds from {@code 1970-01-01T00:00:00} to the trade's local date and time, as if
+	 * 	the local date and time were in UTC
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 * @see #dateTime(int)
+	 */
+	public long epochSecond(int row)
+	{
+		return dateTimes[row];
+	}
+
+	/**
+	 * Returns the date and time of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the date and time of the trade
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public LocalDateTime dateTime(int row)
+	{
+		return LocalDateTime.ofEpochSecond(dateTimes[row], 0, ZoneOffset.UTC);
+	}
+
+	/**
+	 * Returns the asset ID of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return a value that groups trades related to the same position
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public int assetId(int row)
+	{
+		return assetIds[row];
+	}
+
+	/**
+	 * Returns the dictionary index of a trade's symbol.
+	 * <p>
+	 * Symbols are numbered in the order that they first appear, so a table that is built after more trades
+	 * are appended to the same {@link Builder} assigns the same IDs to the symbols that it has in common with
+	 * the earlier table. Grouping or joining trades by these IDs avoids comparing their symbols.
+	 *
+	 * @param row the index of the trade
+	 * @return the index of the symbol in {@link #symbols()}
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public int symbolId(int row)
+	{
+		return symbolIds[row];
+	}
+
+	/**
+	 * Returns the symbol of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the symbol of the asset
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public String symbol(int row)
+	{
+		return symbols.get(symbolIds[row]);
+	}
+
+	/**
+	 * Returns the distinct symbols in the table.
+	 *
+	 * @return the symbols, in the order that they first appear
+	 */
+	public List<String> symbols()
+	{
+		return symbols;
+	}
+
+	/**
+	 * Returns the underlying asset of a symbol.
+	 *
+	 * @param symbolId the index of the symbol in {@link #symbols()}
+	 * @return the symbol of the underlying asset if the asset is an option; otherwise, undefined
+	 * @throws IndexOutOfBoundsException if {@code symbolId} is out of bounds
+	 */
+	public String underlyingAsset(int symbolId)
+	{
+		return underlyingAssets[symbolId];
+	}
+
+	/**
+	 * Returns the strike price of a symbol.
+	 *
+	 * @param symbolId the index of the symbol in {@link #symbols()}
+	 * @return the strike price as a fixed-point value if the asset is an option; otherwise, undefined
+	 * @throws IndexOutOfBoundsException if {@code symbolId} is out of bounds
+	 */
+	public long strikePrice(int symbolId)
+	{
+		return strikePrices[symbolId];
+	}
+
+	/**
+	 * Returns the dictionary index of a trade's currency.
+	 *
+	 * @param row the index of the trade
+	 * @return the index of the currency in {@link #currencies()}
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public int currencyId(int row)
+	{
+		return currencyIds[row];
+	}
+
+	/**
+	 * Returns the currency of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the currency of all quantities
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public String currency(int row)
+	{
+		return currencies.get(currencyIds[row]);
+	}
+
+	/**
+	 * Returns the distinct currencies in the table.
+	 *
+	 * @return the currencies, in the order that they first appear
+	 */
+	public List<String> currencies()
+	{
+		return currencies;
+	}
+
+	/**
+	 * Returns the quantity of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the quantity being traded, as a fixed-point value
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public long quantity(int row)
+	{
+		return quantities[row];
+	}
+
+	/**
+	 * Returns the price of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the price of each unit, as a fixed-point value
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public long price(int row)
+	{
+		return prices[row];
+	}
+
+	/**
+	 * Returns the proceeds of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the total value of the assets traded, as a fixed-point value
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public long proceeds(int row)
+	{
+		return proceeds[row];
+	}
+
+	/**
+	 * Returns the commission of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the trade fees, as a fixed-point value
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public long commission(int row)
+	{
+		return commissions[row];
+	}
+
+	/**
+	 * Returns the codes of a trade as a bitmask.
+	 *
+	 * @param row the index of the trade
+	 * @return a bitmask in which bit {@code n} is set if the trade has the code whose ordinal is {@code n}
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public int codeMask(int row)
+	{
+		return codeMasks[row];
+	}
+
+	/**
+	 * Indicates if a trade has a code.
+	 *
+	 * @param row  the index of the trade
+	 * @param code a code
+	 * @return {@code true} if the trade has the code
+	 * @throws NullPointerException      if {@code code} is null
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public boolean hasCode(int row, Code code)
+	{
+		return (codeMasks[row] & code.mask()) != 0;
+	}
+
+	/**
+	 * Returns the codes of a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the codes
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public CodeSet codes(int row)
+	{
+		return CodeSet.of(codeMasks[row]);
+	}
+
+	/**
+	 * Returns a trade.
+	 *
+	 * @param row the index of the trade
+	 * @return the trade at {@code row}
+	 * @throws IndexOutOfBoundsException if {@code row} is out of bounds
+	 */
+	public Trade trade(int row)
+	{
+		int symbolId = symbolIds[row];
+		return new Trade(dateTime(row), symbols.get(symbolId), assetIds[row], quantities[row], prices[row],
+			proceeds[row], commissions[row], currency(row), codes(row), underlyingAssets[symbolId],
+			decimalStrikePrices[symbolId]);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TradeTable[size=" + size() + ", symbols=" + symbols.size() + "]";
+	}
+
+	/**
+	 * Builds a {@code TradeTable} by appending trades, one at a time.
+	 * <p>
+	 * The builder is an {@code IbStatementVisitor}, so a table can be built without retaining the trades of
+	 * the statement. Visiting multiple statements appends their trades to the same table. For example:
+	 * {@snippet :
+	 * TradeTable.Builder builder = new TradeTable.Builder();
+	 * for (Path statement : statements)
+	 *   IbActivityStatement.parse(statement, builder);
+	 * TradeTable table = builder.build();
+	 * }
+	 * <p>
+	 * Asset IDs are copied as is, since each statement numbers its positions independently.
+	 * <p>
+	 * This class is not thread-safe.
+	 */
+	public static final class Builder implements IbStatementVisitor
+	{
+		private static final int INITIAL_CAPACITY = 1024;
+		/**
+		 * The symbols of the trades. Trades contain canonical symbols, so each symbol is its own raw form.
+		 */
+		private final SymbolDictionary symbols = new SymbolDictionary();
+		private final Map<String, Integer> currencyToId = new HashMap<>();
+		private final List<String> currencies = new ArrayList<>();
+		private long[] dateTimes;
+		private int[] assetIds;
+		private int[] symbolIds;
+		private int[] currencyIds;
+		private long[] quantities;
+		private long[] prices;
+		private long[] proceeds;
+		private long[] commissions;
+		private int[] codeMasks;
+		/**
+		 * The number of trades that were added.
+		 */
+		private int size;
+
+		/**
+		 * Creates a new instance.
+		 */
+		public Builder()
+		{
+			this(INITIAL_CAPACITY);
+		}
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param capacity the number of trades to allocate memory for
+		 */
+		private Builder(int capacity)
+		{
+			this.dateTimes = new long[capacity];
+			this.assetIds = new int[capacity];
+			this.symbolIds = new int[capacity];
+			this.currencyIds = new int[capacity];
+			this.quantities = new long[capacity];
+			this.prices = new long[capacity];
+			this.proceeds = new long[capacity];
+			this.commissions = new long[capacity];
+			this.codeMasks = new int[capacity];
+		}
+
+		@Override
+		public void onTrade(Trade trade)
+		{
+			add(trade);
+		}
+
+		/**
+		 * Appends a trade to the table.
+		 *
+		 * @param trade the trade
+		 * @return this
+		 * @throws NullPointerException if {@code trade} is null
+		 */
+		public Builder add(Trade trade)
+		{
+			requireThat(trade, "trade").isNotNull();
+			if (size == dateTimes.length)
+				grow();
+			// The underlying asset and strike price are derived from the symbol
+			int symbolId = symbols.idOf(trade.symbol(), symbol ->
+				new ParsedSymbol(symbol, trade.underlyingAsset(), trade.strikePrice()));
+			int currencyId = currencyToId.computeIfAbsent(trade.currency(), _ ->
+			{
+				currencies.add(trade.currency());
+				return currencies.size() - 1;
+			});
+
+			dateTimes[size] = trade.dateTime().toEpochSecond(ZoneOffset.UTC);
+			assetIds[size] = trade.assetId();
+			symbolIds[size] = symbolId;
+			currencyIds[size] = currencyId;
+			quantities[size] = trade.quantityAsFixedPoint();
+			prices[size] = trade.priceAsFixedPoint();
+			proceeds[size] = trade.proceedsAsFixedPoint();
+			commissions[size] = trade.commissionAsFixedPoint();
+			codeMasks[size] = trade.codeMask();
+			++size;
+			return this;
+		}
+
+		/**
+		 * Doubles the capacity of the columns.
+		 */
+		private void grow()
+		{
+			int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+			dateTimes = Arrays.copyOf(dateTimes, capacity);
+			assetIds = Arrays.copyOf(assetIds, capacity);
+			symbolIds = Arrays.copyOf(symbolIds, capacity);
+			currencyIds = Arrays.copyOf(currencyIds, capacity);
+			quantities = Arrays.copyOf(quantities, capacity);
+			prices = Arrays.copyOf(prices, capacity);
+			proceeds = Arrays.copyOf(proceeds, capacity);
+			commissions = Arrays.copyOf(commissions, capacity);
+			codeMasks = Arrays.copyOf(codeMasks, capacity);
+		}
+
+		/**
+		 * Returns a table containing the trades that were added so far. Trades that are added afterward do not
+		 * affect the table.
+		 *
+		 * @return the table, with one row per trade in the order that they were added
+		 * @throws ArithmeticException if a strike price cannot be represented as a {@code FixedPoint} value
+		 */
+		public TradeTable build()
+		{
+			return new TradeTable(this);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "TradeTable.Builder[size=" + size + ", symbols=" + symbols.size() + "]";
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package io.github.cowwoc.capi.interactivebrokers;
+
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Code;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.MarkToMarket;
+import io.github.cowwoc.capi.interactivebrokers.IbActivityStatement.Trade;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static io.github.cowwoc.requirements13.java.DefaultJavaValidators.requireThat;
+
+/**
+ * Parses the {@code Trades} sections, one per asset type (e.g. Stocks, Equity and Index Options).
+ * <p>
+ * Numbers are parsed and positions are tracked using {@link FixedPoint} values, which are converted to
+ * {@code BigDecimal} only when the {@code Trade}s are created.
+ * <p>
+ * The {@code Codes} section typically follows the trades, so trades are buffered until their codes are
+ * {@link #resolveCodes(Map) resolved}. If the codes are resolved before the trades are parsed, each trade is
+ * sent to the consumer as soon as it is parsed.
+ */
+final class TradesParser implements SectionParser
+{
+	/**
+	 * The minimum number of rows that are worth decoding in a separate task.
+	 */
+	private static final int MINIMUM_ROWS_PER_TASK = 4096;
+	private final MarkToMarketParser markToMarket;
+	private final SymbolDictionary symbols;
+	private final Consumer<Trade> consumer;
+	private final IbLoadFilter filter;
+	private final List<PendingTrade> pendingTrades = new ArrayList<>();
+	// Design: Assets have a different ID per position, even if they have the same symbol.
+	// This allows us to differentiate between different option contracts even if they have the same
+	// underlying asset.
+	private final Map<String, Integer> symbolToId = new HashMap<>();
+	private final Map<Integer, Long> assetToTotalUnits = new HashMap<>();
+	private final Set<String> symbolsReferencedBySection = new HashSet<>();
+	private final DateParser dates = new DateParser();
+	/**
+	 * A map from each distinct value of the {@code Codes} column to the bitmask of its codes.
+	 */
+	private final Map<String, Integer> rawCodesToMask = new HashMap<>();
+	/**
+	 * A map from the String representation of each code to its corresponding enum values, or {@code null} if
+	 * the codes have not been resolved yet.
+	 */
+	private Map<String, Set<Code>> stringCodeToEnums;
+	private int nextId;
+	private boolean seeded;
+	private int headerIndex;
+	private int codesIndex;
+	private int assetCategoryIndex;
+	private int symbolIndex;
+	private int dateTimeIndex;
+	private int quantityIndex;
+	private int priceIndex;
+	private int proceedsIndex;
+	private int commissionIndex;
+	private int currencyIndex;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param markToMarket the parser of the assets that were held at the start of the statement's period
+	 * @param symbols      the symbols of the statement
+	 * @param consumer     receives each trade once its codes have been resolved
+	 * @param filter       selects the trades to send to the consumer. Trades that are excluded still update
+	 *                     the positions of their assets.
+	 * @throws NullPointerException if any of the arguments are null
+	 */
+	TradesParser(MarkToMarketParser markToMarket, SymbolDictionary symbols, Consumer<Trade> consumer,
+		IbLoadFilter filter)
+	{
+		requireThat(markToMarket, "markToMarket").isNotNull();
+		requireThat(symbols, "symbols").isNotNull();
+		requireThat(consumer, "consumer").isNotNull();
+		requireThat(filter, "filter").isNotNull();
+		this.markToMarket = markToMarket;
+		this.symbols = symbols;
+		this.consumer = consumer;
+		this.filter = filter;
+	}
+
+	/**
+	 * Adds assets that were held in the previous statement, if this has not been done already.
+	 *
+	 * @throws IllegalArgumentException if the statement does not contain exactly one
+	 *                                  {@code Mark-to-Market Performance Summary} section before the trades
+	 */
+	private void addPreviousAssets()
+	{
+		if (seeded)
+			return;
+		seeded = true;
+		for (Entry<String, MarkToMarket> entry : markToMarket.getSymbolToMarkToMarket().entrySet())
+		{
+			String symbol = entry.getKey();
+			++nextId;
+			Integer assetId = nextId;
+			assetToTotalUnits.put(assetId, entry.getValue().startQuantityAsFixedPoint());
+			symbolToId.put(symbol, assetId);
+		}
+	}
+
+	@Override
+	public void startSection(List<String> columns) throws IOException
+	{
+		addPreviousAssets();
+		headerIndex = Columns.indexOf(columns, "Header");
+		codesIndex = Columns.indexOf(columns, "Code");
+		assetCategoryIndex = Columns.indexOf(columns, "Asset Category");
+		symbolIndex = Columns.indexOf(columns, "Symbol");
+		dateTimeIndex = Columns.indexOf(columns, "Date/Time");
+		quantityIndex = Columns.indexOf(columns, "Quantity");
+		priceIndex = Columns.indexOf(columns, "T. Price");
+		proceedsIndex = Columns.indexOf(columns, "Proceeds");
+		commissionIndex = Columns.indexOf(columns, "Comm/Fee");
+		currencyIndex = Columns.indexOf(columns, "Currency");
+	}
+
+	@Override
+	public void parseRow(List<String> row) throws IOException
+	{
+		if (!isData(row))
+			return;
+		String rawSymbol = getRawSymbol(row);
+		ParsedSymbol symbol = symbols.parse(rawSymbol);
+		apply(decode(row, rawSymbol, dates, filter.acceptsSymbol(symbol)), symbol);
+	}
+
+	/**
+	 * Parses an entire section, decoding its rows in parallel.
+	 * <p>
+	 * Rows are parsed in two phases. First, chunks of rows are tokenized, decoded and their symbols parsed
+	 * concurrently, since none of this depends on the rows before it. Then, the symbols of each chunk are added
+	 * to the dictionary and the decoded rows are applied to the positions in order, which assigns their asset
+	 * IDs and splits the trades that reverse a position.
+	 * <p>
+	 * The calling thread decodes chunks alongside {@code executor}, and only waits for chunks that other
+	 * threads have already started, so this method does not deadlock if it is invoked by one of the threads
+	 * of {@code executor}. The method does not return until all chunks are done reading {@code rows}, even if
+	 * one of them fails.
+	 *
+	 * @param columns    the header row of the section
+	 * @param rows       the UTF-8 encoded data rows of the section
+	 * @param rowOffsets the offset of each row within {@code rows}, followed by the size of {@code rows}
+	 * @param executor   the executor that decodes rows
+	 * @throws IOException if the section is malformed
+	 */
+	public void parseSection(List<String> columns, MemorySegment rows, long[] rowOffsets, Executor executor)
+		throws IOException
+	{
+		startSection(columns);
+		int rowCount = rowOffsets.length - 1;
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		int rowsPerChunk = Math.max(MINIMUM_ROWS_PER_TASK, Math.ceilDiv(rowCount, parallelism * 4));
+		int chunks = Math.ceilDiv(rowCount, rowsPerChunk);
+		DecodedRow[] decodedRows = new DecodedRow[rowCount];
+		// Each chunk completes with a map from the raw symbols of its rows to their parsed values, in the order
+		// that they first appear
+		List<CompletableFuture<Map<String, ParsedSymbol>>> chunkToTask = new ArrayList<>(chunks);
+		for (int i = 0; i < chunks; ++i)
+			chunkToTask.add(new CompletableFuture<>());
+		AtomicInteger nextChunk = new AtomicInteger();
+		Runnable decoder = () ->
+		{
+			DateParser chunkDates = new DateParser();
+			while (true)
+			{
+				int chunk = nextChunk.getAndIncrement();
+				if (chunk >= chunks)
+					break;
+				try
+				{
+					int first = chunk * rowsPerChunk;
+					int end = Math.min(rowCount, first + rowsPerChunk);
+					CsvTokenizer tokens = new CsvTokenizer(rows.asSlice(rowOffsets[first],
+						rowOffsets[end] - rowOffsets[first]));
+					Map<String, ParsedSymbol> rawToSymbol = new LinkedHashMap<>();
+					for (int i = first; tokens.nextRow(); ++i)
+					{
+						List<String> row = tokens.row();
+						if (!isData(row))
+							continue;
+						String rawSymbol = getRawSymbol(row);
+						rawToSymbol.computeIfAbsent(rawSymbol, ParsedSymbol::fromStatement);
+						decodedRows[i] = decode(row, rawSymbol, chunkDates, true);
+					}
+					chunkToTask.get(chunk).complete(rawToSymbol);
+				}
+				catch (IOException e)
+				{
+					chunkToTask.get(chunk).completeExceptionally(new UncheckedIOException(e));
+				}
+				catch (RuntimeException | Error e)
+				{
+					chunkToTask.get(chunk).completeExceptionally(e);
+				}
+			}
+		};
+		for (int i = 1; i < Math.min(parallelism, chunks); ++i)
+			executor.execute(decoder);
+		decoder.run();
+
+		// The caller may release the section's data once this method returns
+		CompletableFuture.allOf(chunkToTask.toArray(CompletableFuture[]::new)).exceptionally(_ -> null).join();
+		for (int chunk = 0; chunk < chunks; ++chunk)
+		{
+			Map<String, ParsedSymbol> rawToSymbol;
+			try
+			{
+				rawToSymbol = chunkToTask.get(chunk).join();
+			}
+			catch (CompletionException e)
+			{
+				// Report the failure of the earliest row
+				Throwable cause = e.getCause();
+				if (cause instanceof UncheckedIOException uioe)
+					throw uioe.getCause();
+				if (cause instanceof RuntimeException re)
+					throw re;
+				if (cause instanceof Error error)
+					throw error;
+				throw e;
+			}
+			// Symbols are added in the order that they first appear, which assigns the same IDs as parsing the
+			// rows sequentially
+			for (Entry<String, ParsedSymbol> entry : rawToSymbol.entrySet())
+				entry.setValue(symbols.add(entry.getKey(), entry.getValue()));
+			int end = Math.min(rowCount, (chunk + 1) * rowsPerChunk);
+			for (int i = chunk * rowsPerChunk; i < end; ++i)
+			{
+				DecodedRow row = decodedRows[i];
+				if (row != null)
+					apply(row, rawToSymbol.get(row.rawSymbol()));
+			}
+		}
+		endSection();
+	}
+
+	/**
+	 * Indicates if a row describes a trade.
+	 *
+	 * @param row a row of the section
+	 * @return {@code false} if the row contains subtotals
+	 */
+	private boolean isData(List<String> row)
+	{
+		return switch (Columns.get(row, headerIndex))
+		{
+			case "Data" -> true;
+			case "SubTotal", "Total" -> false;
+			default -> throw new AssertionError("Unsupported header: " + row);
+		};
+	}
+
+	/**
+	 * Returns the symbol of a trade.
+	 *
+	 * @param row a row of the section
+	 * @return the symbol in the format used by the activity statement
+	 */
+	private String getRawSymbol(List<String> row)
+	{
+		String assetCategory = Columns.get(row, assetCategoryIndex);
+		return switch (assetCategory)
+		{
+			case "Stocks", "Equity and Index Options" -> Columns.get(row, symbolIndex);
+			default -> throw new AssertionError("Unsupported asset category: " + row);
+		};
+	}
+
+	/**
+	 * Decodes the values of a trade. This method does not depend on the trades that came before it.
+	 *
+	 * @param row            a row of the section
+	 * @param rawSymbol      the symbol of the trade
+	 * @param dates          the parser to decode the trade's date with
+	 * @param symbolAccepted {@code true} if the filter accepts the trade's symbol
+	 * @return the decoded trade
+	 */
+	private DecodedRow decode(List<String> row, String rawSymbol, DateParser dates, boolean symbolAccepted)
+	{
+		String codes = Columns.get(row, codesIndex);
+		// The quantity is needed to track positions, even if the trade is excluded by the filter
+		long quantity = FixedPoint.parse(Columns.get(row, quantityIndex));
+		assert quantity != 0 : row;
+		String rawDateTime = Columns.get(row, dateTimeIndex);
+		String currency = Columns.get(row, currencyIndex);
+		if (!symbolAccepted || !filter.acceptsCurrency(currency) || !filter.acceptsDate(rawDateTime))
+			return new DecodedRow(rawSymbol, codes, currency, quantity, null, 0, 0, 0);
+		LocalDateTime dateTime = dates.parseDateTime(rawDateTime);
+		long price = FixedPoint.parse(Columns.get(row, priceIndex));
+		long proceeds = FixedPoint.parse(Columns.get(row, proceedsIndex));
+		long commission = FixedPoint.parse(Columns.get(row, commissionIndex));
+		return new DecodedRow(rawSymbol, codes, currency, quantity, dateTime, price, proceeds, commission);
+	}
+
+	/**
+	 * Updates the position of a trade's asset, and sends the trade to the consumer if it is accepted by the
+	 * filter. Trades must be applied in the order that they appear.
+	 *
+	 * @param row    the decoded trade
+	 * @param symbol the symbol of the trade
+	 * @throws IOException if the trade references an unknown code
+	 */
+	private void apply(DecodedRow row, ParsedSymbol symbol) throws IOException
+	{
+		boolean accepted = row.dateTime() != null && filter.acceptsSymbol(symbol);
+		long quantity = row.quantity();
+		Integer assetId = symbolToId.get(symbol.value());
+		symbolsReferencedBySection.add(symbol.value());
+
+		long oldTotalUnits = assetToTotalUnits.getOrDefault(assetId, 0L);
+		long newTotalUnits = Math.addExact(oldTotalUnits, quantity);
+		if (Long.signum(oldTotalUnits) == -Long.signum(newTotalUnits))
+		{
+			// Split the trade into two since it involves a combination of:
+			// 1. Buying to close a short position followed by a long buy, or
+			// 2. Selling to close a long position followed by a short sell.
+			assert assetId != null : "The asset being closed is unknown: " + symbol;
+			int closingAssetId = assetId;
+
+			// The second trade opens a new position
+			++nextId;
+			assetId = nextId;
+			symbolToId.put(symbol.value(), assetId);
+			assetToTotalUnits.put(assetId, newTotalUnits);
+			if (!accepted)
+				return;
+
+			long proportionOfClose = FixedPoint.divide(Math.abs(oldTotalUnits), Math.abs(quantity));
+			long commissionForClose = FixedPoint.multiply(proportionOfClose, row.commission());
+			long proceedsForClose = FixedPoint.multiply(proportionOfClose, row.proceeds());
+
+			// The first trade closes the position
+			add(new PendingTrade(row.dateTime(), symbol, closingAssetId, -oldTotalUnits, row.price(),
+				proceedsForClose, commissionForClose, row.currency(), row.codes(), Portion.CLOSING));
+
+			long commissionForOpen = row.commission() - commissionForClose;
+			long proceedsForOpen = row.proceeds() - proceedsForClose;
+			add(new PendingTrade(row.dateTime(), symbol, assetId, newTotalUnits, row.price(), proceedsForOpen,
+				commissionForOpen, row.currency(), row.codes(), Portion.OPENING));
+		}
+		else
+		{
+			boolean closedPosition = newTotalUnits == 0;
+			if (closedPosition)
+			{
+				assert assetId != null : "The asset being closed is unknown: " + symbol;
+				assetToTotalUnits.remove(assetId);
+				// Ensure that the next trade of this asset receives a new ID
+				symbolToId.remove(symbol.value());
+			}
+			else
+			{
+				if (assetId == null)
+				{
+					// The opening of a new trading position
+					++nextId;
+					assetId = nextId;
+					symbolToId.put(symbol.value(), assetId);
+				}
+				assetToTotalUnits.put(assetId, newTotalUnits);
+			}
+			if (!accepted)
+				return;
+			add(new PendingTrade(row.dateTime(), symbol, assetId, quantity, row.price(), row.proceeds(),
+				row.commission(), row.currency(), row.codes(), Portion.ENTIRE));
+		}
+	}
+
+	@Override
+	public void endSection()
+	{
+		// Ensure that symbols get assigned a different ID per section but only reset the symbols that were
+		// referenced; otherwise, we might remove assets that were held in the previous statement before they
+		// get referenced.
+		for (String symbol : symbolsReferencedBySection)
+			symbolToId.remove(symbol);
+		symbolsReferencedBySection.clear();
+	}
+
+	/**
+	 * Sends a trade to the consumer, or buffers it until its codes are resolved.
+	 *
+	 * @param trade the trade
+	 * @throws IOException if the trade references an unknown code
+	 */
+	private void add(PendingTrade trade) throws IOException
+	{
+		if (stringCodeToEnums == null)
+			pendingTrades.add(trade);
+		else
+			consumer.accept(toTrade(trade));
+	}
+
+	/**
+	 * Resolves the codes of a trade.
+	 *
+	 * @param trade the trade
+	 * @return the resolved trade
+	 * @throws IOException if the trade references an unknown code
+	 */
+	private Trade toTrade(PendingTrade trade) throws IOException
+	{
+		// Each distinct value of the Codes column is only split and looked up once
+		Integer cachedMask = rawCodesToMask.get(trade.codes());
+		int mask;
+		if (cachedMask == null)
+		{
+			mask = parseCodes(trade.codes());
+			rawCodesToMask.put(trade.codes(), mask);
+		}
+		else
+			mask = cachedMask;
+		switch (trade.portion())
+		{
+			case ENTIRE ->
+			{
+			}
+			case CLOSING -> mask &= ~Code.OPEN.mask();
+			case OPENING -> mask &= ~Code.CLOSE.mask();
+		}
+		return trade.toTrade(CodeSet.of(mask));
+	}
+
+	/**
+	 * Parses the value of the {@code Codes} column.
+	 *
+	 * @param codes the semicolon-separated codes of a trade
+	 * @return the bitmask of the codes
+	 * @throws IOException if {@code codes} contains an unknown code
+	 */
+	private int parseCodes(String codes) throws IOException
+	{
+		int mask = 0;
+		for (String codeAsString : codes.split(";"))
+		{
+			Set<Code> codesEntry = stringCodeToEnums.get(codeAsString);
+			if (codesEntry == null)
+				throw new IOException("Unknown code: " + codeAsString);
+			mask |= CodeSet.copyOf(codesEntry).mask();
+		}
+
+		// INTERNAL_TRADE implies more than FRACTIONAL_PORTION_TRADED_INTERNALLY but some trades are
+		// annotated with both codes.
+		if ((mask & Code.INTERNAL_TRADE.mask()) != 0)
+			mask &= ~Code.FRACTIONAL_PORTION_TRADED_INTERNALLY.mask();
+		return mask;
+	}
+
+	/**
+	 * Resolves the codes of the trades. Trades that have already been parsed are sent to the consumer, and
+	 * subsequent trades are sent to it as soon as they are parsed.
+	 *
+	 * @param stringCodeToEnums a map from the String representation of each code to its corresponding enum
+	 *                          values
+	 * @throws NullPointerException if {@code stringCodeToEnums} is null
+	 * @throws IOException          if a trade references an unknown code
+	 */
+	public void resolveCodes(Map<String, Set<Code>> stringCodeToEnums) throws IOException
+	{
+		requireThat(stringCodeToEnums, "stringCodeToEnums").isNotNull();
+		this.stringCodeToEnums = stringCodeToEnums;
+		for (int i = 0; i < pendingTrades.size(); ++i)
+		{
+			PendingTrade pending = pendingTrades.get(i);
+			// Release each pending trade as soon as it is converted
+			pendingTrades.set(i, null);
+			consumer.accept(toTrade(pending));
+		}
+		pendingTrades.clear();
+	}
+
+	/**
+	 * Invoked once the entire statement has been parsed.
+	 *
+	 * @throws IllegalArgumentException if the statement does not contain exactly one
+	 *                                  {@code Mark-to-Market Performance Summary} section
+	 */
+	public void finish()
+	{
+		addPreviousAssets();
+	}
+
+	/**
+	 * The portion of a trade that a {@code Trade} represents.
+	 */
+	private enum Portion
+	{
+		/**
+		 * The entire trade.
+		 */
+		ENTIRE,
+		/**
+		 * The portion of a trade that closes a position, if the trade reverses the position's direction.
+		 */
+		CLOSING,
+		/**
+		 * The portion of a trade that opens a position, if the trade reverses the position's direction.
+		 */
+		OPENING
+	}
+
+	/**
+	 * The values of a trade, before its asset ID is assigned.
+	 *
+	 * @param rawSymbol  the symbol of the asset, in the format used by the activity statement
+	 * @param codes      the semicolon-separated codes of the trade
+	 * @param currency   the currency of all quantities
+	 * @param quantity   the quantity being traded, as a fixed-point value
+	 * @param dateTime   the date and time of the trade, or {@code null} if the trade is excluded by the filter,
+	 *                   in which case the remaining values are not decoded
+	 * @param price      the price of each unit, as a fixed-point value
+	 * @param proceeds   the total amount received from the trade, as a fixed-point value
+	 * @param commission the trade fees, as a fixed-point value
+	 */
+	private record DecodedRow(String rawSymbol, String codes, String currency, long quantity,
+	                          LocalDateTime dateTime, long price, long proceeds, long commission)
+	{
+	}
+
+	/**
+	 * A trade whose codes have not been resolved yet.
+	 *
+	 * @param dateTime   the date and time of the trade
+	 * @param symbol     the symbol of the asset
+	 * @param assetId    a value that groups trades related to the same position
+	 * @param quantity   the quantity being traded, as a fixed-point value
+	 * @param price      the price of each unit, as a fixed-point value
+	 * @param proceeds   the total amount received from the trade, as a fixed-point value
+	 * @param commission the trade fees, as a fixed-point value
+	 * @param currency   the currency of all quantities
+	 * @param codes      the semicolon-separated codes of the trade
+	 * @param portion    the portion of the trade that this object represents
+	 */
+	private record PendingTrade(LocalDateTime dateTime, ParsedSymbol symbol, int assetId, long quantity,
+	                            long price, long proceeds, long commission, String currency, String codes,
+	                            Portion portion)
+	{
+		/**
+		 * Converts this object to a trade.
+		 *
+		 * @param resolvedCodes the trade's codes
+		 * @return the trade
+		 */
+		public Trade toTrade(CodeSet resolvedCodes)
+		{
+			return new Trade(dateTime, symbol.value(), assetId, quantity, price, proceeds, commission, currency,
+				resolvedCodes, symbol.underlyingAsset(), symbol.strikePrice());
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package io.github.cowwoc.capi.interactivebrokers.spi;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Locates the bytes that delimit CSV values, one block of {@value #BLOCK_SIZE} bytes at a time.
+ * <p>
+ * This is a service provider interface; applications do not use it directly. The tokenizer uses the first
+ * implementation that {@link java.util.ServiceLoader} can instantiate, and otherwise scans each block eight
+ * bytes at a time using scalar arithmetic. The {@code capi-interactivebrokers-vector} artifact provides an
+ * implementation that uses the Vector API.
+ * <p>
+ * Implementations must be stateless and thread-safe.
+ */
+public interface BlockScanner
+{
+	/**
+	 * The number of bytes in a block.
+	 */
+	int BLOCK_SIZE = Long.SIZE;
+
+	/**
+	 * Scans a block for commas, quotes, carriage returns and line feeds.
+	 *
+	 * @param csv    the CSV data
+	 * @param offset the offset of the first byte of the block. The block lies entirely within {@code csv}.
+	 * @return a bitmask in which bit {@code n} is set if the byte at {@code offset + n} delimits a value
+	 */
+	long scan(MemorySegment csv, long offset);
+}
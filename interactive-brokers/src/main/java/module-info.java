@@ -5,8 +5,9 @@ module io.github.cowwoc.capi.interactivebrokers
 {
 	requires io.github.cowwoc.requirements13.java;
 	requires org.slf4j;
-	requires com.fasterxml.jackson.dataformat.csv;
-	requires com.fasterxml.jackson.databind;
 
 	exports io.github.cowwoc.capi.interactivebrokers;
+	exports io.github.cowwoc.capi.interactivebrokers.spi;
+
+	uses io.github.cowwoc.capi.interactivebrokers.spi.BlockScanner;
 }
\ No newline at end of file